@@ -25,10 +25,16 @@ import lombok.Singular;
 import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import javax.validation.constraints.Min;
 
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.PostFilterStrategy;
+import nl.vpro.jcr.criteria.query.Projection;
+import nl.vpro.jcr.criteria.query.SessionProvider;
+import nl.vpro.jcr.criteria.query.TotalSizeStrategy;
 import nl.vpro.jcr.criteria.query.criterion.Criterion;
 import nl.vpro.jcr.criteria.query.criterion.Order;
 import nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl;
@@ -67,7 +73,21 @@ public class AdvancedCriteriaImpl extends AbstractCriteriaImpl  {
         String language,
         ZoneId timeZone,
         @Singular
-        List<Column> columns
+        List<Column> columns,
+        boolean bindVariables,
+        Boolean optimize,
+        boolean prefixLikeAsRange,
+        boolean directLookup,
+        Integer inChunkSize,
+        String searchAfter,
+        TotalSizeStrategy totalSizeStrategy,
+        Integer countLimit,
+        SessionProvider countSessionProvider,
+        Executor countExecutor,
+        boolean coalesce,
+        QueryResultCache resultCache,
+        PostFilterStrategy postFilterStrategy,
+        SubtreeSnapshot snapshot
     ) {
         super(
             basePath == null ? Criterion.ALL_ELEMENTS : basePath,
@@ -76,7 +96,21 @@ public class AdvancedCriteriaImpl extends AbstractCriteriaImpl  {
             null,
             columns == null ? Arrays.asList(Column.ALL) : columns,
             maxResults, offset, spellCheckString, forcePagingWithDocumentOrder, language,
-            timeZone == null ? ZoneId.systemDefault() : timeZone);
+            timeZone == null ? ZoneId.systemDefault() : timeZone,
+            bindVariables,
+            optimize == null || optimize,
+            prefixLikeAsRange,
+            directLookup,
+            inChunkSize == null ? DEFAULT_IN_CHUNK_SIZE : inChunkSize,
+            searchAfter,
+            totalSizeStrategy,
+            countLimit,
+            countSessionProvider,
+            countExecutor,
+            coalesce,
+            resultCache,
+            postFilterStrategy,
+            snapshot);
         this.criterionEntries = criterions.stream().map(c -> new CriterionEntry(c, this)).collect(Collectors.toList());
         this.orderEntries = orders.stream().map(o -> new OrderEntry(o, this)).collect(Collectors.toList());
 
@@ -87,6 +121,10 @@ public class AdvancedCriteriaImpl extends AbstractCriteriaImpl  {
      */
     public static class Builder {
 
+        /**
+         * Requests one page of the results. Whether there is a next page ({@link nl.vpro.jcr.criteria.query.AdvancedResult#hasNextPage()})
+         * is then known without counting the results.
+         */
         public Builder paging(
             @Min(value = 1) int pageSize,
             @Min(value = 1) int pageNumber) {
@@ -119,6 +157,15 @@ public class AdvancedCriteriaImpl extends AbstractCriteriaImpl  {
             return order(Order.SCORE);
         }
 
+        /**
+         * Selects the columns needed for the given projection. Use it with {@link AdvancedResult#getItems(java.util.function.Function)}
+         * to obtain the results without loading the nodes.
+         * @since 2.12
+         */
+        public Builder projection(Projection<?> projection) {
+            return columns(projection.getColumns());
+        }
+
 
     }
 }
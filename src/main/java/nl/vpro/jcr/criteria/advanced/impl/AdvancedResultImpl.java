@@ -22,8 +22,6 @@ package nl.vpro.jcr.criteria.advanced.impl;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.function.*;
 
 import javax.jcr.RepositoryException;
@@ -40,9 +38,7 @@ import nl.vpro.jcr.criteria.query.*;
 @ToString
 public class AdvancedResultImpl implements AdvancedResult {
 
-    private static final String TOTAL_SIZE = "getTotalSize";
-
-    private final Supplier<QueryResult> jcrQueryResult;
+    private final MemoizedQueryResult jcrQueryResult;
     private final LongSupplier queryCounter;
 
     private final Integer  itemsPerPage;
@@ -56,17 +52,25 @@ public class AdvancedResultImpl implements AdvancedResult {
     private final Query spellCheckerQuery;
 
 
-    private final boolean applyLocalPaging;
-
-    private int offset;
+    private final LocalPage localPage;
 
     private Long totalResults;
 
+    private Supplier<String> nextCursor;
 
-    /**
+    private BooleanSupplier nextPage;
+
+    private TotalSizeStrategy totalSizeStrategy = TotalSizeStrategy.DEFAULT;
 
-     * @param applyLocalPaging don't assume the result iterator is already paginated, do it "manually"
-     * @param offset TODO
+    private Integer countLimit;
+
+    private boolean totalIsLowerBound = false;
+
+
+    /**
+     * @param jcrQueryResult executes the query. It is called at most once, the result is shared by all methods of this object.
+     * @param applyLocalPaging don't assume the result iterator is already paginated, do it "manually" (see {@link LocalPage})
+     * @param offset the index of the first result, if local paging is applied. If {@code 0} it is determined by the page number.
      */
     AdvancedResultImpl(
         Supplier<QueryResult> jcrQueryResult,
@@ -77,14 +81,21 @@ public class AdvancedResultImpl implements AdvancedResult {
         Query spellCheckerQuery,
         boolean applyLocalPaging,
         int offset) {
-        this.jcrQueryResult = jcrQueryResult;
+        if (applyLocalPaging) {
+            if (offset == 0 && itemsPerPage != null) {
+                offset = (Math.max(pageNumberStartingFromOne, 1) - 1) * itemsPerPage;
+            }
+            this.localPage = new LocalPage(jcrQueryResult, offset, itemsPerPage == null || itemsPerPage == 0 ? null : itemsPerPage);
+            this.jcrQueryResult = MemoizedQueryResult.of(localPage);
+        } else {
+            this.localPage = null;
+            this.jcrQueryResult = MemoizedQueryResult.of(jcrQueryResult);
+        }
         this.queryCounter = queryCounter;
         this.itemsPerPage = itemsPerPage;
         this.statement = statement;
         this.spellCheckerQuery = spellCheckerQuery;
         this.pageNumberStartingFromOne = pageNumberStartingFromOne;
-        this.applyLocalPaging = applyLocalPaging;
-        this.offset = offset;
     }
 
     @Override
@@ -102,33 +113,20 @@ public class AdvancedResultImpl implements AdvancedResult {
     @Override
     public long getTotalSize() {
         if (! totalSizeDetermined()) {
-            long queryTotalSize = -1;
-            try { // jcrQueryResult instanceof JackrabbitQueryResult) {
-                QueryResult queryResult = jcrQueryResult.get();
-                Method m =  queryResult.getClass().getMethod(TOTAL_SIZE);
-                queryTotalSize = (int) m.invoke(queryResult);
-                log.debug("Using  {}", m);
-            } catch (InvocationTargetException | IllegalAccessException e) {
-                log.error(e.getMessage(), e);
-            } catch (NoSuchMethodException noSuchMethodException) {
-                log.debug("{}: {}", noSuchMethodException.getClass().getSimpleName(), noSuchMethodException.getMessage());
-            }
-            if (queryTotalSize == -1 && (itemsPerPage == null || itemsPerPage == 0 || applyLocalPaging)) {
-                totalResults = getRowIterator().getSize();
-            } else {
-                if (queryTotalSize == -1) {
-                    totalResults = queryCounter.getAsLong();
-                } else {
-                    totalResults = queryTotalSize;
-                }
-            }
-            if (totalResults < 0) {
+            totalResults = totalSizeStrategy.getTotalSize(new TotalSizeContext());
+            if (totalResults < 0 && totalSizeStrategy != TotalSizeStrategy.UNKNOWN) {
                 log.warn("Total results could not be determined");
             }
         }
         return totalResults;
     }
 
+    @Override
+    public TotalSize getTotal() {
+        long totalSize = getTotalSize();
+        return totalIsLowerBound ? TotalSize.atLeast(totalSize) : TotalSize.exact(totalSize);
+    }
+
     boolean totalSizeDetermined() {
         return totalResults != null;
     }
@@ -138,38 +136,35 @@ public class AdvancedResultImpl implements AdvancedResult {
         return itemsPerPage > 0 ? (int) Math.round(Math.ceil(((float) getTotalSize() / (float) itemsPerPage))) : 1;
     }
 
+    /**
+     * Whether there is a next page is normally known after executing the query, because paged queries are executed with one
+     * row more than the page size (see {@link QueryExecutorHelper}), or because paging is applied locally. Otherwise it is
+     * determined using {@link #getTotalSize()}.
+     */
     @Override
-    public <K> ResultIterator<K> getItems(Function<Row, K> wrapper) {
-
-        if ((applyLocalPaging && ((itemsPerPage != null && itemsPerPage > 0) || offset > 0))) {
-
-            if (offset == 0) {
-                offset = (Math.max(pageNumberStartingFromOne, 1) - 1) * itemsPerPage;
-            }
-            // removing preceding records
-            RowIterator rowIterator = getRowIterator();
-            rowIterator.skip(offset);
-
-            // removing following records and alter getSize()
-            return new ResultIteratorImpl<K>(rowIterator, wrapper) {
-
-                @Override
-                public boolean hasNext() {
-                    return super.getPosition() - offset < getSize() && super.hasNext();
-                }
-                @Override
-                public long getSize() {
-                    return Math.min(super.getSize() - offset, itemsPerPage == null || itemsPerPage == 0 ? super.getSize() : itemsPerPage);
-                }
-            };
+    public boolean hasNextPage() {
+        if (itemsPerPage == null || itemsPerPage <= 0) {
+            return false;
+        }
+        if (nextPage != null) {
+            jcrQueryResult.get();
+            return nextPage.getAsBoolean();
+        }
+        if (localPage != null) {
+            jcrQueryResult.get();
+            return localPage.hasMore();
         }
+        return AdvancedResult.super.hasNextPage();
+    }
 
+    @Override
+    public <K> ResultIterator<K> getItems(Function<Row, K> wrapper) {
         return new ResultIteratorImpl<K>(getRowIterator(), wrapper);
     }
 
     protected RowIterator getRowIterator() {
         try {
-            return jcrQueryResult.get().getRows();
+            return jcrQueryResult.getRows();
         } catch (RepositoryException e) {
             throw new JCRQueryException(statement, e);
         }
@@ -202,6 +197,40 @@ public class AdvancedResultImpl implements AdvancedResult {
         return spellCheckerSuggestion;
     }
 
+    @Override
+    public String getNextCursor() {
+        return nextCursor == null ? null : nextCursor.get();
+    }
+
+    void setNextCursor(Supplier<String> nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @param nextPage whether there is a next page, called after the query was executed
+     */
+    void setNextPage(BooleanSupplier nextPage) {
+        this.nextPage = nextPage;
+    }
+
+    /**
+     * @param totalSizeStrategy how to determine {@link #getTotalSize()}, {@code null} for {@link TotalSizeStrategy#DEFAULT}
+     * @since 2.12
+     */
+    public AdvancedResultImpl setTotalSizeStrategy(TotalSizeStrategy totalSizeStrategy) {
+        this.totalSizeStrategy = totalSizeStrategy == null ? TotalSizeStrategy.DEFAULT : totalSizeStrategy;
+        return this;
+    }
+
+    /**
+     * @param countLimit the number of results after which the count query stopped counting (see {@link Criteria#setCountLimit(Integer)})
+     * @since 2.12
+     */
+    public AdvancedResultImpl setCountLimit(Integer countLimit) {
+        this.countLimit = countLimit;
+        return this;
+    }
+
     @Override
     public AdvancedResultItem getFirstResult() {
         ResultIterator<AdvancedResultItem> items = getItems();
@@ -211,8 +240,40 @@ public class AdvancedResultImpl implements AdvancedResult {
         return null;
     }
 
+    private class TotalSizeContext implements TotalSizeStrategy.Context {
 
+        @Override
+        public QueryResult getQueryResult() {
+            return LocalPage.unwrap(jcrQueryResult.get());
+        }
 
+        @Override
+        public boolean isPaged() {
+            return localPage == null && itemsPerPage != null && itemsPerPage > 0;
+        }
 
+        @Override
+        public long getSize() {
+            if (localPage != null) {
+                // determined while executing
+                jcrQueryResult.get();
+                return localPage.getTotalSize();
+            }
+            try {
+                return jcrQueryResult.getSize();
+            } catch (RepositoryException e) {
+                throw new JCRQueryException(statement, e);
+            }
+        }
 
+        @Override
+        public long count() {
+            long count = queryCounter.getAsLong();
+            if (countLimit != null && count > countLimit) {
+                totalIsLowerBound = true;
+                return countLimit;
+            }
+            return count;
+        }
+    }
 }
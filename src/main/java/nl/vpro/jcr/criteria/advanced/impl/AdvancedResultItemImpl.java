@@ -41,6 +41,8 @@ public class AdvancedResultItemImpl extends JcrNodeWrapper implements AdvancedRe
 
     private final Row row;
 
+    private Node node;
+
     public AdvancedResultItemImpl(Row row)  {
         this.row = row;
     }
@@ -92,10 +94,16 @@ public class AdvancedResultItemImpl extends JcrNodeWrapper implements AdvancedRe
         return 0;
     }
 
+    /**
+     * The node of the row. It is resolved only once, since every {@link Node} method of this item is delegated to it.
+     */
     @Override
     @SneakyThrows
     protected Node getNode() {
-        return row.getNode();
+        if (node == null) {
+            node = row.getNode();
+        }
+        return node;
     }
 
     @Override
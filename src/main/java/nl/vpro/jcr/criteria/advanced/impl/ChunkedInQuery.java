@@ -0,0 +1,161 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.Session;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
+
+import org.apache.commons.lang3.StringUtils;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.TranslatableCriteria;
+import nl.vpro.jcr.criteria.query.criterion.InExpression;
+import nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl;
+
+/**
+ * Executes a criteria with a very large {@link InExpression} as several queries, each with a part (a 'chunk') of the values
+ * (see {@link AbstractCriteriaImpl#setInChunkSize(int)}). This keeps the statements small enough for the query engine to
+ * parse and execute efficiently.
+ * <p>
+ * The chunks are executed one after another, on the same session. The results are merged with a k-way merge on the orders of
+ * the criteria, and nodes matched by more than one chunk are returned only once. Paging is applied on the merged results, and
+ * the total size is determined by consuming them all (see {@link LocalPage}). The merged order follows {@link PropertyOrder},
+ * which can differ from the order of the query engine for e.g. multi-valued properties (see {@link MergingRowIterator}).
+ * <p>
+ * Criteria with orders which can't be evaluated on the nodes themselves (e.g. on score) are not chunked.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public final class ChunkedInQuery {
+
+    private final AbstractCriteriaImpl criteria;
+
+    private final InExpression in;
+
+    private final PropertyOrder order;
+
+    private ChunkedInQuery(AbstractCriteriaImpl criteria, InExpression in, PropertyOrder order) {
+        this.criteria = criteria;
+        this.in = in;
+        this.order = order;
+    }
+
+    /**
+     * @return the chunked query for the given criteria, or {@code null} if it doesn't need (or support) chunking
+     */
+    public static ChunkedInQuery of(AbstractCriteriaImpl criteria) {
+        int chunkSize = criteria.getInChunkSize();
+        if (chunkSize <= 0 || StringUtils.isNotBlank(criteria.getSpellCheckString())) {
+            return null;
+        }
+        InExpression largest = null;
+        for (TranslatableCriteria.CriterionEntry entry : criteria.getCriterionEntries()) {
+            if (entry.getCriterion() instanceof InExpression) {
+                InExpression in = (InExpression) entry.getCriterion();
+                if (in.getValues().length > chunkSize && (largest == null || in.getValues().length > largest.getValues().length)) {
+                    largest = in;
+                }
+            }
+        }
+        if (largest == null) {
+            return null;
+        }
+        PropertyOrder order = PropertyOrder.of(criteria.getOrderEntries());
+        if (order == null) {
+            log.debug("Cannot merge on the orders of {}, not chunking", criteria);
+            return null;
+        }
+        return new ChunkedInQuery(criteria, largest, order);
+    }
+
+    /**
+     * The criteria for the chunks, which are equal to the original one, but with only a part of the values of the in expression.
+     */
+    List<AdvancedCriteriaImpl> getChunks() {
+        CharSequence[] values = in.getValues();
+        int chunkSize = criteria.getInChunkSize();
+        List<AdvancedCriteriaImpl> chunks = new ArrayList<>();
+        for (int from = 0; from < values.length; from += chunkSize) {
+            InExpression part = new InExpression(in.getNodeName(), Arrays.copyOfRange(values, from, Math.min(values.length, from + chunkSize)), in.isUseContains());
+            AdvancedCriteriaImpl chunk = criteria.copy(criterion -> criterion == in ? part : criterion);
+            chunk.setDirectLookup(false);
+            chunk.setInChunkSize(0);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    public AdvancedResultImpl execute(Session session, String language, Integer maxResults, int offset) {
+        List<AdvancedCriteriaImpl> chunks = getChunks();
+        List<Criteria.Expression> expressions = new ArrayList<>(chunks.size());
+        for (AdvancedCriteriaImpl chunk : chunks) {
+            expressions.add(chunk.toExpression(language));
+        }
+        log.debug("Executing {} values in {} chunks", in.getValues().length, chunks.size());
+        List<Supplier<RowIterator>> sources = new ArrayList<>(expressions.size());
+        for (Criteria.Expression expression : expressions) {
+            sources.add(() -> QueryExecutorHelper.execute(expression, () -> -1, session, null, 0, null, false).getRowIterator());
+        }
+        Criteria.Expression first = expressions.get(0);
+        int pageNumberStartingFromOne = 1;
+        if (maxResults != null && maxResults > 0 && offset > maxResults - 1) {
+            pageNumberStartingFromOne = (offset / maxResults) + 1;
+        }
+        return new AdvancedResultImpl(
+            () -> new MergedQueryResult(new MergingRowIterator(sources, order, first)),
+            () -> count(sources, first),
+            maxResults,
+            pageNumberStartingFromOne,
+            first,
+            null,
+            true,
+            offset);
+    }
+
+    /**
+     * The chunks can match the same nodes, so their counts can't just be added up: the distinct nodes of all chunks are counted.
+     */
+    private static long count(List<Supplier<RowIterator>> sources, Criteria.Expression expression) {
+        RowIterator rows = new MergingRowIterator(sources, null, expression);
+        while (rows.hasNext()) {
+            rows.nextRow();
+        }
+        return rows.getSize();
+    }
+
+    private static class MergedQueryResult implements QueryResult {
+        private final RowIterator rows;
+
+        private MergedQueryResult(RowIterator rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return new String[0];
+        }
+
+        @Override
+        public RowIterator getRows() {
+            return rows;
+        }
+
+        @Override
+        public NodeIterator getNodes() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] getSelectorNames() {
+            return new String[] {NodeQueryResult.SELECTOR};
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.JCRQueryException;
+
+/**
+ * The outcome of an execution of a query, independent of its session: the identifiers and scores of the resulting nodes, and
+ * whether there is a next page. It can be shared between sessions, which {@link #resolve(Session, Criteria.Expression) resolve}
+ * the nodes themselves, so that their access rights are applied.
+ *
+ * @since 2.12
+ */
+@Slf4j
+class Hits {
+
+    private final List<String> identifiers = new ArrayList<>();
+
+    private final List<Double> scores = new ArrayList<>();
+
+    private boolean more;
+
+    private Hits() {
+    }
+
+    static Hits of(AdvancedResultImpl result, Criteria.Expression expression) {
+        Hits hits = new Hits();
+        try {
+            RowIterator rows = result.getRowIterator();
+            while (rows.hasNext()) {
+                Row row = rows.nextRow();
+                hits.identifiers.add(row.getNode().getIdentifier());
+                hits.scores.add(row.getScore());
+            }
+        } catch (RepositoryException e) {
+            throw new JCRQueryException(expression, e);
+        }
+        hits.more = result.hasNextPage();
+        return hits;
+    }
+
+    /**
+     * Identifies the execution of a query with the given paging, in the workspace and for the user of the session
+     */
+    static List<Object> key(Criteria.Expression expression, Session session, Integer maxResults, int offset) {
+        return Arrays.asList(
+            session.getWorkspace().getName(),
+            session.getUserID(),
+            expression.getLanguage(),
+            expression.getStatement(),
+            expression.getBindVariables(),
+            maxResults,
+            offset);
+    }
+
+    boolean isMore() {
+        return more;
+    }
+
+    NodeQueryResult resolve(Session session, Criteria.Expression expression) {
+        List<Row> rows = new ArrayList<>(identifiers.size());
+        try {
+            for (int i = 0; i < identifiers.size(); i++) {
+                Node node;
+                try {
+                    node = session.getNodeByIdentifier(identifiers.get(i));
+                } catch (ItemNotFoundException infe) {
+                    // removed in the mean time, or not accessible
+                    log.debug("{}: {}", expression, infe.getMessage());
+                    continue;
+                }
+                rows.add(new NodeQueryResult.NodeRow(node, scores.get(i)));
+            }
+        } catch (RepositoryException e) {
+            throw new JCRQueryException(expression, e);
+        }
+        return NodeQueryResult.ofRows(rows);
+    }
+}
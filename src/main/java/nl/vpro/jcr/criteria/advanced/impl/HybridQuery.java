@@ -0,0 +1,257 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.commons.lang3.StringUtils;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.JCRQueryException;
+import nl.vpro.jcr.criteria.query.PostFilterStrategy;
+import nl.vpro.jcr.criteria.query.TranslatableCriteria;
+import nl.vpro.jcr.criteria.query.criterion.Criterion;
+import nl.vpro.jcr.criteria.query.criterion.PostFilters;
+import nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl;
+
+/**
+ * Executes a criteria partly by the query engine, and partly in memory (see {@link AbstractCriteriaImpl#setPostFilterStrategy(PostFilterStrategy)}).
+ * The criterions which are not post filtered are 'pushed down' to the query engine, and the rows of that query are filtered
+ * by the others (see {@link Criterion#matches(javax.jcr.Node, Criteria)}) while streaming them.
+ * <p>
+ * Paging is applied after filtering. Paged criteria are executed in batches: the first one fetches twice the number of rows
+ * needed, and the size of the next ones follows from the fraction of the rows which matched so far (at least doubling, at most
+ * {@link #MAX_BATCH_SIZE}). The total size is determined by filtering all rows, but only if it is asked for.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public final class HybridQuery {
+
+    static final int MAX_BATCH_SIZE = 10000;
+
+    private static final int MIN_BATCH_SIZE = 16;
+
+    private final AbstractCriteriaImpl criteria;
+
+    private final AdvancedCriteriaImpl pushdown;
+
+    private final List<Criterion> postFilters;
+
+    private HybridQuery(AbstractCriteriaImpl criteria, AdvancedCriteriaImpl pushdown, List<Criterion> postFilters) {
+        this.criteria = criteria;
+        this.pushdown = pushdown;
+        this.postFilters = postFilters;
+    }
+
+    /**
+     * @param language the language the criteria will be executed in. Criterions which can't be evaluated consistently with it
+     * (see {@link PostFilters#isEvaluable(Criterion, String)}) are not post filtered.
+     * @return the hybrid query for the given criteria, or {@code null} if none of its criterions are post filtered
+     */
+    public static HybridQuery of(AbstractCriteriaImpl criteria, String language) {
+        PostFilterStrategy strategy = criteria.getPostFilterStrategy();
+        if (strategy == null || strategy == PostFilterStrategy.NONE
+            || StringUtils.isNotBlank(criteria.getSpellCheckString()) || criteria.isForcePagingWithDocumentOrder()) {
+            return null;
+        }
+        Set<Criterion> filtered = Collections.newSetFromMap(new IdentityHashMap<>());
+        String rendered = null;
+        for (TranslatableCriteria.CriterionEntry entry : criteria.getCriterionEntries()) {
+            if (strategy.isPostFiltered(entry.getCriterion())) {
+                if (rendered == null) {
+                    rendered = PostFilters.language(criteria, language);
+                }
+                if (PostFilters.isEvaluable(entry.getCriterion(), rendered)) {
+                    filtered.add(entry.getCriterion());
+                }
+            }
+        }
+        if (filtered.isEmpty()) {
+            return null;
+        }
+        AdvancedCriteriaImpl pushdown = criteria.copy(criterion -> filtered.contains(criterion) ? null : criterion);
+        pushdown.setPostFilterStrategy(null);
+        return new HybridQuery(criteria, pushdown, new ArrayList<>(filtered));
+    }
+
+    List<Criterion> getPostFilters() {
+        return postFilters;
+    }
+
+    AdvancedCriteriaImpl getPushdown() {
+        return pushdown;
+    }
+
+    public AdvancedResultImpl execute(Session session, String language, Integer maxResults, int offset) {
+        Criteria.Expression expression = pushdown.toExpression(language);
+        log.debug("Executing {} and filtering on {}", expression, postFilters);
+        Integer limit = maxResults == null || maxResults <= 0 ? null : maxResults;
+        Page page = new Page(expression, session, offset, limit);
+        int pageNumberStartingFromOne = 1;
+        if (limit != null && offset > limit - 1) {
+            pageNumberStartingFromOne = (offset / limit) + 1;
+        }
+        AdvancedResultImpl result = new AdvancedResultImpl(
+            page,
+            () -> page.totalSize >= 0 ? page.totalSize : count(expression, session),
+            maxResults,
+            pageNumberStartingFromOne,
+            expression,
+            null,
+            false,
+            offset);
+        result.setNextPage(() -> page.hasMore);
+        return result;
+    }
+
+    private long count(Criteria.Expression expression, Session session) {
+        FilteringIterator rows = new FilteringIterator(expression, session, null);
+        long count = 0;
+        while (rows.hasNext()) {
+            rows.next();
+            count++;
+        }
+        log.debug("Counted {} of {} rows of {}", count, rows.scanned, expression);
+        return count;
+    }
+
+    /**
+     * Executes the query, and takes the page out of the filtered rows.
+     */
+    private class Page implements Supplier<QueryResult> {
+        private final Criteria.Expression expression;
+        private final Session session;
+        private final int offset;
+        private final Integer limit;
+
+        private volatile long totalSize = -1;
+        private volatile boolean hasMore;
+
+        private Page(Criteria.Expression expression, Session session, int offset, Integer limit) {
+            this.expression = expression;
+            this.session = session;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public QueryResult get() {
+            // one more than the page, to know whether there is a next one
+            FilteringIterator rows = new FilteringIterator(expression, session, limit == null ? null : (long) offset + limit + 1);
+            long skipped = 0;
+            while (skipped < offset && rows.hasNext()) {
+                rows.next();
+                skipped++;
+            }
+            List<Row> window = new ArrayList<>(limit == null ? 16 : limit);
+            while ((limit == null || window.size() < limit) && rows.hasNext()) {
+                window.add(rows.next());
+            }
+            hasMore = rows.hasNext();
+            if (!hasMore) {
+                totalSize = skipped + window.size();
+            }
+            log.debug("Page {}-{} after filtering {} rows of {}", offset, offset + window.size(), rows.scanned, expression);
+            return NodeQueryResult.ofRows(window);
+        }
+    }
+
+    /**
+     * The rows of the pushed down query which match the post filters. The query is executed in batches of adaptive size if the
+     * number of rows needed is known, or at once otherwise.
+     */
+    private class FilteringIterator implements Iterator<Row> {
+        private final Criteria.Expression expression;
+        private final Session session;
+        private final Long needed;
+
+        private int batchSize;
+        private AdvancedResultImpl batch;
+        private RowIterator rows;
+        private boolean exhausted;
+        private long scanned;
+        private long matched;
+        private Row next;
+
+        private FilteringIterator(Criteria.Expression expression, Session session, Long needed) {
+            this.expression = expression;
+            this.session = session;
+            this.needed = needed;
+            this.batchSize = needed == null ? 0 : (int) Math.min(MAX_BATCH_SIZE, Math.max(MIN_BATCH_SIZE, needed * 2));
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null) {
+                    if (rows != null && rows.hasNext()) {
+                        Row row = rows.nextRow();
+                        scanned++;
+                        if (matches(row)) {
+                            matched++;
+                            next = row;
+                        }
+                    } else if (exhausted || (rows != null && (batchSize == 0 || !batch.hasNextPage()))) {
+                        exhausted = true;
+                        return false;
+                    } else {
+                        fetch();
+                    }
+                }
+                return true;
+            } catch (RepositoryException e) {
+                throw new JCRQueryException(expression, e);
+            }
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Row result = next;
+            next = null;
+            return result;
+        }
+
+        private void fetch() {
+            if (rows != null) {
+                batchSize = nextBatchSize();
+            }
+            batch = QueryExecutorHelper.execute(expression, () -> -1, session, batchSize == 0 ? null : batchSize, (int) scanned, null, false);
+            rows = batch.getRowIterator();
+        }
+
+        /**
+         * The number of rows expected to be needed for the remaining matches, given the fraction which matched so far
+         */
+        private int nextBatchSize() {
+            long remaining = Math.max(1, needed - matched);
+            long estimate = matched == 0 ? (long) batchSize * 4 : 2 * remaining * scanned / matched;
+            return (int) Math.min(MAX_BATCH_SIZE, Math.max((long) batchSize * 2, estimate));
+        }
+
+        private boolean matches(Row row) throws RepositoryException {
+            for (Criterion criterion : postFilters) {
+                if (!criterion.matches(row.getNode(), criteria)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
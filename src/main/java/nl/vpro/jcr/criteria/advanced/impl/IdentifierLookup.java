@@ -0,0 +1,228 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+import javax.jcr.*;
+import javax.jcr.query.Row;
+
+import org.apache.commons.lang3.StringUtils;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.JCRQueryException;
+import nl.vpro.jcr.criteria.query.criterion.*;
+import nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl;
+import nl.vpro.jcr.criteria.query.impl.Column;
+
+/**
+ * Executes a criteria which only selects a set of nodes by identifier ({@link Restrictions#in(UUID...)}) or by path
+ * ({@link Restrictions#isSame(String)}, or a disjunction of those), without using the query engine. The nodes are resolved
+ * directly via {@link Session#getNodeByIdentifier(String)} and {@link Session#getNode(String)}, and the type, the base path
+ * and the orders of the criteria are applied in memory. The nodes are resolved one at a time, since jcr has no way to resolve
+ * several at once. This is only done if the criteria {@link AbstractCriteriaImpl#isDirectLookup() asks for it}.
+ * <p>
+ * The results are the same as those of the query, with these differences:
+ * <ul>
+ *     <li>Without orders, the results are in the order of the given identifiers and paths (the order of the query is
+ *     undefined too)</li>
+ *     <li>Nodes which are new in the session are skipped, but unsaved modifications of existing nodes are visible</li>
+ *     <li>Scores are always 1, and there are no excerpts</li>
+ * </ul>
+ *
+ * @since 2.12
+ */
+@Slf4j
+public final class IdentifierLookup {
+
+    private static final String JCR_UUID_ATTRIBUTE = Criterion.ATTRIBUTE_SELECTOR + Criterion.JCR_UUID;
+
+    /**
+     * Identifiers and (absolute) paths, in order of appearance
+     */
+    private final Set<String> targets;
+
+    private final String type;
+
+    private final String basePath;
+
+    private final PropertyOrder order;
+
+    private IdentifierLookup(Set<String> targets, String type, String basePath, PropertyOrder order) {
+        this.targets = targets;
+        this.type = type;
+        this.basePath = basePath;
+        this.order = order;
+    }
+
+    /**
+     * @return the lookup for the given criteria, or {@code null} if it must be executed by the query engine.
+     */
+    public static IdentifierLookup of(AbstractCriteriaImpl criteria) {
+        if (!criteria.isDirectLookup()
+            || criteria.getCriterionEntries().size() != 1
+            || StringUtils.isNotBlank(criteria.getSpellCheckString())
+            || !(criteria.getColumns().isEmpty() || criteria.getColumns().equals(Collections.singletonList(Column.ALL)))) {
+            return null;
+        }
+        Set<String> targets = new LinkedHashSet<>();
+        if (!collect(criteria.getCriterionEntries().iterator().next().getCriterion(), targets)) {
+            return null;
+        }
+        String basePath = basePath(criteria.getBasePath());
+        if (basePath != null && (basePath.contains("*") || !basePath.startsWith("/"))) {
+            return null;
+        }
+        PropertyOrder order = PropertyOrder.of(criteria.getOrderEntries());
+        if (order == null) {
+            return null;
+        }
+        return new IdentifierLookup(targets, criteria.getType(), basePath, order);
+    }
+
+    /**
+     * Resolves the nodes (lazily), and wraps them in an {@link AdvancedResultImpl}
+     * @param expression the expression that would have been executed otherwise, for logging and error reporting
+     */
+    public AdvancedResultImpl execute(Criteria.Expression expression, Session session, Integer maxResults, int offset) {
+        int pageNumberStartingFromOne = 1;
+        if (maxResults != null && maxResults > 0 && offset > maxResults - 1) {
+            pageNumberStartingFromOne = (offset / maxResults) + 1;
+        }
+        log.debug("Resolving {} nodes directly in stead of executing {}", targets.size(), expression);
+        MemoizedQueryResult result = MemoizedQueryResult.of(() -> {
+            try {
+                return NodeQueryResult.ofRows(resolve(session));
+            } catch (RepositoryException e) {
+                throw new JCRQueryException(expression, e);
+            }
+        });
+        return new AdvancedResultImpl(
+            result,
+            () -> {
+                try {
+                    return result.getSize();
+                } catch (RepositoryException e) {
+                    throw new JCRQueryException(expression, e);
+                }
+            },
+            maxResults,
+            pageNumberStartingFromOne,
+            expression,
+            null,
+            true,
+            offset);
+    }
+
+    List<Row> resolve(Session session) throws RepositoryException {
+        Map<String, Row> result = new LinkedHashMap<>();
+        for (String target : targets) {
+            Node node = target.startsWith("/") ? byPath(session, target) : byIdentifier(session, target);
+            if (node != null && matches(node)) {
+                result.putIfAbsent(node.getIdentifier(), new NodeQueryResult.NodeRow(node));
+            }
+        }
+        List<Row> rows = new ArrayList<>(result.values());
+        if (!order.isEmpty()) {
+            order.sort(rows);
+        }
+        return rows;
+    }
+
+    private boolean matches(Node node) throws RepositoryException {
+        if (node.isNew()) {
+            // the query engine doesn't see unsaved nodes
+            return false;
+        }
+        if (type != null && !node.isNodeType(type)) {
+            return false;
+        }
+        return basePath == null || node.getPath().startsWith(basePath + "/");
+    }
+
+    private static Node byIdentifier(Session session, String identifier) throws RepositoryException {
+        Node node;
+        try {
+            node = session.getNodeByIdentifier(identifier);
+        } catch (ItemNotFoundException infe) {
+            return null;
+        }
+        // the query matches on the jcr:uuid property, which only referenceable nodes have
+        if (node.hasProperty(Criterion.JCR_UUID) && identifier.equals(node.getProperty(Criterion.JCR_UUID).getString())) {
+            return node;
+        }
+        return null;
+    }
+
+    private static Node byPath(Session session, String path) throws RepositoryException {
+        return session.nodeExists(path) ? session.getNode(path) : null;
+    }
+
+    /**
+     * Collects the identifiers and paths selected by the criterion
+     * @return whether the criterion only selects nodes by identifier or path, and selects at least one
+     */
+    private static boolean collect(Criterion criterion, Set<String> targets) {
+        if (criterion instanceof InExpression) {
+            InExpression in = (InExpression) criterion;
+            if (in.isUseContains() || !(Criterion.JCR_UUID.equals(in.getNodeName()) || JCR_UUID_ATTRIBUTE.equals(in.getNodeName()))) {
+                return false;
+            }
+            CharSequence[] values = in.getValues();
+            for (CharSequence value : values) {
+                String identifier = String.valueOf(value);
+                if (!isIdentifier(identifier)) {
+                    return false;
+                }
+                targets.add(identifier);
+            }
+            return values.length > 0;
+        }
+        if (criterion instanceof IsSame) {
+            String path = ((IsSame) criterion).getPath();
+            if (!isPath(path)) {
+                return false;
+            }
+            targets.add(path);
+            return true;
+        }
+        if (criterion instanceof Disjunction) {
+            List<Criterion> clauses = ((Disjunction) criterion).getCriteria();
+            for (Criterion clause : clauses) {
+                if (!collect(clause, targets)) {
+                    return false;
+                }
+            }
+            return !clauses.isEmpty();
+        }
+        return false;
+    }
+
+    private static boolean isIdentifier(String identifier) {
+        try {
+            return UUID.fromString(identifier).toString().equals(identifier);
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
+    }
+
+    private static boolean isPath(String path) {
+        return path != null && path.startsWith("/") && (path.length() == 1 || !path.endsWith("/"))
+            && !path.contains("//") && !path.contains("*") && !path.contains("'");
+    }
+
+    /**
+     * @return the base path without trailing slash, or {@code null} if it doesn't restrict anything
+     */
+    private static String basePath(String basePath) {
+        if (basePath == null || "/".equals(basePath) || Criterion.ALL_ELEMENTS.equals(basePath)) {
+            return null;
+        }
+        return StringUtils.removeEnd(basePath, "/");
+    }
+
+    @Override
+    public String toString() {
+        return "lookup " + targets + (type == null ? "" : " " + type) + (basePath == null ? "" : " in " + basePath) + (order.isEmpty() ? "" : " ordered");
+    }
+}
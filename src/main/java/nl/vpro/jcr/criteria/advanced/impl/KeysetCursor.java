@@ -0,0 +1,95 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.Getter;
+
+import java.io.*;
+import java.util.*;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+
+/**
+ * The position after the last row of a page: the values of the order by properties of that row (including the tiebreaker, see
+ * {@link KeysetPaging}), and the identifiers of rows with the same values which were already returned but can't be told apart
+ * by the tiebreaker (normally none). This is serialized into an opaque, url safe, token.
+ *
+ * @since 2.12
+ */
+@Getter
+class KeysetCursor {
+
+    private static final int VERSION = 2;
+
+    private final Value[] key;
+
+    private final Set<String> identifiers;
+
+    KeysetCursor(Value[] key, Set<String> identifiers) {
+        this.key = key;
+        this.identifiers = identifiers;
+    }
+
+    /**
+     * @param orders the number of orders of the criteria the token is used with
+     * @throws IllegalArgumentException if the token is not a valid cursor for the given number of orders
+     */
+    static KeysetCursor parse(String token, int orders) {
+        Value[] key = null;
+        Set<String> identifiers = new LinkedHashSet<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (in.readByte() == VERSION) {
+                key = new Value[in.readShort()];
+                for (int i = 0; i < key.length; i++) {
+                    int type = in.readByte();
+                    if (type >= 0) {
+                        key[i] = ValueFactoryImpl.getInstance().createValue(in.readUTF(), type);
+                    }
+                }
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    identifiers.add(in.readUTF());
+                }
+            }
+        } catch (IOException | RepositoryException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor " + token + ": " + e.getMessage(), e);
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Unsupported cursor " + token);
+        }
+        if (key.length != orders) {
+            throw new IllegalArgumentException("Cursor " + token + " has " + key.length + " values, but the criteria has " + orders + " orders");
+        }
+        return new KeysetCursor(key, identifiers);
+    }
+
+    String toToken() throws RepositoryException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeShort(key.length);
+            for (Value value : key) {
+                if (value == null) {
+                    out.writeByte(-1);
+                } else {
+                    out.writeByte(value.getType());
+                    out.writeUTF(value.getString());
+                }
+            }
+            out.writeInt(identifiers.size());
+            for (String identifier : identifiers) {
+                out.writeUTF(identifier);
+            }
+        } catch (IOException e) {
+            // can't happen on a byte array
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(key) + identifiers;
+    }
+}
@@ -0,0 +1,248 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+import javax.jcr.*;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.JCRQueryException;
+import nl.vpro.jcr.criteria.query.ResultIterator;
+import nl.vpro.jcr.criteria.query.criterion.Criterion;
+import nl.vpro.jcr.criteria.query.criterion.Order;
+import nl.vpro.jcr.criteria.query.criterion.Restrictions;
+import nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl;
+
+/**
+ * 'Keyset' (or 'search after') paging. In stead of skipping the rows of the previous pages with an offset, which the query
+ * engine can only do by producing them all, the next page is selected with range constraints on the order by properties,
+ * starting at the values of the last row of the previous page (see {@link nl.vpro.jcr.criteria.query.AdvancedResult#getNextCursor()}).
+ * So the cost of a page doesn't depend on how deep it is.
+ * <p>
+ * To make the position unique when rows have the same values, {@code jcr:uuid} is added as last order, and its value of the last
+ * row is part of the cursor, so that the cursor and the cost of a page stay the same however many rows have equal values.
+ * This requires that all orders are on properties of the node (not on e.g. score). Rows which can't be told apart like that
+ * are recognized by their identifiers, which are then part of the cursor: the rows on an offset paged first page with the
+ * same values as its last row (which were not ordered by {@code jcr:uuid}), and ties between nodes which are not referenceable.
+ * <p>
+ * The total size is still determined for the complete criteria, so that it is the same for all pages.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public final class KeysetPaging {
+
+    private KeysetPaging() {
+        // don't instantiate
+    }
+
+    /**
+     * Executes the criteria, starting after its {@link AbstractCriteriaImpl#getSearchAfter() cursor}. The first result (offset) of
+     * the criteria is ignored.
+     * @throws IllegalArgumentException if the criteria is not ordered on properties or if the cursor is not valid for it
+     */
+    public static AdvancedResultImpl execute(AbstractCriteriaImpl criteria, Session session, String language) {
+        PropertyOrder order = PropertyOrder.of(criteria.getOrderEntries());
+        if (order == null || order.isEmpty()) {
+            throw new IllegalArgumentException("Keyset paging requires orders on properties, not " + criteria.getOrderEntries());
+        }
+        PropertyOrder keyOrder = order.then(Criterion.JCR_UUID);
+        KeysetCursor cursor = KeysetCursor.parse(criteria.getSearchAfter(), keyOrder.size());
+        Integer pageSize = criteria.getMaxResults() != null && criteria.getMaxResults() > 0 ? criteria.getMaxResults() : null;
+
+        AbstractCriteriaImpl after = criteria.copy(UnaryOperator.identity());
+        if (keyOrder != order) {
+            after.addOrder(Order.asc(Criterion.ATTRIBUTE_SELECTOR + Criterion.JCR_UUID));
+        }
+        int tiebreaker = keyOrder.size() - 1;
+        try {
+            after.add(cursor.getKey()[tiebreaker] == null ?
+                // the position among rows with the same values is not known, they are all selected
+                after(keyOrder, cursor.getKey(), tiebreaker, true) :
+                after(keyOrder, cursor.getKey(), keyOrder.size(), false));
+        } catch (RepositoryException e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor + ": " + e.getMessage(), e);
+        }
+        Criteria.Expression expression = after.toExpression(language);
+        // the rows which were already returned are skipped
+        Integer limit = pageSize == null ? null : pageSize + cursor.getIdentifiers().size();
+        log.debug("Executing {} after {}", expression, cursor);
+
+        AtomicBoolean more = new AtomicBoolean(false);
+        MemoizedQueryResult result = MemoizedQueryResult.of(() -> {
+            AdvancedResultImpl window = QueryExecutorHelper.execute(expression, () -> -1, session, limit, 0, null, false);
+            List<Row> rows = new ArrayList<>();
+            try {
+                RowIterator iterator = window.getRowIterator();
+                while (iterator.hasNext() && (pageSize == null || rows.size() < pageSize)) {
+                    Row row = iterator.nextRow();
+                    if (!returned(row, keyOrder, cursor)) {
+                        rows.add(row);
+                    }
+                }
+                // the window has one row more than the limit, if there are more
+                boolean hasMore = window.hasNextPage();
+                while (!hasMore && iterator.hasNext()) {
+                    hasMore = !returned(iterator.nextRow(), keyOrder, cursor);
+                }
+                more.set(hasMore);
+            } catch (RepositoryException e) {
+                throw new JCRQueryException(expression, e);
+            }
+            return NodeQueryResult.ofRows(rows);
+        });
+        AdvancedResultImpl advancedResult = new AdvancedResultImpl(
+            result,
+            criteria.getCountSupplier(session, language),
+            pageSize,
+            1,
+            expression,
+            null,
+            false,
+            0);
+        advancedResult.setNextCursor(() -> nextCursor(advancedResult, keyOrder, cursor, true));
+        if (pageSize != null) {
+            advancedResult.setNextPage(more::get);
+        }
+        return advancedResult;
+    }
+
+    private static boolean returned(Row row, PropertyOrder keyOrder, KeysetCursor cursor) throws RepositoryException {
+        Node node = row.getNode();
+        return cursor.getIdentifiers().contains(node.getIdentifier())
+            && keyOrder.compare(keyOrder.key(node), cursor.getKey(), keyOrder.size() - 1) == 0;
+    }
+
+    /**
+     * Makes {@link AdvancedResultImpl#getNextCursor()} available on a result of an offset paged criteria, so that the next pages
+     * can be retrieved with keyset paging.
+     */
+    public static AdvancedResultImpl withNextCursor(AdvancedResultImpl result, AbstractCriteriaImpl criteria) {
+        PropertyOrder order = PropertyOrder.of(criteria.getOrderEntries());
+        if (order != null && !order.isEmpty()) {
+            result.setNextCursor(() -> nextCursor(result, order.then(Criterion.JCR_UUID), null, false));
+        }
+        return result;
+    }
+
+    /**
+     * @param keyOrder the orders of the criteria, followed by the tiebreaker
+     * @param tiebroken whether the rows of the result are ordered by the tiebreaker too
+     */
+    @SneakyThrows(RepositoryException.class)
+    private static String nextCursor(AdvancedResultImpl result, PropertyOrder keyOrder, KeysetCursor previous, boolean tiebroken) {
+        Integer pageSize = result.getItemsPerPage();
+        if (pageSize == null || pageSize <= 0) {
+            return null;
+        }
+        List<Node> nodes = new ArrayList<>(pageSize);
+        ResultIterator<Row> rows = result.getItems(row -> row);
+        while (rows.hasNext()) {
+            nodes.add(rows.next().getNode());
+        }
+        if (nodes.size() < pageSize) {
+            return null;
+        }
+        int tiebreaker = keyOrder.size() - 1;
+        Value[] last = keyOrder.key(nodes.get(nodes.size() - 1));
+        if (!tiebroken) {
+            last[tiebreaker] = null;
+        }
+        Set<String> identifiers = new LinkedHashSet<>();
+        if (previous != null && keyOrder.compare(previous.getKey(), last, tiebreaker) == 0) {
+            // rows with these values which were already returned, but may be after the tiebreaker of the last row
+            identifiers.addAll(previous.getIdentifiers());
+        }
+        if (last[tiebreaker] == null) {
+            for (Node node : nodes) {
+                if (keyOrder.compare(keyOrder.key(node), last, tiebreaker) == 0) {
+                    identifiers.add(node.getIdentifier());
+                }
+            }
+        }
+        return new KeysetCursor(last, identifiers).toToken();
+    }
+
+    /**
+     * The rows ordered after the given values on the first {@code size} orders:
+     * {@code (o1 > v1) OR (o1 = v1 AND o2 > v2) OR ... OR (o1 = v1 AND ... AND on > vn)}, and, if inclusive,
+     * {@code OR (o1 = v1 AND ... AND on = vn)}. Missing values are ordered first, like jackrabbit does.
+     */
+    static Criterion after(PropertyOrder order, Value[] key, int size, boolean inclusive) throws RepositoryException {
+        List<Criterion> disjuncts = new ArrayList<>();
+        List<Criterion> equal = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String name = Criterion.ATTRIBUTE_SELECTOR + order.getPropertyName(i);
+            Criterion after = after(name, key[i], order.isAscending(i));
+            if (after != null) {
+                List<Criterion> conjuncts = new ArrayList<>(equal);
+                conjuncts.add(after);
+                disjuncts.add(and(conjuncts));
+            }
+            equal.add(key[i] == null ? Restrictions.isNull(name) : compare(name, 0, key[i]));
+        }
+        if (inclusive) {
+            disjuncts.add(and(equal));
+        }
+        return disjuncts.size() == 1 ? disjuncts.get(0) : Restrictions.or(disjuncts.toArray(new Criterion[0]));
+    }
+
+    /**
+     * @return the criterion for values strictly after the given one, or {@code null} if there can't be any
+     */
+    private static Criterion after(String name, Value value, boolean ascending) throws RepositoryException {
+        if (ascending) {
+            return value == null ? Restrictions.isNotNull(name) : compare(name, 1, value);
+        }
+        if (value == null) {
+            return null;
+        }
+        Criterion smaller = compare(name, -1, value);
+        return smaller == null ? Restrictions.isNull(name) : Restrictions.or(smaller, Restrictions.isNull(name));
+    }
+
+    /**
+     * @param sign {@code -1} for 'less than', {@code 0} for 'equals', and {@code 1} for 'greater than'
+     * @return the criterion, or {@code null} if nothing can match
+     */
+    private static Criterion compare(String name, int sign, Value value) throws RepositoryException {
+        switch (value.getType()) {
+            case PropertyType.LONG:
+                return compare(name, sign, (Number) value.getLong());
+            case PropertyType.DOUBLE:
+                return compare(name, sign, (Number) value.getDouble());
+            case PropertyType.DECIMAL:
+                return compare(name, sign, (Number) value.getDecimal());
+            case PropertyType.DATE: {
+                Calendar date = value.getDate();
+                return sign < 0 ? Restrictions.lt(name, date) : sign > 0 ? Restrictions.gt(name, date) : Restrictions.eq(name, date);
+            }
+            case PropertyType.BOOLEAN: {
+                boolean b = value.getBoolean();
+                if (sign == 0) {
+                    return Restrictions.eq(name, b);
+                }
+                // false < true
+                return (sign > 0) != b ? Restrictions.eq(name, !b) : null;
+            }
+            default: {
+                String string = value.getString();
+                return sign < 0 ? Restrictions.lt(name, string) : sign > 0 ? Restrictions.gt(name, string) : Restrictions.eq(name, string);
+            }
+        }
+    }
+
+    private static Criterion compare(String name, int sign, Number number) {
+        return sign < 0 ? Restrictions.lt(name, number) : sign > 0 ? Restrictions.gt(name, number) : Restrictions.eq(name, number);
+    }
+
+    private static Criterion and(List<Criterion> conjuncts) {
+        return conjuncts.size() == 1 ? conjuncts.get(0) : Restrictions.and(conjuncts.toArray(new Criterion[0]));
+    }
+}
@@ -0,0 +1,146 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+
+/**
+ * Applies paging on an unpaged query result 'locally' (see {@link Criteria#setForcePagingWithDocumentOrder(boolean)}). The
+ * query is executed once, and its rows are streamed: the rows before the page are skipped, only the rows of the page itself are
+ * kept, and the rows after it are only counted. So the memory needed is proportional to the page size, not to the size of the
+ * result, and the total size is known after this one pass.
+ * <p>
+ * It is also used to hide the extra row of queries which are limited to one more row than the page size, so that it is known
+ * whether there is a next page (see {@link #hasMore()}).
+ *
+ * @since 2.12
+ */
+@Slf4j
+class LocalPage implements Supplier<QueryResult> {
+
+    private final Supplier<QueryResult> execution;
+
+    private final long offset;
+
+    private final Integer limit;
+
+    private volatile long totalSize = -1;
+
+    /**
+     * @param execution executes the unpaged query
+     * @param offset the number of rows to skip
+     * @param limit the maximum number of rows of the page, or {@code null} for all remaining rows
+     */
+    LocalPage(Supplier<QueryResult> execution, long offset, Integer limit) {
+        this.execution = execution;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Executes the query, and returns a result with only the rows of the page.
+     */
+    @Override
+    public QueryResult get() {
+        QueryResult result = execution.get();
+        try {
+            RowIterator rows = result.getRows();
+            long size = rows.getSize();
+            if (size >= 0) {
+                rows.skip(Math.min(offset, size));
+            } else {
+                while (rows.getPosition() < offset && rows.hasNext()) {
+                    rows.skip(1);
+                }
+            }
+            List<Row> window = new ArrayList<>(limit == null ? 16 : limit);
+            while ((limit == null || window.size() < limit) && rows.hasNext()) {
+                window.add(rows.nextRow());
+            }
+            if (size < 0) {
+                size = rows.getPosition();
+                while (rows.hasNext()) {
+                    rows.skip(1);
+                    size++;
+                }
+            }
+            log.debug("Page {}-{} of {}", offset, offset + window.size(), size);
+            totalSize = size;
+            return new PageResult(result, window);
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the total number of rows of the unpaged result, or {@code -1} if the query was not executed yet
+     */
+    long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return whether there are rows after the page (only known after the query was executed)
+     */
+    boolean hasMore() {
+        return limit != null && totalSize > offset + limit;
+    }
+
+    /**
+     * @return whether the given result is a page, which holds its rows
+     */
+    static boolean isPage(QueryResult result) {
+        return result instanceof PageResult;
+    }
+
+    /**
+     * @return the query result the page was taken from, if the given result is a page
+     */
+    static QueryResult unwrap(QueryResult result) {
+        return result instanceof PageResult ? ((PageResult) result).result : result;
+    }
+
+    private static class PageResult implements QueryResult {
+
+        private final QueryResult result;
+
+        private final List<Row> window;
+
+        private PageResult(QueryResult result, List<Row> window) {
+            this.result = result;
+            this.window = window;
+        }
+
+        @Override
+        public String[] getColumnNames() throws RepositoryException {
+            return result.getColumnNames();
+        }
+
+        @Override
+        public RowIterator getRows() {
+            return new RowIteratorAdapter(window);
+        }
+
+        @Override
+        public NodeIterator getNodes() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] getSelectorNames() throws RepositoryException {
+            return result.getSelectorNames();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.Getter;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import javax.jcr.*;
+
+import org.apache.commons.lang3.StringUtils;
+
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.JCRQueryException;
+import nl.vpro.jcr.criteria.query.TranslatableCriteria;
+import nl.vpro.jcr.criteria.query.criterion.Criterion;
+import nl.vpro.jcr.criteria.query.criterion.PostFilters;
+
+/**
+ * The identifiers of all nodes matching a criteria, in its order, kept up to date by {@link MaterializedViews} without executing
+ * the criteria again: every changed node is checked with {@link Criterion#matches(Node, Criteria)}, and inserted at (or removed
+ * from) its position in the order.
+ * <p>
+ * Reads are lock free: they see the identifiers as they were after the last processed change. Like the index of the query
+ * engine, the view is updated asynchronously, so it may briefly lag behind. The paging of the criteria is ignored: the view
+ * contains all matches, and is paged when it is read.
+ *
+ * @since 2.12
+ */
+public class MaterializedView {
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final AdvancedCriteriaImpl criteria;
+
+    private final String basePath;
+
+    private final PropertyOrder order;
+
+    private final Map<String, Item> items = new HashMap<>();
+
+    private final List<Item> ordered = new ArrayList<>();
+
+    private volatile List<String> identifiers = Collections.emptyList();
+
+    private final AtomicLong updates = new AtomicLong();
+
+    @SuppressWarnings("deprecation")
+    MaterializedView(String name, AdvancedCriteriaImpl criteria) {
+        if (StringUtils.isNotBlank(criteria.getSpellCheckString())) {
+            throw new IllegalArgumentException("Cannot materialize criteria with spell checking " + criteria);
+        }
+        // the view is loaded in the language of the criteria
+        final String language = PostFilters.language(criteria, criteria.getLanguage());
+        for (TranslatableCriteria.CriterionEntry entry : criteria.getCriterionEntries()) {
+            if (!PostFilters.isEvaluable(entry.getCriterion(), language)) {
+                throw new IllegalArgumentException("Cannot evaluate " + entry.getCriterion() + " on nodes");
+            }
+        }
+        if (!ObservedPaths.isFixed(criteria.getBasePath())) {
+            // changes can't be related to xpath expressions
+            throw new IllegalArgumentException("Cannot materialize criteria with base path " + criteria.getBasePath());
+        }
+        this.order = PropertyOrder.of(criteria.getOrderEntries());
+        if (this.order == null) {
+            throw new IllegalArgumentException("Cannot order on nodes by " + criteria.getOrderEntries());
+        }
+        this.name = name;
+        this.criteria = criteria;
+        this.basePath = ObservedPaths.path(criteria.getBasePath());
+    }
+
+    /**
+     * @return the identifiers of the matching nodes, in order
+     */
+    public List<String> getIdentifiers() {
+        return identifiers;
+    }
+
+    public int getCount() {
+        return identifiers.size();
+    }
+
+    /**
+     * @return the identifier of the first matching node, or {@code null} if there is none
+     */
+    public String getFirst() {
+        List<String> snapshot = identifiers;
+        return snapshot.isEmpty() ? null : snapshot.get(0);
+    }
+
+    /**
+     * @return the identifiers on the given page
+     */
+    public List<String> page(int itemsPerPage, int pageNumberStartingFromOne) {
+        List<String> snapshot = identifiers;
+        int from = Math.min((Math.max(pageNumberStartingFromOne, 1) - 1) * itemsPerPage, snapshot.size());
+        return snapshot.subList(from, Math.min(from + itemsPerPage, snapshot.size()));
+    }
+
+    /**
+     * The given page of the view as a result, with the nodes resolved by the session (so with its access rights: nodes it can't
+     * read are left out, but still counted).
+     * @param itemsPerPage the size of the page, or {@code null} for all matches
+     */
+    public AdvancedResult execute(Session session, Integer itemsPerPage, int pageNumberStartingFromOne) {
+        List<String> snapshot = identifiers;
+        boolean paged = itemsPerPage != null && itemsPerPage > 0;
+        int offset = paged ? Math.min((Math.max(pageNumberStartingFromOne, 1) - 1) * itemsPerPage, snapshot.size()) : 0;
+        List<String> page = paged ? snapshot.subList(offset, Math.min(offset + itemsPerPage, snapshot.size())) : snapshot;
+        Criteria.Expression expression = criteria.toSql2Expression();
+        AdvancedResultImpl result = new AdvancedResultImpl(
+            () -> {
+                try {
+                    return NodeQueryResult.ofNodes(resolve(page, session));
+                } catch (RepositoryException e) {
+                    throw new JCRQueryException(expression, e);
+                }
+            },
+            snapshot::size,
+            itemsPerPage,
+            pageNumberStartingFromOne,
+            expression,
+            null,
+            false,
+            offset);
+        result.setNextPage(() -> paged && offset + itemsPerPage < snapshot.size());
+        return result;
+    }
+
+    /**
+     * The number of changes to the view since it was registered
+     */
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    /**
+     * Executes the (unpaged) criteria, to fill the view again.
+     */
+    synchronized void load(Session session, String language) throws RepositoryException {
+        items.clear();
+        ordered.clear();
+        for (AdvancedResultItem item : criteria.copy(UnaryOperator.identity()).execute(session, language)) {
+            Item i = new Item(item.getIdentifier(), item.getPath(), order.key(item));
+            if (items.put(i.identifier, i) == null) {
+                ordered.add(i);
+            }
+        }
+        sort();
+        updates.incrementAndGet();
+        publish();
+    }
+
+    /**
+     * Whether the node at the path may be in the view
+     */
+    boolean inScope(String path) {
+        return ObservedPaths.isDescendant(path, basePath);
+    }
+
+    /**
+     * Whether changes at the path may change the view in other ways than by changes of the nodes in it (e.g. a move of an
+     * ancestor of the base path), so that it must be {@link #load(Session, String) loaded} again.
+     */
+    boolean isAffectedAbove(String path) {
+        return path.equals(basePath) || ObservedPaths.isDescendant(basePath, path);
+    }
+
+    /**
+     * Adds, moves or removes the node, depending on whether it matches now.
+     * @return whether the view changed
+     */
+    synchronized boolean update(Node node) throws RepositoryException {
+        String identifier = node.getIdentifier();
+        if (!inScope(node.getPath()) || (criteria.getType() != null && !node.isNodeType(criteria.getType())) || !matches(node)) {
+            return remove(items.get(identifier));
+        }
+        Item item = new Item(identifier, node.getPath(), order.key(node));
+        Item previous = items.put(identifier, item);
+        if (previous != null) {
+            if (order.compare(previous.key, item.key) == 0) {
+                ordered.set(ordered.indexOf(previous), item);
+                return !previous.path.equals(item.path);
+            }
+            ordered.remove(previous);
+        }
+        ordered.add(insertionPoint(item.key), item);
+        return true;
+    }
+
+    /**
+     * Removes the nodes at and below the path
+     * @return whether the view changed
+     */
+    synchronized boolean removeSubtree(String path) {
+        boolean changed = false;
+        for (Item item : new ArrayList<>(ordered)) {
+            if (item.path.equals(path) || ObservedPaths.isDescendant(item.path, path)) {
+                changed |= remove(item);
+            }
+        }
+        return changed;
+    }
+
+    synchronized void publish() {
+        identifiers = Collections.unmodifiableList(ordered.stream().map(i -> i.identifier).collect(Collectors.toList()));
+    }
+
+    synchronized void changed() {
+        updates.incrementAndGet();
+        publish();
+    }
+
+    private boolean remove(Item item) {
+        if (item == null) {
+            return false;
+        }
+        items.remove(item.identifier);
+        ordered.remove(item);
+        return true;
+    }
+
+    private boolean matches(Node node) throws RepositoryException {
+        for (TranslatableCriteria.CriterionEntry entry : criteria.getCriterionEntries()) {
+            if (!entry.getCriterion().matches(node, criteria)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the index after the last item not after the key, so that items which are equal in the order stay in the order in
+     * which they were added
+     */
+    private int insertionPoint(Value[] key) throws RepositoryException {
+        int low = 0;
+        int high = ordered.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (order.compare(ordered.get(mid).key, key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void sort() throws RepositoryException {
+        RepositoryException[] failure = new RepositoryException[1];
+        ordered.sort((a, b) -> {
+            try {
+                return order.compare(a.key, b.key);
+            } catch (RepositoryException e) {
+                failure[0] = e;
+                return 0;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private static List<Node> resolve(List<String> identifiers, Session session) throws RepositoryException {
+        List<Node> nodes = new ArrayList<>(identifiers.size());
+        for (String identifier : identifiers) {
+            try {
+                nodes.add(session.getNodeByIdentifier(identifier));
+            } catch (ItemNotFoundException infe) {
+                // removed meanwhile, or not readable by this session
+            }
+        }
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return "MaterializedView{name=" + name + ", count=" + getCount() + ", updates=" + updates + "}";
+    }
+
+    private static class Item {
+        final String identifier;
+        final String path;
+        final Value[] key;
+
+        Item(String identifier, String path, Value[] key) {
+            this.identifier = identifier;
+            this.path = path;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jcr.*;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+
+/**
+ * Named {@link MaterializedView materialized views} of criteria, for lists which are read far more often than they change (e.g.
+ * the latest items on a home page). A view is filled by executing its criteria once, when it is registered. After that, it is
+ * kept up to date from the changes in the repository: the changed nodes are checked against the criteria in memory, and only
+ * moved into, within or out of the view. Reading a view (see {@link MaterializedView#page(int, int)}) doesn't touch the
+ * repository, however big it is.
+ * <p>
+ * Only criteria of which all criterions can be evaluated on nodes (see
+ * {@link nl.vpro.jcr.criteria.query.criterion.PostFilters#isEvaluable(nl.vpro.jcr.criteria.query.criterion.Criterion)}), and
+ * which are only ordered by properties, can be materialized. Their base path must be an absolute path, not an xpath expression.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public class MaterializedViews implements EventListener, AutoCloseable {
+
+    private final Session session;
+
+    private final ObservationManager observationManager;
+
+    private final Map<String, MaterializedView> views = new ConcurrentHashMap<>();
+
+    private MaterializedViews(Session session) throws RepositoryException {
+        this.session = session;
+        this.observationManager = session.getWorkspace().getObservationManager();
+    }
+
+    /**
+     * Starts listening to changes in the workspace of the session.
+     * @param session the session to fill the views, and to read changed nodes with (from another thread), so it should not be
+     * used otherwise.
+     */
+    public static MaterializedViews of(Session session) throws RepositoryException {
+        MaterializedViews views = new MaterializedViews(session);
+        views.observationManager.addEventListener(views, ObservedPaths.ALL_EVENTS, "/", true, null, null, false);
+        return views;
+    }
+
+    /**
+     * Registers the criteria as a view, replacing the view with the same name (if any), and fills it.
+     * @throws IllegalArgumentException if the criteria can't be evaluated on nodes
+     */
+    public synchronized MaterializedView register(String name, AdvancedCriteriaImpl criteria) throws RepositoryException {
+        MaterializedView view = new MaterializedView(name, criteria);
+        view.load(session, null);
+        views.put(name, view);
+        log.debug("Registered {}", view);
+        return view;
+    }
+
+    /**
+     * @return the view, or {@code null} if no view with the name is registered
+     */
+    public MaterializedView get(String name) {
+        return views.get(name);
+    }
+
+    public synchronized MaterializedView unregister(String name) {
+        return views.remove(name);
+    }
+
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(views.keySet());
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        synchronized (this) {
+            Set<MaterializedView> changed = new HashSet<>();
+            Set<MaterializedView> stale = new HashSet<>();
+            Set<String> updated = new HashSet<>();
+            try {
+                while (events.hasNext()) {
+                    Event event = events.nextEvent();
+                    String path = event.getPath();
+                    switch (event.getType()) {
+                        case Event.NODE_REMOVED:
+                            removeSubtree(path, changed, stale);
+                            break;
+                        case Event.NODE_MOVED:
+                            Object source = event.getInfo().get(ObservedPaths.SRC_ABS_PATH);
+                            if (source != null) {
+                                removeSubtree(source.toString(), changed, stale);
+                            }
+                            updateSubtree(path, changed, stale, updated);
+                            break;
+                        case Event.NODE_ADDED:
+                            updateSubtree(path, changed, stale, updated);
+                            break;
+                        default:
+                            update(path.substring(0, Math.max(path.lastIndexOf('/'), 1)), changed, updated);
+                    }
+                }
+            } catch (RepositoryException e) {
+                log.warn("{}, loading all views again", e.getMessage());
+                stale.addAll(views.values());
+            }
+            for (MaterializedView view : stale) {
+                try {
+                    view.load(session, null);
+                } catch (RepositoryException e) {
+                    log.error("{}: {}", view, e.getMessage(), e);
+                }
+            }
+            for (MaterializedView view : changed) {
+                if (!stale.contains(view)) {
+                    view.changed();
+                }
+            }
+        }
+    }
+
+    private void removeSubtree(String path, Set<MaterializedView> changed, Set<MaterializedView> stale) {
+        for (MaterializedView view : views.values()) {
+            if (view.isAffectedAbove(path)) {
+                stale.add(view);
+            } else if (view.inScope(path) && view.removeSubtree(path)) {
+                changed.add(view);
+            }
+        }
+    }
+
+    /**
+     * Updates the node at the path and its descendants in the views they may be in
+     */
+    private void updateSubtree(String path, Set<MaterializedView> changed, Set<MaterializedView> stale, Set<String> updated) throws RepositoryException {
+        List<MaterializedView> affected = new ArrayList<>();
+        for (MaterializedView view : views.values()) {
+            if (view.isAffectedAbove(path)) {
+                stale.add(view);
+            } else if (view.inScope(path)) {
+                affected.add(view);
+            }
+        }
+        if (!affected.isEmpty() && session.nodeExists(path)) {
+            updateSubtree(session.getNode(path), affected, changed, updated);
+        }
+    }
+
+    private void updateSubtree(Node node, List<MaterializedView> affected, Set<MaterializedView> changed, Set<String> updated) throws RepositoryException {
+        if (updated.add(node.getPath())) {
+            update(node, affected, changed);
+        }
+        for (NodeIterator children = node.getNodes(); children.hasNext(); ) {
+            updateSubtree(children.nextNode(), affected, changed, updated);
+        }
+    }
+
+    /**
+     * Updates the node at the path in the views it may be in
+     */
+    private void update(String path, Set<MaterializedView> changed, Set<String> updated) throws RepositoryException {
+        if (updated.contains(path) || !session.nodeExists(path)) {
+            return;
+        }
+        List<MaterializedView> affected = new ArrayList<>();
+        for (MaterializedView view : views.values()) {
+            if (view.inScope(path)) {
+                affected.add(view);
+            }
+        }
+        if (!affected.isEmpty()) {
+            updated.add(path);
+            update(session.getNode(path), affected, changed);
+        }
+    }
+
+    private static void update(Node node, List<MaterializedView> affected, Set<MaterializedView> changed) throws RepositoryException {
+        for (MaterializedView view : affected) {
+            if (view.update(node)) {
+                changed.add(view);
+            }
+        }
+    }
+
+    /**
+     * Stops listening to the repository, and unregisters all views.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            observationManager.removeEventListener(this);
+        } catch (RepositoryException e) {
+            log.warn(e.getMessage());
+        }
+        views.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "MaterializedViews" + views.values();
+    }
+}
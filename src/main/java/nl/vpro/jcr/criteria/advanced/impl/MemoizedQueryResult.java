@@ -0,0 +1,222 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+/**
+ * Wraps the execution of a jcr query, making sure that it is executed at most once, so that determining the total size, the
+ * first result, and iterating the results can all happen on the same execution.
+ * <p>
+ * The rows are streamed from the one {@link QueryResult} to the iterators (see {@link #getRows()}) as far as they are consumed,
+ * and recorded on the way, so that an iterator which is behind (e.g. one requested after another one consumed rows) replays
+ * them, and then continues with the source. Results which hold their rows already, like {@link NodeQueryResult} and a
+ * {@link LocalPage}, are just iterated again.
+ * <p>
+ * This is thread-safe. The state goes from {@link State#NEW} to either {@link State#EXECUTED} or {@link State#FAILED}, and the
+ * rows are only pulled from the underlying {@link RowIterator} while holding a lock.
+ *
+ * @since 2.12
+ */
+@Slf4j
+class MemoizedQueryResult implements Supplier<QueryResult> {
+
+    enum State {
+        NEW,
+        EXECUTED,
+        FAILED
+    }
+
+    private final Supplier<QueryResult> execution;
+
+    private final Object lock = new Object();
+
+    private volatile State state = State.NEW;
+
+    private QueryResult result;
+
+    private RuntimeException failure;
+
+    private RowIterator source;
+
+    /**
+     * The number of rows taken from the source
+     */
+    private long consumed;
+
+    /**
+     * The rows taken from the source
+     */
+    private final List<Row> rows = new ArrayList<>();
+
+    private MemoizedQueryResult(Supplier<QueryResult> execution) {
+        this.execution = execution;
+    }
+
+    static MemoizedQueryResult of(Supplier<QueryResult> execution) {
+        if (execution instanceof MemoizedQueryResult) {
+            return (MemoizedQueryResult) execution;
+        }
+        return new MemoizedQueryResult(execution);
+    }
+
+    /**
+     * Executes the query if that didn't happen yet, and returns the (shared) result.
+     */
+    @Override
+    public QueryResult get() {
+        if (state == State.NEW) {
+            synchronized (lock) {
+                if (state == State.NEW) {
+                    try {
+                        result = execution.get();
+                        state = State.EXECUTED;
+                    } catch (RuntimeException e) {
+                        failure = e;
+                        state = State.FAILED;
+                    }
+                }
+            }
+        }
+        if (state == State.FAILED) {
+            throw failure;
+        }
+        return result;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    /**
+     * A new iterator over the rows of the result, which replays the rows consumed already by other ones, and then continues with
+     * the rows of the result.
+     */
+    RowIterator getRows() throws RepositoryException {
+        QueryResult queryResult = get();
+        if (inMemory(queryResult)) {
+            return queryResult.getRows();
+        }
+        synchronized (lock) {
+            source(queryResult);
+            if (consumed > 0) {
+                log.debug("Replaying {} rows", consumed);
+            }
+            return new SharedRowIterator();
+        }
+    }
+
+    /**
+     * The size of the result (see {@link RowIterator#getSize()}), without requesting an iterator.
+     */
+    long getSize() throws RepositoryException {
+        QueryResult queryResult = get();
+        if (inMemory(queryResult)) {
+            return queryResult.getRows().getSize();
+        }
+        synchronized (lock) {
+            source(queryResult);
+            return size();
+        }
+    }
+
+    /**
+     * Whether the result holds its rows itself, so that it can be iterated again
+     */
+    private static boolean inMemory(QueryResult queryResult) {
+        return queryResult instanceof NodeQueryResult || LocalPage.isPage(queryResult);
+    }
+
+    private void source(QueryResult queryResult) throws RepositoryException {
+        if (source == null) {
+            // a query result can only be iterated once
+            source = queryResult.getRows();
+        }
+    }
+
+    /**
+     * @return whether a row with the given index is available, taking the rows before it from the source if needed.
+     */
+    private boolean fetch(long index) {
+        synchronized (lock) {
+            while (consumed <= index) {
+                if (!source.hasNext()) {
+                    return false;
+                }
+                rows.add(source.nextRow());
+                consumed++;
+            }
+            return true;
+        }
+    }
+
+    private Row row(long index) {
+        synchronized (lock) {
+            return rows.get((int) index);
+        }
+    }
+
+    private long size() {
+        synchronized (lock) {
+            long size = source.getSize();
+            if (size < 0 && !source.hasNext()) {
+                size = consumed;
+            }
+            return size;
+        }
+    }
+
+    private class SharedRowIterator implements RowIterator {
+
+        private long position = 0;
+
+        @Override
+        public Row nextRow() {
+            if (!fetch(position)) {
+                throw new NoSuchElementException();
+            }
+            return row(position++);
+        }
+
+        @Override
+        public void skip(long skipNum) {
+            if (skipNum > 0 && !fetch(position + skipNum - 1)) {
+                throw new NoSuchElementException();
+            }
+            position += skipNum;
+        }
+
+        @Override
+        public long getSize() {
+            return size();
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return fetch(position);
+        }
+
+        @Override
+        public Object next() {
+            return nextRow();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
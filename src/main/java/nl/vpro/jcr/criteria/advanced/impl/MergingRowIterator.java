@@ -0,0 +1,182 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.JCRQueryException;
+import nl.vpro.jcr.utils.Utils;
+
+/**
+ * Merges the rows of several {@link RowIterator}s into one, dropping rows of nodes which were already seen.
+ * <p>
+ * If the sources are ordered by a {@link PropertyOrder}, they are merged lazily (a k-way merge), and the result is ordered
+ * the same way. Otherwise the sources are simply concatenated, and only opened when needed.
+ * <p>
+ * The sources are ordered by the query engine, and merged with the comparison of {@link PropertyOrder}: missing values first,
+ * multi-valued properties on their first value, strings on their characters (without collation), and values of different types
+ * as {@link Utils#compare(Value, Value)} does. Where the query engine orders differently, the merged rows are not ordered
+ * exactly like the results of one query would be, but still every row is returned once.
+ * <p>
+ * The size is only known after all sources are consumed, before that {@link #getSize()} returns {@code -1}.
+ *
+ * @since 2.12
+ */
+class MergingRowIterator implements RowIterator {
+
+    private final List<Supplier<RowIterator>> sources;
+
+    private final PropertyOrder order;
+
+    private final Criteria.Expression expression;
+
+    private final Set<String> seen = new HashSet<>();
+
+    private PriorityQueue<Head> heads;
+
+    private int current = -1;
+
+    private RowIterator currentSource;
+
+    private Row next;
+
+    private boolean exhausted = false;
+
+    private long position = 0;
+
+    /**
+     * @param sources suppliers of the row iterators to merge, they are called at most once
+     * @param order the order of all sources, or {@code null} if they are to be concatenated
+     * @param expression the query to report failures with
+     */
+    MergingRowIterator(List<Supplier<RowIterator>> sources, PropertyOrder order, Criteria.Expression expression) {
+        this.sources = sources;
+        this.order = order == null || order.isEmpty() ? null : order;
+        this.expression = expression;
+    }
+
+    @Override
+    public Row nextRow() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Row result = next;
+        next = null;
+        position++;
+        return result;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = fetch();
+        }
+        return next != null;
+    }
+
+    @Override
+    public void skip(long skipNum) {
+        for (long i = 0; i < skipNum; i++) {
+            nextRow();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        if (!exhausted) {
+            return -1;
+        }
+        return position + (next == null ? 0 : 1);
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public Object next() {
+        return nextRow();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return the next unseen row from the sources, or {@code null} if they are all consumed
+     */
+    private Row fetch() {
+        try {
+            Row row;
+            do {
+                row = order == null ? fetchConcatenated() : fetchMerged();
+            } while (row != null && !seen.add(row.getNode().getIdentifier()));
+            if (row == null) {
+                exhausted = true;
+            }
+            return row;
+        } catch (RepositoryException e) {
+            throw new JCRQueryException(expression, e);
+        }
+    }
+
+    private Row fetchConcatenated() {
+        while (currentSource == null || !currentSource.hasNext()) {
+            if (++current >= sources.size()) {
+                return null;
+            }
+            currentSource = sources.get(current).get();
+        }
+        return currentSource.nextRow();
+    }
+
+    private Row fetchMerged() throws RepositoryException {
+        if (heads == null) {
+            heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+                try {
+                    int c = order.compare(a.key, b.key);
+                    return c != 0 ? c : Integer.compare(a.source, b.source);
+                } catch (RepositoryException e) {
+                    throw new JCRQueryException(expression, e);
+                }
+            });
+            for (int i = 0; i < sources.size(); i++) {
+                advance(sources.get(i).get(), i);
+            }
+        }
+        Head head = heads.poll();
+        if (head == null) {
+            return null;
+        }
+        advance(head.iterator, head.source);
+        return head.row;
+    }
+
+    private void advance(RowIterator iterator, int source) throws RepositoryException {
+        if (iterator.hasNext()) {
+            Row row = iterator.nextRow();
+            heads.add(new Head(iterator, source, row, order.key(row.getNode())));
+        }
+    }
+
+    private static class Head {
+        final RowIterator iterator;
+        final int source;
+        final Row row;
+        final Value[] key;
+
+        Head(RowIterator iterator, int source, Row row, Value[] key) {
+            this.iterator = iterator;
+            this.source = source;
+            this.row = row;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.*;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+
+/**
+ * A {@link QueryResult} on a list of already resolved nodes (or rows), so that they can be presented like the result of an
+ * executed query (with the one selector 'a').
+ *
+ * @since 2.12
+ */
+class NodeQueryResult implements QueryResult {
+
+    static final String SELECTOR = "a";
+
+    private final List<Row> rows;
+
+    private NodeQueryResult(List<Row> rows) {
+        this.rows = rows;
+    }
+
+    static NodeQueryResult ofNodes(List<Node> nodes) {
+        List<Row> rows = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            rows.add(new NodeRow(node));
+        }
+        return new NodeQueryResult(rows);
+    }
+
+    static NodeQueryResult ofRows(List<Row> rows) {
+        return new NodeQueryResult(rows);
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return new String[0];
+    }
+
+    @Override
+    public RowIterator getRows() {
+        return new RowIteratorAdapter(rows);
+    }
+
+    @Override
+    public NodeIterator getNodes() throws RepositoryException {
+        List<Node> nodes = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            nodes.add(row.getNode());
+        }
+        return new NodeIteratorAdapter(nodes);
+    }
+
+    @Override
+    public String[] getSelectorNames() {
+        return new String[] {SELECTOR};
+    }
+
+    static class NodeRow implements Row {
+
+        private final Node node;
+
+        private final double score;
+
+        NodeRow(Node node) {
+            this(node, 1.0);
+        }
+
+        NodeRow(Node node, double score) {
+            this.node = node;
+            this.score = score;
+        }
+
+        @Override
+        public Value[] getValues() {
+            return new Value[0];
+        }
+
+        @Override
+        public Value getValue(String columnName) throws RepositoryException {
+            String name = columnName.startsWith(SELECTOR + ".") ? columnName.substring(SELECTOR.length() + 1) : columnName;
+            if (name.indexOf('(') >= 0 || !node.hasProperty(name)) {
+                // e.g. rep:excerpt(a)
+                return null;
+            }
+            Property property = node.getProperty(name);
+            return property.isMultiple() ? null : property.getValue();
+        }
+
+        @Override
+        public Node getNode() {
+            return node;
+        }
+
+        @Override
+        public Node getNode(String selectorName) throws RepositoryException {
+            return node(selectorName);
+        }
+
+        @Override
+        public String getPath() throws RepositoryException {
+            return node.getPath();
+        }
+
+        @Override
+        public String getPath(String selectorName) throws RepositoryException {
+            return node(selectorName).getPath();
+        }
+
+        @Override
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public double getScore(String selectorName) throws RepositoryException {
+            node(selectorName);
+            return score;
+        }
+
+        private Node node(String selectorName) throws RepositoryException {
+            if (!SELECTOR.equals(selectorName)) {
+                throw new RepositoryException("Unknown selector " + selectorName);
+            }
+            return node;
+        }
+
+        @Override
+        public String toString() {
+            return "row:" + node;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import javax.jcr.observation.Event;
+
+import nl.vpro.jcr.criteria.query.criterion.Criterion;
+
+/**
+ * Helpers for the listeners which keep derived data (cached results, snapshots, views) up to date with the repository: the
+ * events they listen to, and how the base path of a criteria relates to the paths of those events.
+ *
+ * @since 2.12
+ */
+final class ObservedPaths {
+
+    static final int ALL_EVENTS = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED
+        | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    /**
+     * The key in {@link Event#getInfo()} of the original path of a moved node
+     */
+    static final String SRC_ABS_PATH = "srcAbsPath";
+
+    private ObservedPaths() {
+        // don't instantiate
+    }
+
+    /**
+     * Whether the base path is just an absolute path (or all elements), so that the results are exactly the descendants of
+     * {@link #path(String)}. Base paths can also be xpath expressions, like {@code /site//*} or {@code //Criteria/X/*}.
+     */
+    static boolean isFixed(String basePath) {
+        if (basePath == null || Criterion.ALL_ELEMENTS.equals(basePath)) {
+            return true;
+        }
+        return basePath.startsWith("/") && !basePath.contains("*") && !basePath.contains("//");
+    }
+
+    /**
+     * @return the {@link #isFixed(String) fixed} base path without trailing slash, {@code /} for all elements
+     */
+    static String path(String basePath) {
+        if (basePath == null || Criterion.ALL_ELEMENTS.equals(basePath)) {
+            return "/";
+        }
+        return basePath.length() > 1 && basePath.endsWith("/") ? basePath.substring(0, basePath.length() - 1) : basePath;
+    }
+
+    /**
+     * @return the longest absolute path below which all results of the base path are: the segments before the first wildcard or
+     * {@code //}, or {@code /} if there are none (e.g. if the base path starts with {@code //})
+     */
+    static String fixedPrefix(String basePath) {
+        if (basePath == null || !basePath.startsWith("/") || basePath.startsWith("//")) {
+            return "/";
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (String segment : basePath.substring(1).split("/", -1)) {
+            if (segment.isEmpty() || segment.contains("*")) {
+                break;
+            }
+            prefix.append('/').append(segment);
+        }
+        return prefix.length() == 0 ? "/" : prefix.toString();
+    }
+
+    /**
+     * Whether the path is below the ancestor (both without trailing slash)
+     */
+    static boolean isDescendant(String path, String ancestor) {
+        return "/".equals(ancestor) ? path.length() > 1 : path.startsWith(ancestor + "/");
+    }
+}
@@ -0,0 +1,83 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import java.util.*;
+
+/**
+ * Values stored at jcr paths, to find the values which are affected by a change at some path: the ones at that path, at its
+ * ancestors, and at its descendants. Not thread safe.
+ *
+ * @since 2.12
+ */
+class PathTrie<T> {
+
+    private final Map<String, PathTrie<T>> children = new HashMap<>();
+
+    private final Set<T> values = new HashSet<>();
+
+    void add(String path, T value) {
+        PathTrie<T> trie = this;
+        for (String segment : segments(path)) {
+            trie = trie.children.computeIfAbsent(segment, s -> new PathTrie<>());
+        }
+        trie.values.add(value);
+    }
+
+    void remove(String path, T value) {
+        remove(segments(path), 0, value);
+    }
+
+    private boolean remove(List<String> segments, int index, T value) {
+        if (index == segments.size()) {
+            values.remove(value);
+        } else {
+            PathTrie<T> child = children.get(segments.get(index));
+            if (child != null && child.remove(segments, index + 1, value)) {
+                children.remove(segments.get(index));
+            }
+        }
+        return values.isEmpty() && children.isEmpty();
+    }
+
+    /**
+     * Collects the values at the given path, at its ancestors, and at its descendants.
+     */
+    void collect(String path, Collection<T> result) {
+        PathTrie<T> trie = this;
+        for (String segment : segments(path)) {
+            result.addAll(trie.values);
+            trie = trie.children.get(segment);
+            if (trie == null) {
+                return;
+            }
+        }
+        trie.collectAll(result);
+    }
+
+    private void collectAll(Collection<T> result) {
+        result.addAll(values);
+        for (PathTrie<T> child : children.values()) {
+            child.collectAll(result);
+        }
+    }
+
+    boolean isEmpty() {
+        return values.isEmpty() && children.isEmpty();
+    }
+
+    void clear() {
+        values.clear();
+        children.clear();
+    }
+
+    private static List<String> segments(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                // same name siblings are not distinguished, which is on the safe side
+                int index = segment.indexOf('[');
+                segments.add(index > 0 ? segment.substring(0, index) : segment);
+            }
+        }
+        return segments;
+    }
+}
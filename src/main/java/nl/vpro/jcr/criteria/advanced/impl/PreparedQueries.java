@@ -0,0 +1,148 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+
+/**
+ * Keeps prepared {@link Query} objects per {@link Session}, keyed by the 'shape' of the statement (the statement with bind
+ * variables). Statements with only different values share the same prepared query, so they are parsed only once.
+ * <p>
+ * A {@link Query} object references its session, so weak references would not help here (the session would stay reachable
+ * from the value of its own entry). Jcr has no way to be notified of a logout either. In stead, sessions which are not
+ * {@link Session#isLive() live} any more are dropped whenever a session is added, so a logged out session is not referenced
+ * after the next query of another session, and the number of sessions and the number of queries per session are bounded.
+ * Sessions can also be dropped explicitly with {@link #remove(Session)}.
+ * <p>
+ * Sessions don't wait for each other: the queries of a session are only locked while that session uses them.
+ * <p>
+ * Warning, provisional class, users should not use this directly.
+ * @since 2.12
+ */
+@Slf4j
+public final class PreparedQueries {
+
+    private static volatile int maxSessions = 128;
+
+    private static volatile int maxQueriesPerSession = 64;
+
+    private static final Map<Session, SessionQueries> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Orders the uses of sessions, to drop the least recently used one if there are too many
+     */
+    private static final AtomicLong USES = new AtomicLong();
+
+    private PreparedQueries() {
+        // don't instantiate
+    }
+
+    /**
+     * Returns the prepared query for the given expression in the given session, creating it if necessary.
+     * <p>
+     * Callers must bind the values, and set limit and offset while holding the monitor of the returned query, since it may
+     * be shared.
+     * @param limited whether {@link Query#setLimit(long)} will be called. The limit of a jcr query can't be unset, so limited
+     *                and unlimited queries are kept separately.
+     */
+    public static Query get(Session session, Criteria.Expression expression, boolean limited) throws RepositoryException {
+        String key = expression.getLanguage() + (limited ? ":limited:" : ":") + expression.getStatement();
+        SessionQueries queries = CACHE.get(session);
+        if (queries == null) {
+            queries = add(session);
+        }
+        synchronized (queries) {
+            queries.used = USES.incrementAndGet();
+            Query query = queries.queries.get(key);
+            if (query == null) {
+                query = session.getWorkspace().getQueryManager().createQuery(expression.getStatement(), expression.getLanguage());
+                queries.queries.put(key, query);
+                if (queries.queries.size() > maxQueriesPerSession) {
+                    Iterator<String> eldest = queries.queries.keySet().iterator();
+                    log.debug("Dropping prepared query {}", eldest.next());
+                    eldest.remove();
+                }
+            }
+            return query;
+        }
+    }
+
+    /**
+     * Adds a session, after dropping the sessions which were logged out, and the least recently used ones if there are still
+     * too many.
+     */
+    private static SessionQueries add(Session session) {
+        CACHE.keySet().removeIf(s -> !s.isLive());
+        while (CACHE.size() >= maxSessions) {
+            Map.Entry<Session, SessionQueries> eldest = null;
+            for (Map.Entry<Session, SessionQueries> entry : CACHE.entrySet()) {
+                if (eldest == null || entry.getValue().used < eldest.getValue().used) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                break;
+            }
+            CACHE.remove(eldest.getKey(), eldest.getValue());
+        }
+        return CACHE.computeIfAbsent(session, s -> new SessionQueries());
+    }
+
+    /**
+     * Drops the prepared queries of the given session, e.g. when it is logged out.
+     */
+    public static void remove(Session session) {
+        CACHE.remove(session);
+    }
+
+    /**
+     * @return the number of sessions with prepared queries
+     */
+    public static int sessions() {
+        return CACHE.size();
+    }
+
+    /**
+     * @return the number of prepared queries for the given session
+     */
+    public static int size(Session session) {
+        SessionQueries queries = CACHE.get(session);
+        if (queries == null) {
+            return 0;
+        }
+        synchronized (queries) {
+            return queries.queries.size();
+        }
+    }
+
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    public static void setMaxSessions(int maxSessions) {
+        PreparedQueries.maxSessions = maxSessions;
+    }
+
+    public static void setMaxQueriesPerSession(int maxQueriesPerSession) {
+        PreparedQueries.maxQueriesPerSession = maxQueriesPerSession;
+    }
+
+    /**
+     * The prepared queries of one session, guarded by its own monitor
+     */
+    private static class SessionQueries {
+        final Map<String, Query> queries = new LinkedHashMap<>(16, 0.75f, true);
+
+        volatile long used = USES.incrementAndGet();
+    }
+}
@@ -0,0 +1,168 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.*;
+import javax.jcr.query.Row;
+
+import nl.vpro.jcr.criteria.query.TranslatableCriteria;
+import nl.vpro.jcr.criteria.query.criterion.Order;
+import nl.vpro.jcr.criteria.query.criterion.PostFilters;
+import nl.vpro.jcr.utils.Utils;
+
+/**
+ * The orders of a criteria, if they can be evaluated on the nodes themselves (so, only orders on properties of the node,
+ * not on score or on properties of other nodes). Used to order (or merge) results without the query engine, consistently
+ * with how jackrabbit orders them.
+ *
+ * @since 2.12
+ */
+final class PropertyOrder {
+
+    private final String[] propertyNames;
+
+    private final boolean[] ascending;
+
+    private PropertyOrder(String[] propertyNames, boolean[] ascending) {
+        this.propertyNames = propertyNames;
+        this.ascending = ascending;
+    }
+
+    /**
+     * @return the ordering, or {@code null} if one of the orders can't be evaluated on the node
+     */
+    static PropertyOrder of(Collection<TranslatableCriteria.OrderEntry> orderEntries) {
+        List<Order> orders = new ArrayList<>();
+        for (TranslatableCriteria.OrderEntry entry : orderEntries) {
+            orders.add(entry.getOrder());
+        }
+        String[] propertyNames = new String[orders.size()];
+        boolean[] ascending = new boolean[orders.size()];
+        for (int i = 0; i < propertyNames.length; i++) {
+            propertyNames[i] = propertyName(orders.get(i));
+            if (propertyNames[i] == null) {
+                return null;
+            }
+            ascending[i] = orders.get(i).isAscending();
+        }
+        return new PropertyOrder(propertyNames, ascending);
+    }
+
+    boolean isEmpty() {
+        return propertyNames.length == 0;
+    }
+
+    int size() {
+        return propertyNames.length;
+    }
+
+    String getPropertyName(int i) {
+        return propertyNames[i];
+    }
+
+    boolean isAscending(int i) {
+        return ascending[i];
+    }
+
+    /**
+     * @return the values to order the node by
+     */
+    Value[] key(Node node) throws RepositoryException {
+        Value[] key = new Value[propertyNames.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = value(node, propertyNames[i]);
+        }
+        return key;
+    }
+
+    /**
+     * @return this ordering, followed by the given property (ascending) if it is not already the last one
+     */
+    PropertyOrder then(String propertyName) {
+        if (propertyNames.length > 0 && propertyNames[propertyNames.length - 1].equals(propertyName)) {
+            return this;
+        }
+        String[] names = Arrays.copyOf(propertyNames, propertyNames.length + 1);
+        names[propertyNames.length] = propertyName;
+        boolean[] asc = Arrays.copyOf(ascending, ascending.length + 1);
+        asc[ascending.length] = true;
+        return new PropertyOrder(names, asc);
+    }
+
+    int compare(Value[] a, Value[] b) throws RepositoryException {
+        return compare(a, b, propertyNames.length);
+    }
+
+    /**
+     * Compares the keys on the first {@code size} orders only
+     */
+    int compare(Value[] a, Value[] b, int size) throws RepositoryException {
+        for (int i = 0; i < size; i++) {
+            int c = compare(a[i], b[i]);
+            if (c != 0) {
+                return ascending[i] ? c : -c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Sorts the rows by the values of their nodes. The sort is stable.
+     */
+    void sort(List<Row> rows) throws RepositoryException {
+        List<Map.Entry<Row, Value[]>> keyed = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            keyed.add(new AbstractMap.SimpleImmutableEntry<>(row, key(row.getNode())));
+        }
+        RepositoryException[] failure = new RepositoryException[1];
+        keyed.sort((a, b) -> {
+            try {
+                return compare(a.getValue(), b.getValue());
+            } catch (RepositoryException e) {
+                failure[0] = e;
+                return 0;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        rows.clear();
+        for (Map.Entry<Row, Value[]> e : keyed) {
+            rows.add(e.getKey());
+        }
+    }
+
+    private static Value value(Node node, String propertyName) throws RepositoryException {
+        if (!node.hasProperty(propertyName)) {
+            return null;
+        }
+        Property property = node.getProperty(propertyName);
+        if (property.isMultiple()) {
+            Value[] values = property.getValues();
+            return values.length == 0 ? null : values[0];
+        }
+        return property.getValue();
+    }
+
+    /**
+     * Missing values sort first.
+     */
+    static int compare(Value a, Value b) throws RepositoryException {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return Utils.compare(a, b);
+    }
+
+    /**
+     * @return the name of the property to order by, or {@code null} if it can't be determined from the node itself
+     */
+    static String propertyName(Order order) {
+        return PostFilters.propertyName(order.getNodeName());
+    }
+}
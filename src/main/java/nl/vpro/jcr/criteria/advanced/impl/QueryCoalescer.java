@@ -0,0 +1,107 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import javax.jcr.Session;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+
+/**
+ * 'Single flight' execution of queries (see {@link nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl#isCoalesce()}). If the
+ * same query (statement, bind variables and paging, in the same workspace, for the same user) is executed concurrently, only
+ * one of the executions actually runs it. It collects the identifiers (and scores) of the resulting nodes (see {@link Hits}),
+ * and every execution resolves them in its own session.
+ * <p>
+ * The rows of such results only have the node (and its properties as values), no excerpts.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public final class QueryCoalescer {
+
+    private static final QueryCoalescer INSTANCE = new QueryCoalescer();
+
+    private final ConcurrentMap<List<Object>, CompletableFuture<Hits>> inFlight = new ConcurrentHashMap<>();
+
+    private QueryCoalescer() {
+    }
+
+    public static QueryCoalescer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Like {@link QueryExecutorHelper#execute(Criteria.Expression, LongSupplier, Session, Integer, int, String, boolean)}, but
+     * shares the actual execution with concurrent executions of the same query.
+     */
+    public AdvancedResultImpl execute(
+        Criteria.Expression expression,
+        LongSupplier queryCounter,
+        Session session,
+        Integer maxResults,
+        int offset) {
+        int pageNumberStartingFromOne = 1;
+        if (maxResults != null && maxResults > 0 && offset > maxResults - 1) {
+            pageNumberStartingFromOne = (offset / maxResults) + 1;
+        }
+        final AtomicReference<Hits> hits = new AtomicReference<>();
+        MemoizedQueryResult result = MemoizedQueryResult.of(() -> {
+            Hits shared = hits(expression, session, maxResults, offset);
+            hits.set(shared);
+            return shared.resolve(session, expression);
+        });
+        AdvancedResultImpl advancedResult = new AdvancedResultImpl(
+            result,
+            queryCounter,
+            maxResults,
+            pageNumberStartingFromOne,
+            expression,
+            null,
+            false,
+            offset);
+        advancedResult.setNextPage(() -> hits.get().isMore());
+        return advancedResult;
+    }
+
+    /**
+     * @return the number of queries which are currently being executed
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Executes the query, or waits for the concurrent execution of the same query
+     */
+    Hits hits(Criteria.Expression expression, Session session, Integer maxResults, int offset) {
+        List<Object> key = Hits.key(expression, session, maxResults, offset);
+        CompletableFuture<Hits> mine = new CompletableFuture<>();
+        CompletableFuture<Hits> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            log.debug("Joining execution of {}", expression);
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            Hits hits = Hits.of(QueryExecutorHelper.execute(expression, () -> -1, session, maxResults, offset, null, false), expression);
+            mine.complete(hits);
+            return hits;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+}
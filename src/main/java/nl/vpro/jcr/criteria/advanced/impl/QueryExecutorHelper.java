@@ -21,11 +21,15 @@ package nl.vpro.jcr.criteria.advanced.impl;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Map;
 import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.Value;
 import javax.jcr.query.Query;
+import javax.jcr.query.QueryResult;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -114,18 +118,11 @@ public final class QueryExecutorHelper {
         try {
             jcrQueryManager = jcrSession.getWorkspace().getQueryManager();
 
-            final Query query = jcrQueryManager.createQuery(expr.getStatement(), expr.getLanguage());
-
-
-            if (!forcePagingWithDocumentOrder) {
-                if (maxResults != null && maxResults > 0) {
-                    query.setLimit(maxResults);
-                }
-
-                if (offset > 0) {
-                    query.setOffset(offset);
-                }
-            }
+            final boolean limited = !forcePagingWithDocumentOrder && maxResults != null && maxResults > 0;
+            final boolean prepared = !expr.getBindVariables().isEmpty();
+            final Query query = prepared ?
+                PreparedQueries.get(jcrSession, expr, limited) :
+                jcrQueryManager.createQuery(expr.getStatement(), expr.getLanguage());
 
             int pageNumberStartingFromOne = 1;
             if (maxResults != null && maxResults > 0 && offset > maxResults - 1) {
@@ -136,26 +133,45 @@ public final class QueryExecutorHelper {
 
             if (StringUtils.isNotBlank(spellCheckString)) {
                 // TODO implement for SQL2
-                spellCheckerQuery = jcrQueryManager.createQuery(
+                Criteria.Expression spellCheck = Criteria.Expression.xpath(
                     "/jcr:root[rep:spellcheck('"
                         + XPathTextUtils.stringToJCRSearchExp(spellCheckString)
-                        + "')]/(rep:spellcheck())",
-                    Query.XPATH);
+                        + "')]/(rep:spellcheck())");
+                spellCheckerQuery = jcrQueryManager.createQuery(spellCheck.getStatement(), spellCheck.getLanguage());
             }
 
             log.debug("Executing {} {}", expr.getLanguage(), expr.getStatement());
-            return new AdvancedResultImpl(
-                () -> {
-                    try {
-                        EXECUTING.set(Boolean.TRUE);
+            final Supplier<QueryResult> execution = () -> {
+                try {
+                    EXECUTING.set(Boolean.TRUE);
+                    // a prepared query may be shared, so binding and executing must happen atomically
+                    synchronized (query) {
+                        for (Map.Entry<String, Value> bindVariable : expr.getBindVariables().entrySet()) {
+                            query.bindValue(bindVariable.getKey(), bindVariable.getValue());
+                        }
+                        if (limited) {
+                            // one row more, to know whether there is a next page
+                            query.setLimit(maxResults + 1);
+                        }
+                        if (forcePagingWithDocumentOrder) {
+                            if (prepared) {
+                                query.setOffset(0);
+                            }
+                        } else if (offset > 0 || prepared) {
+                            query.setOffset(offset);
+                        }
                         return query.execute();
-                    } catch (RepositoryException e) {
-                        throw new RuntimeException(e);
-                    } finally {
-                        EXECUTING.set(Boolean.FALSE);
-
                     }
-                },
+                } catch (RepositoryException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    EXECUTING.set(Boolean.FALSE);
+
+                }
+            };
+            final LocalPage lookAhead = limited ? new LocalPage(execution, 0, maxResults) : null;
+            AdvancedResultImpl result = new AdvancedResultImpl(
+                lookAhead == null ? execution : lookAhead,
                 queryCounter,
                 maxResults,
                 pageNumberStartingFromOne,
@@ -163,6 +179,10 @@ public final class QueryExecutorHelper {
                 spellCheckerQuery,
                 forcePagingWithDocumentOrder,
                 offset);
+            if (lookAhead != null) {
+                result.setNextPage(lookAhead::hasMore);
+            }
+            return result;
         } catch (RepositoryException e) {
             throw new JCRQueryException(expr, e);
         }
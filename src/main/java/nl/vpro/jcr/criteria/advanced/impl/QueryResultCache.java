@@ -0,0 +1,451 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.JCRQueryException;
+import nl.vpro.jcr.criteria.query.TranslatableCriteria;
+import nl.vpro.jcr.criteria.query.criterion.Criterion;
+import nl.vpro.jcr.criteria.query.criterion.Order;
+import nl.vpro.jcr.criteria.query.criterion.PostFilters;
+import nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl;
+
+/**
+ * Caches the outcome of executions of criteria (see {@link nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl#getResultCache()}):
+ * the identifiers and scores of the nodes of the page (see {@link Hits}), and the total size once it was determined. The key
+ * is the statement, with its bind variables and paging, and the workspace and user of the session. On a hit, the nodes are
+ * resolved in the session of the execution, so that its access rights are applied.
+ * <p>
+ * Entries are invalidated by changes in the repository at, above or below the base path of the criteria, for which the cache
+ * must {@link #listenTo(Session) listen} to the repository. Furthermore, the size of the cache is bounded (the least recently
+ * used entries are evicted first), and entries expire after a time to live.
+ * <p>
+ * If {@link #isSubsumption() subsumption} is enabled, criteria can also be answered from the cached complete (unpaged) results
+ * of broader criteria: criteria of the same type and base path, with a subset of the criterions. The rows of the broader
+ * criteria are then filtered by the other criterions in memory (see {@link Criterion#matches(javax.jcr.Node, Criteria)}),
+ * ordered and paged (so the criteria which are answered like that may be paged themselves). Criteria with criterions that
+ * can't be evaluated on nodes are just executed.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public class QueryResultCache implements EventListener, AutoCloseable {
+
+    @Getter
+    private final int maxSize;
+
+    @Getter
+    private final Duration timeToLive;
+
+    private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final PathTrie<List<Object>> paths = new PathTrie<>();
+
+    /**
+     * The keys of the entries with complete results, by their {@link Scope#key}
+     */
+    private final Map<List<Object>, Set<List<Object>>> complete = new HashMap<>();
+
+    /**
+     * Whether criteria are answered from the cached complete results of broader criteria
+     */
+    @Getter
+    @Setter
+    private volatile boolean subsumption;
+
+    private final List<ObservationManager> observationManagers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Incremented on every change, so that an execution which was running during a change isn't stored
+     */
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public QueryResultCache(int maxSize, Duration timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Invalidates the cache on changes in the workspace of the given session. This session must not be logged out as long as the
+     * cache is used.
+     */
+    public QueryResultCache listenTo(Session session) throws RepositoryException {
+        ObservationManager observationManager = session.getWorkspace().getObservationManager();
+        observationManager.addEventListener(this, ObservedPaths.ALL_EVENTS, "/", true, null, null, false);
+        observationManagers.add(observationManager);
+        return this;
+    }
+
+    /**
+     * Executes the criteria, or takes its outcome from the cache, or (if {@link #isSubsumption()}) from the cached complete
+     * results of broader criteria.
+     */
+    public AdvancedResultImpl execute(AbstractCriteriaImpl criteria, LongSupplier queryCounter, Session session, String language) {
+        Criteria.Expression expression = criteria.toExpression(language);
+        Scope scope = null;
+        if (subsumption) {
+            scope = new Scope(criteria, session, expression.getLanguage());
+            AdvancedResultImpl narrowed = narrow(criteria, scope, expression, session);
+            if (narrowed != null) {
+                return narrowed;
+            }
+            if (criteria.getFirstResult() != 0 || (criteria.getMaxResults() != null && criteria.getMaxResults() > 0)) {
+                // only complete results can answer other criteria
+                scope = null;
+            }
+        }
+        return execute(expression, queryCounter, session, criteria.getMaxResults(), criteria.getFirstResult(),
+            criteria.getBasePath(), criteria.getCountLimit(), criteria.isCoalesce(), scope);
+    }
+
+    /**
+     * Executes the query, or takes its outcome from the cache.
+     * @param basePath the path below which the results of the query are: a node path, or the path expression of the query
+     *                 (like {@code /site//*} or {@code //Criteria/X/*})
+     * @param countLimit the count limit of the query counter, since that determines the total size
+     * @param coalesce whether to use the {@link QueryCoalescer} if the query needs to be executed
+     */
+    public AdvancedResultImpl execute(
+        Criteria.Expression expression,
+        LongSupplier queryCounter,
+        Session session,
+        Integer maxResults,
+        int offset,
+        String basePath,
+        Integer countLimit,
+        boolean coalesce) {
+        return execute(expression, queryCounter, session, maxResults, offset, basePath, countLimit, coalesce, null);
+    }
+
+    private AdvancedResultImpl execute(
+        Criteria.Expression expression,
+        LongSupplier queryCounter,
+        Session session,
+        Integer maxResults,
+        int offset,
+        String basePath,
+        Integer countLimit,
+        boolean coalesce,
+        Scope scope) {
+        int pageNumberStartingFromOne = 1;
+        if (maxResults != null && maxResults > 0 && offset > maxResults - 1) {
+            pageNumberStartingFromOne = (offset / maxResults) + 1;
+        }
+        final List<Object> key = new ArrayList<>(Hits.key(expression, session, maxResults, offset));
+        key.add(countLimit);
+        // a base path can be an xpath expression, of which only the fixed prefix can be matched with the paths of events
+        final String path = ObservedPaths.fixedPrefix(basePath);
+        final AtomicReference<Entry> entry = new AtomicReference<>();
+        final MemoizedQueryResult result = MemoizedQueryResult.of(() -> {
+            Entry e = get(key, path, scope, () -> coalesce ?
+                QueryCoalescer.getInstance().hits(expression, session, maxResults, offset) :
+                Hits.of(QueryExecutorHelper.execute(expression, () -> -1, session, maxResults, offset, null, false), expression));
+            entry.set(e);
+            return e.hits.resolve(session, expression);
+        });
+        AdvancedResultImpl advancedResult = new AdvancedResultImpl(
+            result,
+            () -> {
+                result.get();
+                return entry.get().getTotalSize(queryCounter);
+            },
+            maxResults,
+            pageNumberStartingFromOne,
+            expression,
+            null,
+            false,
+            offset);
+        advancedResult.setNextPage(() -> entry.get().hits.isMore());
+        return advancedResult;
+    }
+
+    /**
+     * Answers the criteria from the complete results of the narrowest broader criteria in the cache, if there is one.
+     * @return the result, or {@code null} if the criteria can't be answered like that
+     */
+    private AdvancedResultImpl narrow(AbstractCriteriaImpl criteria, Scope scope, Criteria.Expression expression, Session session) {
+        Entry broader = null;
+        List<Criterion> remaining = null;
+        synchronized (this) {
+            for (List<Object> key : complete.getOrDefault(scope.key, Collections.emptySet())) {
+                Entry entry = entries.get(key);
+                if (entry == null || entry.isExpired()) {
+                    continue;
+                }
+                List<Criterion> rest = entry.scope.remaining(scope);
+                if (rest != null && (remaining == null || rest.size() < remaining.size())) {
+                    broader = entry;
+                    remaining = rest;
+                }
+            }
+        }
+        if (broader == null) {
+            return null;
+        }
+        for (Criterion criterion : remaining) {
+            if (!PostFilters.isEvaluable(criterion, expression.getLanguage())) {
+                return null;
+            }
+        }
+        PropertyOrder order = null;
+        if (!scope.orders.isEmpty() && !scope.orders.equals(broader.scope.orders)) {
+            order = PropertyOrder.of(criteria.getOrderEntries());
+            if (order == null) {
+                return null;
+            }
+        }
+        List<Row> rows = new ArrayList<>();
+        try {
+            RowIterator iterator = broader.hits.resolve(session, expression).getRows();
+            while (iterator.hasNext()) {
+                Row row = iterator.nextRow();
+                if (matches(row, remaining, criteria)) {
+                    rows.add(row);
+                }
+            }
+            if (order != null) {
+                order.sort(rows);
+            }
+        } catch (UnsupportedOperationException e) {
+            log.debug("{}, executing {}", e.getMessage(), expression);
+            return null;
+        } catch (RepositoryException e) {
+            throw new JCRQueryException(expression, e);
+        }
+        hits.incrementAndGet();
+        log.debug("Answered {} by filtering {} rows on {}", expression, rows.size(), remaining);
+
+        Integer maxResults = criteria.getMaxResults();
+        int offset = criteria.getFirstResult();
+        int pageNumberStartingFromOne = 1;
+        if (maxResults != null && maxResults > 0 && offset > maxResults - 1) {
+            pageNumberStartingFromOne = (offset / maxResults) + 1;
+        }
+        return new AdvancedResultImpl(
+            () -> NodeQueryResult.ofRows(rows),
+            () -> rows.size(),
+            maxResults,
+            pageNumberStartingFromOne,
+            expression,
+            null,
+            true,
+            offset);
+    }
+
+    private static boolean matches(Row row, List<Criterion> criterions, Criteria criteria) throws RepositoryException {
+        for (Criterion criterion : criterions) {
+            if (!criterion.matches(row.getNode(), criteria)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Entry get(List<Object> key, String path, Scope scope, Supplier<Hits> execution) {
+        long started;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.isExpired()) {
+                    hits.incrementAndGet();
+                    return entry;
+                }
+                remove(key);
+            }
+            started = generation;
+        }
+        misses.incrementAndGet();
+        Entry entry = new Entry(execution.get(), path, scope, System.nanoTime() + timeToLive.toNanos());
+        synchronized (this) {
+            if (generation == started && maxSize > 0) {
+                remove(key);
+                entries.put(key, entry);
+                paths.add(path, key);
+                if (scope != null) {
+                    complete.computeIfAbsent(scope.key, k -> new HashSet<>()).add(key);
+                }
+                while (entries.size() > maxSize) {
+                    remove(entries.keySet().iterator().next());
+                }
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        Set<List<Object>> invalid = new HashSet<>();
+        synchronized (this) {
+            generation++;
+            while (events.hasNext()) {
+                Event event = events.nextEvent();
+                try {
+                    paths.collect(event.getPath(), invalid);
+                    Object source = event.getInfo().get(ObservedPaths.SRC_ABS_PATH);
+                    if (source != null) {
+                        paths.collect(source.toString(), invalid);
+                    }
+                } catch (RepositoryException e) {
+                    log.warn("{}, clearing the cache", e.getMessage());
+                    clear();
+                    return;
+                }
+            }
+            for (List<Object> key : invalid) {
+                remove(key);
+            }
+        }
+        if (!invalid.isEmpty()) {
+            log.debug("Invalidated {} queries", invalid.size());
+            invalidations.addAndGet(invalid.size());
+        }
+    }
+
+    private void remove(List<Object> key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            paths.remove(entry.path, key);
+            if (entry.scope != null) {
+                Set<List<Object>> keys = complete.get(entry.scope.key);
+                if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                    complete.remove(entry.scope.key);
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        paths.clear();
+        complete.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Stops listening to the repository, and clears the cache.
+     */
+    @Override
+    public void close() {
+        for (ObservationManager observationManager : observationManagers) {
+            try {
+                observationManager.removeEventListener(this);
+            } catch (RepositoryException e) {
+                log.warn(e.getMessage());
+            }
+        }
+        observationManagers.clear();
+        clear();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResultCache{size=" + size() + ", hits=" + hits + ", misses=" + misses + ", invalidations=" + invalidations + "}";
+    }
+
+    private static class Entry {
+        final Hits hits;
+        final String path;
+        final Scope scope;
+        final long expires;
+        volatile long totalSize = -1;
+
+        Entry(Hits hits, String path, Scope scope, long expires) {
+            this.hits = hits;
+            this.path = path;
+            this.scope = scope;
+            this.expires = expires;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expires > 0;
+        }
+
+        long getTotalSize(LongSupplier queryCounter) {
+            if (totalSize < 0) {
+                totalSize = queryCounter.getAsLong();
+            }
+            return totalSize;
+        }
+    }
+
+    /**
+     * What a criteria selects from, and how: criteria with the same {@link #key} only differ in their criterions and orders.
+     */
+    private static class Scope {
+        final List<Object> key;
+        final List<Criterion> criterions = new ArrayList<>();
+        final List<Order> orders = new ArrayList<>();
+
+        Scope(AbstractCriteriaImpl criteria, Session session, String language) {
+            this.key = Arrays.asList(
+                session.getWorkspace().getName(),
+                session.getUserID(),
+                language,
+                criteria.getType(),
+                criteria.getBasePath(),
+                criteria.getTimeZone(),
+                criteria.isPrefixLikeAsRange());
+            for (TranslatableCriteria.CriterionEntry entry : criteria.getCriterionEntries()) {
+                criterions.add(entry.getCriterion());
+            }
+            for (TranslatableCriteria.OrderEntry entry : criteria.getOrderEntries()) {
+                orders.add(entry.getOrder());
+            }
+        }
+
+        /**
+         * @return the criterions of the other scope which are not in this one, or {@code null} if this one has criterions which
+         * are not in the other (so it is not broader)
+         */
+        List<Criterion> remaining(Scope other) {
+            List<Criterion> result = new ArrayList<>(other.criterions);
+            for (Criterion criterion : criterions) {
+                if (!result.remove(criterion)) {
+                    return null;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,554 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.*;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+import javax.jcr.query.Row;
+
+import org.apache.commons.lang3.StringUtils;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.JCRQueryException;
+import nl.vpro.jcr.criteria.query.TranslatableCriteria;
+import nl.vpro.jcr.criteria.query.criterion.Criterion;
+import nl.vpro.jcr.criteria.query.criterion.Op;
+import nl.vpro.jcr.criteria.query.criterion.PostFilters;
+import nl.vpro.jcr.criteria.query.criterion.PropertyIndex;
+import nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl;
+import nl.vpro.jcr.utils.Utils;
+
+/**
+ * An in memory copy of the nodes below a base path, with indexes on their property values, to execute criteria on small
+ * subtrees which are queried very often but change rarely (e.g. configuration) without the query engine (see
+ * {@link AbstractCriteriaImpl#setSnapshot(SubtreeSnapshot)}).
+ * <p>
+ * Every property (except binaries) is indexed, per type of its values: a hash index for equality, and an array of the distinct
+ * values sorted on demand for ranges. Criteria with a base path at or below the one of the snapshot, of which all criterions
+ * can be evaluated on nodes (see {@link PostFilters#isEvaluable(Criterion, String)}) and all orders are on properties, are answered by
+ * narrowing down the nodes with the indexes (see {@link Criterion#candidates(PropertyIndex, Criteria)}), and checking the
+ * remaining ones (resolved by the session of the caller, so with its access rights) with
+ * {@link Criterion#matches(Node, Criteria)}. Nodes which are equal on all orders are returned in document order, where the query
+ * engine returns them in the (undefined) order of its index. Nor is the order the same if a property has values of different
+ * types, which the query engine doesn't order consistently (or even fails on).
+ * <p>
+ * The snapshot listens to changes below the base path, and reloads only the changed nodes. Like the index of the query engine,
+ * it is updated asynchronously, so it may briefly lag behind.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public class SubtreeSnapshot implements PropertyIndex, EventListener, AutoCloseable {
+
+    @Getter
+    private final String basePath;
+
+    private final Session session;
+
+    private final ObservationManager observationManager;
+
+    @Getter
+    private final NodeTypeManager nodeTypeManager;
+
+    /**
+     * The nodes by identifier, in document order (as far as they were not changed)
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    private final Map<String, Map<Integer, ValueIndex>> index = new HashMap<>();
+
+    private final Set<String> binaries = new HashSet<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong updates = new AtomicLong();
+
+    private SubtreeSnapshot(Session session, String basePath) throws RepositoryException {
+        this.session = session;
+        this.basePath = basePath;
+        this.observationManager = session.getWorkspace().getObservationManager();
+        this.nodeTypeManager = session.getWorkspace().getNodeTypeManager();
+    }
+
+    /**
+     * Loads the nodes below the base path, and starts listening to changes.
+     * @param session the session to load the nodes with. It is also used when they change (from another thread), so it should
+     * not be used otherwise.
+     */
+    public static SubtreeSnapshot of(Session session, String basePath) throws RepositoryException {
+        if (!ObservedPaths.isFixed(basePath)) {
+            throw new IllegalArgumentException("Not an absolute path " + basePath);
+        }
+        SubtreeSnapshot snapshot = new SubtreeSnapshot(session, ObservedPaths.path(basePath));
+        snapshot.observationManager.addEventListener(snapshot, ObservedPaths.ALL_EVENTS, snapshot.basePath, true, null, null, false);
+        snapshot.reload();
+        return snapshot;
+    }
+
+    /**
+     * Whether the criteria can be answered by this snapshot, when executed in SQL2 (or the default language).
+     */
+    public boolean covers(AbstractCriteriaImpl criteria) {
+        return covers(criteria, null);
+    }
+
+    /**
+     * Whether the criteria can be answered by this snapshot, when executed in the given language. Criteria with a base path which
+     * is an xpath expression (like {@code /site//*}) are not, nor criteria with criterions which can't be evaluated consistently
+     * with the language (see {@link PostFilters#isEvaluable(Criterion, String)}).
+     */
+    public boolean covers(AbstractCriteriaImpl criteria, String language) {
+        if (StringUtils.isNotBlank(criteria.getSpellCheckString()) || !inScope(criteria.getBasePath())
+            || PropertyOrder.of(criteria.getOrderEntries()) == null) {
+            return false;
+        }
+        String rendered = null;
+        for (TranslatableCriteria.CriterionEntry entry : criteria.getCriterionEntries()) {
+            if (!PostFilters.isEvaluable(entry.getCriterion())) {
+                return false;
+            }
+            if (rendered == null) {
+                rendered = PostFilters.language(criteria, language);
+            }
+            if (!PostFilters.isEvaluable(entry.getCriterion(), rendered)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the criteria on the snapshot, which must {@link #covers(AbstractCriteriaImpl, String) cover} it.
+     * @param session the session to resolve the nodes with
+     */
+    public AdvancedResultImpl execute(AbstractCriteriaImpl criteria, Session session, String language) {
+        Criteria.Expression expression = criteria.toExpression(language);
+        PropertyOrder order = PropertyOrder.of(criteria.getOrderEntries());
+        List<String> candidates;
+        try {
+            candidates = candidates(criteria);
+        } catch (RepositoryException e) {
+            throw new JCRQueryException(expression, e);
+        }
+        hits.incrementAndGet();
+        log.debug("Resolving {} candidates from {} in stead of executing {}", candidates.size(), this, expression);
+        MemoizedQueryResult result = MemoizedQueryResult.of(() -> {
+            try {
+                return NodeQueryResult.ofRows(resolve(candidates, criteria, order, session));
+            } catch (RepositoryException e) {
+                throw new JCRQueryException(expression, e);
+            }
+        });
+        Integer maxResults = criteria.getMaxResults();
+        int offset = criteria.getFirstResult();
+        int pageNumberStartingFromOne = 1;
+        if (maxResults != null && maxResults > 0 && offset > maxResults - 1) {
+            pageNumberStartingFromOne = (offset / maxResults) + 1;
+        }
+        return new AdvancedResultImpl(
+            result,
+            () -> {
+                try {
+                    return result.getSize();
+                } catch (RepositoryException e) {
+                    throw new JCRQueryException(expression, e);
+                }
+            },
+            maxResults,
+            pageNumberStartingFromOne,
+            expression,
+            null,
+            true,
+            offset);
+    }
+
+    /**
+     * The identifiers of the nodes of the right type and below the base path of the criteria, which the indexes can't exclude
+     */
+    synchronized List<String> candidates(AbstractCriteriaImpl criteria) throws RepositoryException {
+        Set<String> candidates = null;
+        for (TranslatableCriteria.CriterionEntry entry : criteria.getCriterionEntries()) {
+            Set<String> found = entry.getCriterion().candidates(this, criteria);
+            if (found != null) {
+                if (candidates == null) {
+                    candidates = new HashSet<>(found);
+                } else {
+                    candidates.retainAll(found);
+                }
+            }
+        }
+        String path = ObservedPaths.path(criteria.getBasePath());
+        String type = criteria.getType();
+        List<String> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if ((candidates == null || candidates.contains(entry.identifier))
+                && ObservedPaths.isDescendant(entry.path, path)
+                && (type == null || entry.types.contains(type))) {
+                result.add(entry.identifier);
+            }
+        }
+        return result;
+    }
+
+    private List<Row> resolve(List<String> candidates, AbstractCriteriaImpl criteria, PropertyOrder order, Session session) throws RepositoryException {
+        String path = ObservedPaths.path(criteria.getBasePath());
+        List<Row> rows = new ArrayList<>();
+        for (String identifier : candidates) {
+            Node node;
+            try {
+                node = session.getNodeByIdentifier(identifier);
+            } catch (ItemNotFoundException infe) {
+                continue;
+            }
+            // the query engine doesn't see unsaved nodes
+            if (!node.isNew() && ObservedPaths.isDescendant(node.getPath(), path) && matches(node, criteria)) {
+                rows.add(new NodeQueryResult.NodeRow(node));
+            }
+        }
+        if (!order.isEmpty()) {
+            order.sort(rows);
+        }
+        return rows;
+    }
+
+    private static boolean matches(Node node, AbstractCriteriaImpl criteria) throws RepositoryException {
+        for (TranslatableCriteria.CriterionEntry entry : criteria.getCriterionEntries()) {
+            if (!entry.getCriterion().matches(node, criteria)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized Set<String> find(String propertyName, Op op, Value literal) throws RepositoryException {
+        if (binaries.contains(propertyName)) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<Integer, ValueIndex> e : index.getOrDefault(propertyName, Collections.emptyMap()).entrySet()) {
+            if (e.getKey() == literal.getType()) {
+                e.getValue().find(op, literal, result);
+            } else {
+                // the query engine compares values of another type by their index terms, which don't follow the order of the values
+                e.getValue().findIndexed(op, literal, result);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        synchronized (this) {
+            try {
+                while (events.hasNext()) {
+                    Event event = events.nextEvent();
+                    String path = event.getPath();
+                    switch (event.getType()) {
+                        case Event.NODE_REMOVED:
+                            removeSubtree(path);
+                            break;
+                        case Event.NODE_MOVED:
+                            Object source = event.getInfo().get(ObservedPaths.SRC_ABS_PATH);
+                            if (source != null) {
+                                removeSubtree(source.toString());
+                            }
+                            loadSubtree(path);
+                            break;
+                        case Event.NODE_ADDED:
+                            loadSubtree(path);
+                            break;
+                        default:
+                            loadNode(path.substring(0, path.lastIndexOf('/')));
+                    }
+                    updates.incrementAndGet();
+                }
+            } catch (RepositoryException e) {
+                log.warn("{}, reloading {}", e.getMessage(), basePath);
+                try {
+                    reload();
+                } catch (RepositoryException re) {
+                    log.error(re.getMessage(), re);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads all nodes again
+     */
+    public synchronized void reload() throws RepositoryException {
+        clear();
+        if (session.nodeExists(basePath)) {
+            loadDescendants(session.getNode(basePath));
+        }
+        log.debug("Loaded {}", this);
+    }
+
+    private void loadSubtree(String path) throws RepositoryException {
+        if (path.equals(basePath)) {
+            reload();
+            return;
+        }
+        removeSubtree(path);
+        if (ObservedPaths.isDescendant(path, basePath) && session.nodeExists(path)) {
+            Node node = session.getNode(path);
+            put(entry(node));
+            loadDescendants(node);
+        }
+    }
+
+    private void loadNode(String path) throws RepositoryException {
+        if (!ObservedPaths.isDescendant(path, basePath)) {
+            return;
+        }
+        if (session.nodeExists(path)) {
+            put(entry(session.getNode(path)));
+        } else {
+            removeSubtree(path);
+        }
+    }
+
+    private void loadDescendants(Node node) throws RepositoryException {
+        for (NodeIterator children = node.getNodes(); children.hasNext(); ) {
+            Node child = children.nextNode();
+            put(entry(child));
+            loadDescendants(child);
+        }
+    }
+
+    private void removeSubtree(String path) {
+        Iterator<Entry> i = entries.values().iterator();
+        while (i.hasNext()) {
+            Entry entry = i.next();
+            if (entry.path.equals(path) || entry.path.startsWith(path + "/")) {
+                i.remove();
+                unindex(entry);
+            }
+        }
+    }
+
+    private void put(Entry entry) throws RepositoryException {
+        Entry previous = entries.put(entry.identifier, entry);
+        if (previous != null) {
+            unindex(previous);
+        }
+        for (Map.Entry<String, Value[]> property : entry.properties.entrySet()) {
+            for (Value value : property.getValue()) {
+                index.computeIfAbsent(property.getKey(), k -> new HashMap<>())
+                    .computeIfAbsent(value.getType(), k -> new ValueIndex())
+                    .add(value, entry.identifier);
+            }
+        }
+    }
+
+    private void unindex(Entry entry) {
+        for (Map.Entry<String, Value[]> property : entry.properties.entrySet()) {
+            Map<Integer, ValueIndex> types = index.get(property.getKey());
+            if (types == null) {
+                continue;
+            }
+            for (Value value : property.getValue()) {
+                ValueIndex values = types.get(value.getType());
+                if (values != null) {
+                    try {
+                        values.remove(value, entry.identifier);
+                    } catch (RepositoryException e) {
+                        log.warn(e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private Entry entry(Node node) throws RepositoryException {
+        Set<String> types = new HashSet<>();
+        addTypes(node.getPrimaryNodeType(), types);
+        for (NodeType mixin : node.getMixinNodeTypes()) {
+            addTypes(mixin, types);
+        }
+        Map<String, Value[]> properties = new HashMap<>();
+        for (PropertyIterator i = node.getProperties(); i.hasNext(); ) {
+            Property property = i.nextProperty();
+            if (property.getType() == PropertyType.BINARY) {
+                binaries.add(property.getName());
+                continue;
+            }
+            properties.put(property.getName(), property.isMultiple() ? property.getValues() : new Value[] {property.getValue()});
+        }
+        return new Entry(node.getIdentifier(), node.getPath(), types, properties);
+    }
+
+    private static void addTypes(NodeType type, Set<String> types) {
+        types.add(type.getName());
+        for (NodeType supertype : type.getSupertypes()) {
+            types.add(supertype.getName());
+        }
+    }
+
+    private boolean inScope(String path) {
+        if (!ObservedPaths.isFixed(path)) {
+            return false;
+        }
+        String p = ObservedPaths.path(path);
+        return p.equals(basePath) || ObservedPaths.isDescendant(p, basePath);
+    }
+
+    private void clear() {
+        entries.clear();
+        index.clear();
+        binaries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    /**
+     * Stops listening to the repository, and clears the snapshot.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            observationManager.removeEventListener(this);
+        } catch (RepositoryException e) {
+            log.warn(e.getMessage());
+        }
+        clear();
+    }
+
+    @Override
+    public String toString() {
+        return "SubtreeSnapshot{basePath=" + basePath + ", size=" + size() + ", hits=" + hits + ", updates=" + updates + "}";
+    }
+
+    private static class Entry {
+        final String identifier;
+        final String path;
+        final Set<String> types;
+        final Map<String, Value[]> properties;
+
+        Entry(String identifier, String path, Set<String> types, Map<String, Value[]> properties) {
+            this.identifier = identifier;
+            this.path = path;
+            this.types = types;
+            this.properties = properties;
+        }
+    }
+
+    /**
+     * The values of one type of a property. Values which compare as equal (see {@link Utils#compare(Value, Value)}) have the
+     * same {@link #key(Value) key}.
+     */
+    private static class ValueIndex {
+        final Map<Object, Set<String>> identifiers = new HashMap<>();
+        final Map<Object, Value> values = new HashMap<>();
+        Value[] sorted;
+
+        void add(Value value, String identifier) throws RepositoryException {
+            Object key = key(value);
+            if (identifiers.computeIfAbsent(key, k -> new HashSet<>()).add(identifier) && values.putIfAbsent(key, value) == null) {
+                sorted = null;
+            }
+        }
+
+        void remove(Value value, String identifier) throws RepositoryException {
+            Object key = key(value);
+            Set<String> ids = identifiers.get(key);
+            if (ids != null && ids.remove(identifier) && ids.isEmpty()) {
+                identifiers.remove(key);
+                values.remove(key);
+                sorted = null;
+            }
+        }
+
+        void find(Op op, Value literal, Set<String> result) throws RepositoryException {
+            if (op == Op.EQ) {
+                result.addAll(identifiers.getOrDefault(key(literal), Collections.emptySet()));
+                return;
+            }
+            Value[] sorted = sorted();
+            // the first value not smaller than (or, for GT and LE, bigger than) the literal
+            int low = 0;
+            int high = sorted.length;
+            boolean stopAtEqual = op == Op.GE || op == Op.LT;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int c = Utils.compare(sorted[mid], literal);
+                if (c < 0 || (c == 0 && !stopAtEqual)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            boolean upwards = op == Op.GE || op == Op.GT;
+            int from = upwards ? low : 0;
+            int to = upwards ? sorted.length : low;
+            for (int i = from; i < to; i++) {
+                result.addAll(identifiers.get(key(sorted[i])));
+            }
+        }
+
+        void findIndexed(Op op, Value literal, Set<String> result) throws RepositoryException {
+            for (Map.Entry<Object, Value> e : values.entrySet()) {
+                if (op.test(Utils.compareIndexed(e.getValue(), literal))) {
+                    result.addAll(identifiers.get(e.getKey()));
+                }
+            }
+        }
+
+        private Value[] sorted() throws RepositoryException {
+            if (sorted == null) {
+                Value[] result = values.values().toArray(new Value[0]);
+                RepositoryException[] failure = new RepositoryException[1];
+                Arrays.sort(result, (a, b) -> {
+                    try {
+                        return Utils.compare(a, b);
+                    } catch (RepositoryException e) {
+                        failure[0] = e;
+                        return 0;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                sorted = result;
+            }
+            return sorted;
+        }
+
+        private static Object key(Value value) throws RepositoryException {
+            switch (value.getType()) {
+                case PropertyType.LONG:
+                    return value.getLong();
+                case PropertyType.DOUBLE:
+                    return value.getDouble();
+                case PropertyType.DECIMAL:
+                    return value.getDecimal().stripTrailingZeros();
+                case PropertyType.DATE:
+                    return value.getDate().getTimeInMillis();
+                case PropertyType.BOOLEAN:
+                    return value.getBoolean();
+                default:
+                    return value.getString();
+            }
+        }
+    }
+}
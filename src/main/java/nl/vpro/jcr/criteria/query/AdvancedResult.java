@@ -36,7 +36,7 @@ import nl.vpro.jcr.criteria.advanced.impl.AdvancedResultItemImpl;
  * information about the total number of available items, the current page number, the total number of pages.
  * @author fgiust
  */
-public interface AdvancedResult extends Iterable<AdvancedResultItem> {
+public interface AdvancedResult extends Iterable<AdvancedResultItem>, AutoCloseable {
 
     /**
      * An empty result.
@@ -63,12 +63,32 @@ public interface AdvancedResult extends Iterable<AdvancedResultItem> {
      */
     long getTotalSize();
 
+    /**
+     * Gets the total number of results, which may be a lower bound if counting was limited (see
+     * {@link Criteria#setCountLimit(Integer)}).
+     * @since 2.12
+     */
+    default TotalSize getTotal() {
+        return TotalSize.exact(getTotalSize());
+    }
+
     /**
      * Gets the total number of pages
      * @return total number of pages
      */
     int getNumberOfPages();
 
+    /**
+     * Whether there is a page after this one. This is normally known without determining the {@link #getTotalSize() total size},
+     * so it is cheap, and suitable to show only 'next' and 'previous' links.
+     * @return whether there is a next page, {@code false} if the result is not paged
+     * @since 2.12
+     */
+    default boolean hasNextPage() {
+        Integer itemsPerPage = getItemsPerPage();
+        return itemsPerPage != null && itemsPerPage > 0 && getPage() < getNumberOfPages();
+    }
+
     /**
      * Gets the suggestion from the spell checker. Note that spell checker must be configured in jackrabbit for this to
      * work. See http://wiki.apache.org/jackrabbit/Search for details.
@@ -76,6 +96,18 @@ public interface AdvancedResult extends Iterable<AdvancedResultItem> {
      */
     String getSpellCheckerSuggestion();
 
+    /**
+     * A token to retrieve the page after this one with 'keyset' paging (see
+     * {@link nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl.Builder#searchAfter(String)}). The next page is then
+     * retrieved with range constraints on the values of the order by properties of the last row of this page, in stead of
+     * with an offset.
+     * @return the token, or {@code null} if this is the last page, or if the criteria is not paged or not ordered on properties
+     * @since 2.12
+     */
+    default String getNextCursor() {
+        return null;
+    }
+
     /**
      * Gets an iterator over the results
      * @return an iterator over the results
@@ -113,6 +145,15 @@ public interface AdvancedResult extends Iterable<AdvancedResultItem> {
         return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED), false);
     }
 
+    /**
+     * Releases what the result holds on to. Only needed for results which were executed asynchronously (see
+     * {@link ExecutableQuery#executeAsync(SessionProvider, java.util.concurrent.Executor)}), which release their session.
+     * @since 2.12
+     */
+    @Override
+    default void close() {
+    }
+
     /**
      * @author fgiust
      */
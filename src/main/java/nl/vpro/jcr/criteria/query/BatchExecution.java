@@ -0,0 +1,149 @@
+package nl.vpro.jcr.criteria.query;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Executes a batch of queries (see {@link JCRCriteriaFactory#executeAll(Collection, SessionProvider, int, Executor)}). Queries
+ * with equal {@link ExecutableQuery#getResultKey(String) result keys} are executed only once, and their rows are read right away,
+ * so that each of them gets a {@link ReplayedResult result} of its own. The distinct queries are taken from a queue by at most a
+ * given number of workers, each with its own session, which is released when all results executed with it are closed.
+ *
+ * @since 2.12
+ */
+@Slf4j
+final class BatchExecution {
+
+    private final List<ExecutableQuery> distinct = new ArrayList<>();
+
+    /**
+     * For every query, the index of its distinct query
+     */
+    private final int[] indices;
+
+    /**
+     * For every distinct query, the number of queries it stands for
+     */
+    private final List<Integer> counts = new ArrayList<>();
+
+    private final AdvancedResult[] results;
+
+    private final Lease[] leases;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final SessionProvider sessions;
+
+    BatchExecution(Collection<? extends ExecutableQuery> queries, SessionProvider sessions) {
+        this.sessions = sessions;
+        this.indices = new int[queries.size()];
+        Map<Object, Integer> keys = new HashMap<>();
+        int i = 0;
+        for (ExecutableQuery query : queries) {
+            Object key = query.getResultKey(null);
+            Integer index = key == null ? null : keys.get(key);
+            if (index == null) {
+                index = distinct.size();
+                distinct.add(query);
+                counts.add(0);
+                if (key != null) {
+                    keys.put(key, index);
+                }
+            }
+            counts.set(index, counts.get(index) + 1);
+            indices[i++] = index;
+        }
+        this.results = new AdvancedResult[distinct.size()];
+        this.leases = new Lease[distinct.size()];
+        log.debug("Executing {} distinct queries of {}", distinct.size(), queries.size());
+    }
+
+    List<AdvancedResult> execute(int maxSessions, Executor executor) {
+        int workers = Math.min(Math.max(maxSessions, 1), distinct.size());
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            futures[w] = CompletableFuture.runAsync(this::work, executor);
+        }
+        Throwable failure = null;
+        for (CompletableFuture<?> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            }
+        }
+        List<AdvancedResult> list = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            AdvancedResult result = results[index] instanceof ReplayedResult ? ((ReplayedResult) results[index]).copy() : results[index];
+            list.add(result == null ? null : new ReleasingResult(result, leases[index]::release));
+        }
+        if (failure != null) {
+            for (AdvancedResult result : list) {
+                if (result != null) {
+                    result.close();
+                }
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new RuntimeException(failure);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private void work() {
+        Lease lease;
+        try {
+            lease = new Lease(sessions.get());
+        } catch (RepositoryException e) {
+            throw new CompletionException(e);
+        }
+        try {
+            int index;
+            while ((index = next.getAndIncrement()) < distinct.size()) {
+                AdvancedResult result = distinct.get(index).execute(lease.session, null);
+                results[index] = counts.get(index) > 1 ? ReplayedResult.of(result) : ReleasingResult.executed(result);
+                leases[index] = lease;
+                lease.references.addAndGet(counts.get(index));
+            }
+        } finally {
+            // the reference of the worker itself
+            lease.release();
+        }
+    }
+
+    /**
+     * A session of a worker, which is released when it is not referenced anymore
+     */
+    private class Lease {
+        private final Session session;
+
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Lease(Session session) {
+            this.session = session;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                log.debug("Releasing {}", session);
+                sessions.release(session);
+            }
+        }
+    }
+}
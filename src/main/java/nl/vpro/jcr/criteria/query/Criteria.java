@@ -22,7 +22,12 @@ package nl.vpro.jcr.criteria.query;
 import lombok.Getter;
 import lombok.SneakyThrows;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javax.jcr.Node;
+import javax.jcr.Value;
 import javax.jcr.query.Query;
 
 import org.slf4j.LoggerFactory;
@@ -229,25 +234,57 @@ public interface Criteria extends ExecutableQuery {
      */
     Criteria setForcePagingWithDocumentOrder(boolean force);
 
+    /**
+     * Limits the counting of the total number of results (if that requires a separate query) to the given number. If there
+     * are more results, {@link AdvancedResult#getTotal()} is a lower bound, and {@link AdvancedResult#getTotalSize()} is the
+     * limit. This is much cheaper for queries with many results.
+     * @param countLimit the maximum number of results to count, or {@code null} to count them all
+     * @return this (for method chaining)
+     * @since 2.12
+     */
+    Criteria setCountLimit(Integer countLimit);
+
+    /**
+     * Whether a LIKE with only a trailing wildcard may be rendered as a range in SQL2 ({@code >= 'abc' AND < 'abd'}), and a LIKE
+     * without wildcards as an equality, which are much cheaper to evaluate than a wildcard. This is only equivalent if the property
+     * is single valued and of type string, so it is off by default.
+     * @since 2.12
+     */
+    default boolean isPrefixLikeAsRange() {
+        return false;
+    }
+
 
     @Getter
     class Expression {
         final String language;
         final String statement;
+        /**
+         * The values to bind to the variables in the statement (by variable name)
+         * @since 2.12
+         */
+        final Map<String, Value> bindVariables;
 
-        private Expression(String language, String statement) {
+        private Expression(String language, String statement, Map<String, Value> bindVariables) {
             this.language = language;
             this.statement = statement;
+            this.bindVariables = bindVariables;
         }
         public static Expression xpath(String statement) {
-            return new Expression(Query.XPATH, statement);
+            return new Expression(Query.XPATH, statement, Collections.emptyMap());
         }
         public static Expression sql2(String statement) {
-            return new Expression(Query.JCR_SQL2, statement);
+            return new Expression(Query.JCR_SQL2, statement, Collections.emptyMap());
+        }
+        /**
+         * @since 2.12
+         */
+        public static Expression sql2(String statement, Map<String, Value> bindVariables) {
+            return new Expression(Query.JCR_SQL2, statement, Collections.unmodifiableMap(new LinkedHashMap<>(bindVariables)));
         }
         @Override
         public String toString() {
-            return language + ":\"" + statement + '"';
+            return language + ":\"" + statement + '"' + (bindVariables.isEmpty() ? "" : " " + bindVariables);
         }
 
     }
@@ -19,6 +19,8 @@
 
 package nl.vpro.jcr.criteria.query;
 
+import java.util.Arrays;
+
 import javax.jcr.Session;
 
 import nl.vpro.jcr.criteria.advanced.impl.QueryExecutorHelper;
@@ -84,6 +86,11 @@ public class DirectJcrQuery implements ExecutableQuery  {
             .setOffset((Math.max(pageNumberStartingFromOne, 1) - 1) * maxResults);
     }
 
+    @Override
+    public Object getResultKey(String language) {
+        return Arrays.asList(expression.getLanguage(), expression.getStatement(), expression.getBindVariables(), spellCheckString, maxResults, offset);
+    }
+
     @Override
     public AdvancedResult execute(Session session, String language) {
         if (language != null && ! language.equals(expression.getLanguage())) {
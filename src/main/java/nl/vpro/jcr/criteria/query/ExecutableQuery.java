@@ -20,10 +20,15 @@
 package nl.vpro.jcr.criteria.query;
 
 import java.time.ZoneId;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.LongSupplier;
 
 import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 
 /**
@@ -41,6 +46,53 @@ public interface ExecutableQuery {
 
     AdvancedResult execute(Session session, String language);
 
+    /**
+     * Executes the query on the given executor, with a session of the given provider, since jcr sessions may not be shared
+     * between threads. The items of the result are read from that session, so it is only released when the result is
+     * {@link AdvancedResult#close() closed} (or right away if executing fails).
+     * @param executor where to execute. The queries block on the repository, so this should not be the common fork join pool
+     *                 (which is meant for non blocking tasks, and is shared by the whole jvm)
+     * @since 2.12
+     */
+    default CompletableFuture<AdvancedResult> executeAsync(SessionProvider sessions, Executor executor) {
+        return executeAsync(sessions, null, executor);
+    }
+
+    /**
+     * @see #executeAsync(SessionProvider, Executor)
+     * @since 2.12
+     */
+    default CompletableFuture<AdvancedResult> executeAsync(SessionProvider sessions, String language, Executor executor) {
+        Objects.requireNonNull(executor, "executor");
+        return CompletableFuture.supplyAsync(() -> {
+            final Session session;
+            try {
+                session = sessions.get();
+            } catch (RepositoryException e) {
+                throw new CompletionException(e);
+            }
+            try {
+                // execute the query now, in stead of when the caller reads the result
+                AdvancedResult result = ReleasingResult.executed(execute(session, language));
+                return new ReleasingResult(result, () -> sessions.release(session));
+            } catch (RuntimeException | Error e) {
+                sessions.release(session);
+                throw e;
+            }
+        }, executor);
+    }
+
+
+    /**
+     * A key which is equal for queries which have the same results, so that they need to be executed only once (see
+     * {@link JCRCriteriaFactory#executeAll(java.util.Collection, SessionProvider)}).
+     * @param language the language the query would be executed in
+     * @return the key, or {@code null} if not known
+     * @since 2.12
+     */
+    default Object getResultKey(String language) {
+        return null;
+    }
 
     /**
      * @since 2.0
@@ -19,6 +19,11 @@
 
 package nl.vpro.jcr.criteria.query;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
 import nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl;
 
 
@@ -32,6 +37,11 @@ import nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl;
  */
 public final class JCRCriteriaFactory {
 
+    /**
+     * @since 2.12
+     */
+    public static final int DEFAULT_MAX_SESSIONS = 4;
+
     private JCRCriteriaFactory() {
     }
 
@@ -56,4 +66,36 @@ public final class JCRCriteriaFactory {
         return AdvancedCriteriaImpl.builder();
     }
 
+    /**
+     * Executes several queries at once, with at most {@value #DEFAULT_MAX_SESSIONS} sessions in parallel. Every worker gets a
+     * thread of its own, which ends when the queries are executed.
+     * @see #executeAll(Collection, SessionProvider, int, Executor)
+     * @since 2.12
+     */
+    public static List<AdvancedResult> executeAll(Collection<? extends ExecutableQuery> queries, SessionProvider sessions) {
+        return executeAll(queries, sessions, DEFAULT_MAX_SESSIONS, command -> new Thread(command, "executeAll").start());
+    }
+
+    /**
+     * Executes several queries at once. Queries which have the same results (see {@link ExecutableQuery#getResultKey(String)})
+     * are executed only once, and the others are executed in parallel, each with a session of the given provider, but with at
+     * most {@code maxSessions} sessions. A session is released when all results which were executed with it are
+     * {@link AdvancedResult#close() closed}.
+     * <p>
+     * Queries with the same results get results of their own, but several results can share a session, and jcr sessions are not
+     * meant to be used by several threads at the same time. Results which are used in parallel need a session each (see
+     * {@link ExecutableQuery#executeAsync(SessionProvider, Executor)}).
+     * @param executor where the workers run. They block on the repository, so this should not be the common fork join pool.
+     * @return the results, in the order of the queries
+     * @since 2.12
+     */
+    public static List<AdvancedResult> executeAll(
+        Collection<? extends ExecutableQuery> queries,
+        SessionProvider sessions,
+        int maxSessions,
+        Executor executor) {
+        Objects.requireNonNull(executor, "executor");
+        return new BatchExecution(queries, sessions).execute(maxSessions, executor);
+    }
+
 }
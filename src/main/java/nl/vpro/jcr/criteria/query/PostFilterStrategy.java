@@ -0,0 +1,49 @@
+package nl.vpro.jcr.criteria.query;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import nl.vpro.jcr.criteria.query.criterion.Criterion;
+import nl.vpro.jcr.criteria.query.criterion.PostFilters;
+
+/**
+ * Which criterions of a criteria are not executed by the query engine, but evaluated in memory on the rows of the other ones
+ * (see {@link nl.vpro.jcr.criteria.advanced.impl.HybridQuery}). This can be set per criteria (see
+ * {@link nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl.Builder#postFilterStrategy(PostFilterStrategy)}).
+ * <p>
+ * Only criterions which can be evaluated on nodes (see {@link PostFilters#isEvaluable(Criterion, String)}) are post filtered.
+ *
+ * @since 2.12
+ */
+@FunctionalInterface
+public interface PostFilterStrategy {
+
+    /**
+     * Everything is executed by the query engine.
+     */
+    PostFilterStrategy NONE = criterion -> false;
+
+    /**
+     * Post filters the criterions which the query engine can't evaluate efficiently (see {@link PostFilters#isExpensive(Criterion)}).
+     */
+    PostFilterStrategy EXPENSIVE = PostFilters::isExpensive;
+
+    /**
+     * Post filters the expensive criterions (see {@link #EXPENSIVE}), and the criterions on properties which are not indexed.
+     * @param indexedProperties the names of the indexed properties (with or without attribute selector)
+     */
+    static PostFilterStrategy indexed(String... indexedProperties) {
+        Set<String> indexed = new HashSet<>();
+        for (String property : indexedProperties) {
+            indexed.add(property.length() > 0 && property.charAt(0) == Criterion.ATTRIBUTE_SELECTOR ? property.substring(1) : property);
+        }
+        return criterion -> EXPENSIVE.isPostFiltered(criterion)
+            || (PostFilters.isEvaluable(criterion) && !indexed.containsAll(PostFilters.properties(criterion)));
+    }
+
+    /**
+     * @param criterion a criterion added to the criteria
+     * @return whether the criterion is evaluated in memory in stead of by the query engine
+     */
+    boolean isPostFiltered(Criterion criterion);
+}
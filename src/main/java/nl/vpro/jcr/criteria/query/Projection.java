@@ -0,0 +1,177 @@
+package nl.vpro.jcr.criteria.query;
+
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.query.Row;
+
+import nl.vpro.jcr.criteria.query.impl.Column;
+
+/**
+ * Maps the rows of a result directly to objects, using only the values of the rows themselves. So, unlike
+ * {@link AdvancedResultItem}, the nodes are never needed. This is useful for e.g. listings which only need a few properties
+ * of every result.
+ * <p>
+ * The properties must be selected as columns, e.g. with {@link nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl.Builder#projection(Projection)}:
+ * <pre>{@code
+ * Projection<Map<String, Object>> projection = Projection.toMap("title", "date");
+ * AdvancedResult result = JCRCriteriaFactory.builder()
+ *     .type("mgnl:page")
+ *     .projection(projection)
+ *     .build()
+ *     .execute(session);
+ * ResultIterator<Map<String, Object>> items = result.getItems(projection);
+ * }</pre>
+ * @param <T> the type of the mapped objects
+ * @since 2.12
+ */
+public final class Projection<T> implements Function<Row, T> {
+
+    /**
+     * The key of the path in the maps of {@link #toMap(String...)}
+     */
+    public static final String PATH = "jcr:path";
+
+    @Getter
+    private final List<String> properties;
+
+    private final Mapper<T> mapper;
+
+    private Projection(List<String> properties, Mapper<T> mapper) {
+        this.properties = properties;
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param mapper maps the values of a row to an object
+     * @param properties the properties which are read by the mapper
+     */
+    public static <T> Projection<T> of(Mapper<T> mapper, String... properties) {
+        return new Projection<>(Collections.unmodifiableList(Arrays.asList(properties.clone())), mapper);
+    }
+
+    /**
+     * Maps every row to a map with the values of the given properties (see {@link Values#getObject(String)}), and its path
+     * (with key {@link #PATH}). Missing properties are absent in the map.
+     */
+    public static Projection<Map<String, Object>> toMap(String... properties) {
+        return of(values -> {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put(PATH, values.getPath());
+            for (String property : properties) {
+                Object value = values.getObject(property);
+                if (value != null) {
+                    result.put(property, value);
+                }
+            }
+            return result;
+        }, properties);
+    }
+
+    /**
+     * The columns to select for this projection
+     */
+    public List<Column> getColumns() {
+        List<Column> columns = new ArrayList<>(properties.size());
+        for (String property : properties) {
+            columns.add(Column.property(property));
+        }
+        return columns;
+    }
+
+    @Override
+    @SneakyThrows(RepositoryException.class)
+    public T apply(Row row) {
+        return mapper.map(new Values(row));
+    }
+
+    @FunctionalInterface
+    public interface Mapper<T> {
+        T map(Values values) throws RepositoryException;
+    }
+
+    /**
+     * The values of one row
+     */
+    public static final class Values {
+
+        private final Row row;
+
+        private Values(Row row) {
+            this.row = row;
+        }
+
+        public String getPath() throws RepositoryException {
+            return row.getPath();
+        }
+
+        public double getScore() throws RepositoryException {
+            return row.getScore();
+        }
+
+        /**
+         * @return the value of the given property, or {@code null} if the row has none. Jackrabbit returns an empty string
+         * for a missing property, so empty strings are considered missing too.
+         */
+        public Value getValue(String property) throws RepositoryException {
+            Value value = row.getValue(property);
+            if (value != null && value.getType() == PropertyType.STRING && value.getString().isEmpty()) {
+                return null;
+            }
+            return value;
+        }
+
+        public String getString(String property) throws RepositoryException {
+            Value value = getValue(property);
+            return value == null ? null : value.getString();
+        }
+
+        public Long getLong(String property) throws RepositoryException {
+            Value value = getValue(property);
+            return value == null ? null : value.getLong();
+        }
+
+        public Boolean getBoolean(String property) throws RepositoryException {
+            Value value = getValue(property);
+            return value == null ? null : value.getBoolean();
+        }
+
+        public Instant getInstant(String property) throws RepositoryException {
+            Value value = getValue(property);
+            return value == null ? null : value.getDate().toInstant();
+        }
+
+        /**
+         * @return the value of the given property as the corresponding java object ({@link String}, {@link Long},
+         * {@link Double}, {@link BigDecimal}, {@link Boolean} or {@link Instant}), or {@code null} if the row has none
+         */
+        public Object getObject(String property) throws RepositoryException {
+            Value value = getValue(property);
+            if (value == null) {
+                return null;
+            }
+            switch (value.getType()) {
+                case PropertyType.LONG:
+                    return value.getLong();
+                case PropertyType.DOUBLE:
+                    return value.getDouble();
+                case PropertyType.DECIMAL:
+                    return value.getDecimal();
+                case PropertyType.BOOLEAN:
+                    return value.getBoolean();
+                case PropertyType.DATE:
+                    return value.getDate().toInstant();
+                default:
+                    return value.getString();
+            }
+        }
+    }
+}
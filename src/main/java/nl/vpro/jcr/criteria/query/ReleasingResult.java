@@ -0,0 +1,110 @@
+package nl.vpro.jcr.criteria.query;
+
+import lombok.ToString;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import javax.jcr.query.Row;
+
+/**
+ * The result of {@link ExecutableQuery#executeAsync(SessionProvider, String, java.util.concurrent.Executor)} or
+ * {@link JCRCriteriaFactory#executeAll(java.util.Collection, SessionProvider)}, which holds on to the session it was executed with,
+ * until it is closed.
+ *
+ * @since 2.12
+ */
+@ToString(of = "result")
+final class ReleasingResult implements AdvancedResult {
+
+    private final AdvancedResult result;
+
+    private final Runnable release;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * @param release releases the session, called on the first {@link #close()}
+     */
+    ReleasingResult(AdvancedResult result, Runnable release) {
+        this.result = result;
+        this.release = release;
+    }
+
+    /**
+     * Makes sure the query of the result is executed now (results are normally only executed when they are read)
+     */
+    static AdvancedResult executed(AdvancedResult result) {
+        result.getItems(row -> row).hasNext();
+        return result;
+    }
+
+    @Override
+    public Integer getItemsPerPage() {
+        return result.getItemsPerPage();
+    }
+
+    @Override
+    public int getPage() {
+        return result.getPage();
+    }
+
+    @Override
+    public long getTotalSize() {
+        return result.getTotalSize();
+    }
+
+    @Override
+    public TotalSize getTotal() {
+        return result.getTotal();
+    }
+
+    @Override
+    public int getNumberOfPages() {
+        return result.getNumberOfPages();
+    }
+
+    @Override
+    public boolean hasNextPage() {
+        return result.hasNextPage();
+    }
+
+    @Override
+    public String getSpellCheckerSuggestion() {
+        return result.getSpellCheckerSuggestion();
+    }
+
+    @Override
+    public String getNextCursor() {
+        return result.getNextCursor();
+    }
+
+    @Override
+    public ResultIterator<AdvancedResultItem> getItems() {
+        return result.getItems();
+    }
+
+    @Override
+    public <K> ResultIterator<K> getItems(Function<Row, K> wrapper) {
+        return result.getItems(wrapper);
+    }
+
+    @Override
+    public AdvancedResultItem getFirstResult() {
+        return result.getFirstResult();
+    }
+
+    /**
+     * Releases the session. The items of the result can not be used anymore after this.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                result.close();
+            } finally {
+                release.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package nl.vpro.jcr.criteria.query;
+
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.jcr.query.Row;
+
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+
+import nl.vpro.jcr.criteria.advanced.impl.AdvancedResultItemImpl;
+
+/**
+ * A result of which the rows were read already, so that it can be handed out for several queries with the same results (see
+ * {@link BatchExecution}). Every {@link #copy() copy} iterates the rows itself, and the rest of the result (like the total size,
+ * which may still have to be counted) is taken from the original one, by one copy at a time.
+ *
+ * @since 2.12
+ */
+@ToString(of = "result")
+final class ReplayedResult implements AdvancedResult {
+
+    private final AdvancedResult result;
+
+    private final List<Row> rows;
+
+    private ReplayedResult(AdvancedResult result, List<Row> rows) {
+        this.result = result;
+        this.rows = rows;
+    }
+
+    static ReplayedResult of(AdvancedResult result) {
+        List<Row> rows = new ArrayList<>();
+        ResultIterator<Row> iterator = result.getItems(row -> row);
+        while (iterator.hasNext()) {
+            rows.add(iterator.next());
+        }
+        return new ReplayedResult(result, Collections.unmodifiableList(rows));
+    }
+
+    ReplayedResult copy() {
+        return new ReplayedResult(result, rows);
+    }
+
+    @Override
+    public Integer getItemsPerPage() {
+        synchronized (result) {
+            return result.getItemsPerPage();
+        }
+    }
+
+    @Override
+    public int getPage() {
+        synchronized (result) {
+            return result.getPage();
+        }
+    }
+
+    @Override
+    public long getTotalSize() {
+        synchronized (result) {
+            return result.getTotalSize();
+        }
+    }
+
+    @Override
+    public TotalSize getTotal() {
+        synchronized (result) {
+            return result.getTotal();
+        }
+    }
+
+    @Override
+    public int getNumberOfPages() {
+        synchronized (result) {
+            return result.getNumberOfPages();
+        }
+    }
+
+    @Override
+    public boolean hasNextPage() {
+        synchronized (result) {
+            return result.hasNextPage();
+        }
+    }
+
+    @Override
+    public String getSpellCheckerSuggestion() {
+        synchronized (result) {
+            return result.getSpellCheckerSuggestion();
+        }
+    }
+
+    @Override
+    public String getNextCursor() {
+        synchronized (result) {
+            return result.getNextCursor();
+        }
+    }
+
+    @Override
+    public <K> ResultIterator<K> getItems(Function<Row, K> wrapper) {
+        return new ResultIteratorImpl<>(new RowIteratorAdapter(rows), wrapper);
+    }
+
+    @Override
+    public AdvancedResultItem getFirstResult() {
+        return rows.isEmpty() ? null : new AdvancedResultItemImpl(rows.get(0));
+    }
+}
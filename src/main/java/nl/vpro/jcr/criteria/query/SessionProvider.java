@@ -0,0 +1,27 @@
+package nl.vpro.jcr.criteria.query;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * Provides (read-only) sessions to execute queries on other threads, since jcr sessions may not be shared between threads (see
+ * {@link ExecutableQuery#executeAsync(SessionProvider, java.util.concurrent.Executor)} and
+ * {@link nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl.Builder#countSessionProvider(SessionProvider)}).
+ *
+ * @since 2.12
+ */
+@FunctionalInterface
+public interface SessionProvider {
+
+    /**
+     * @return a session, which is {@link #release(Session) released} after use
+     */
+    Session get() throws RepositoryException;
+
+    /**
+     * Releases a session obtained by {@link #get()}. Defaults to logging it out.
+     */
+    default void release(Session session) {
+        session.logout();
+    }
+}
@@ -0,0 +1,53 @@
+package nl.vpro.jcr.criteria.query;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * The total number of results of a query, which may be only a lower bound if counting was limited (see
+ * {@link Criteria#setCountLimit(Integer)}). The {@link #toString()} is suitable to show in user interfaces, e.g. "1000+".
+ *
+ * @since 2.12
+ */
+@Getter
+@EqualsAndHashCode
+public final class TotalSize {
+
+    public static final TotalSize UNKNOWN = new TotalSize(-1, false);
+
+    private final long count;
+
+    /**
+     * Whether {@link #getCount()} is the exact total. If not, there are at least this number of results.
+     */
+    private final boolean exact;
+
+    private TotalSize(long count, boolean exact) {
+        this.count = count;
+        this.exact = exact;
+    }
+
+    public static TotalSize exact(long count) {
+        return count < 0 ? UNKNOWN : new TotalSize(count, true);
+    }
+
+    public static TotalSize atLeast(long count) {
+        return count < 0 ? UNKNOWN : new TotalSize(count, false);
+    }
+
+    public boolean isKnown() {
+        return count >= 0;
+    }
+
+    public boolean isLowerBound() {
+        return isKnown() && !exact;
+    }
+
+    @Override
+    public String toString() {
+        if (!isKnown()) {
+            return "?";
+        }
+        return exact ? String.valueOf(count) : count + "+";
+    }
+}
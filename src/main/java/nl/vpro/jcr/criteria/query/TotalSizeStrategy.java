@@ -0,0 +1,72 @@
+package nl.vpro.jcr.criteria.query;
+
+import javax.jcr.query.QueryResult;
+
+import nl.vpro.jcr.criteria.query.impl.QueryResultTotalSize;
+
+/**
+ * How {@link AdvancedResult#getTotalSize()} is determined. This can be set per criteria (see
+ * {@link nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl.Builder#totalSizeStrategy(TotalSizeStrategy)}), so that
+ * e.g. callers which don't need the total size never pay for it.
+ *
+ * @since 2.12
+ */
+@FunctionalInterface
+public interface TotalSizeStrategy {
+
+    /**
+     * Asks the query result itself (jackrabbit's results have a {@code getTotalSize()} method, which may also know the total
+     * size of paged results).
+     */
+    TotalSizeStrategy QUERY_RESULT = QueryResultTotalSize.INSTANCE;
+
+    /**
+     * Always executes a separate query to count the results (unless the result was not paged).
+     */
+    TotalSizeStrategy COUNT_QUERY = context -> context.isPaged() ? context.count() : context.getSize();
+
+    /**
+     * Doesn't determine the total size at all, so it is {@code -1}.
+     */
+    TotalSizeStrategy UNKNOWN = context -> -1;
+
+    /**
+     * Uses {@link #QUERY_RESULT} if possible, otherwise falls back to {@link #COUNT_QUERY}.
+     */
+    TotalSizeStrategy DEFAULT = context -> {
+        long totalSize = QUERY_RESULT.getTotalSize(context);
+        return totalSize >= 0 ? totalSize : COUNT_QUERY.getTotalSize(context);
+    };
+
+    /**
+     * @return the total size, or {@code -1} if it is not known
+     */
+    long getTotalSize(Context context);
+
+    /**
+     * What a strategy can use to determine the total size. Everything is determined lazily, so a strategy only pays for what
+     * it uses.
+     */
+    interface Context {
+
+        /**
+         * The (executed) query result
+         */
+        QueryResult getQueryResult();
+
+        /**
+         * Whether the query result is limited to one page, so that its size is not the total size
+         */
+        boolean isPaged();
+
+        /**
+         * The number of rows of the query result, which is the total size if it is not {@link #isPaged() paged}
+         */
+        long getSize();
+
+        /**
+         * Executes a query to count all results
+         */
+        long count();
+    }
+}
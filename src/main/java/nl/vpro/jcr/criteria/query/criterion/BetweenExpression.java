@@ -19,9 +19,15 @@
 
 package nl.vpro.jcr.criteria.query.criterion;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 
 import java.util.Calendar;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.JCRQueryException;
@@ -42,6 +48,7 @@ public class BetweenExpression extends BaseCriterion implements Criterion {
 
     private static final long serialVersionUID = 6686395240415024541L;
 
+    @Getter(AccessLevel.PACKAGE)
     private final String propertyName;
 
     private final Comparable<?> lo;
@@ -111,5 +118,29 @@ public class BetweenExpression extends BaseCriterion implements Criterion {
         return higherInclusive ? Op.LE : Op.LT;
     }
 
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        String name = Evaluation.propertyName(propertyName);
+        return Evaluation.any(node, name, lowerOp(), Evaluation.literal(lo, criteria, name, node))
+            && Evaluation.any(node, name, higherOp(), Evaluation.literal(hi, criteria, name, node));
+    }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public Set<String> candidates(PropertyIndex index, Criteria criteria) throws RepositoryException {
+        if (PostFilters.propertyName(propertyName) == null) {
+            return null;
+        }
+        // a multi valued property may match the bounds with different values, so both are looked up separately
+        String name = Evaluation.propertyName(propertyName);
+        return Evaluation.intersection(
+            index.find(name, lowerOp(), Evaluation.literal(lo, criteria, name, index.getNodeTypeManager())),
+            index.find(name, higherOp(), Evaluation.literal(hi, criteria, name, index.getNodeTypeManager())));
+    }
 
 }
@@ -19,6 +19,12 @@
 
 package nl.vpro.jcr.criteria.query.criterion;
 
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.sql2.AndCondition;
 import nl.vpro.jcr.criteria.query.sql2.BooleanCondition;
 
@@ -39,4 +45,33 @@ public class Conjunction extends Junction {
         return new AndCondition();
 
     }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria c) throws RepositoryException {
+        for (Criterion criterion : criteria) {
+            if (!criterion.matches(node, c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public Set<String> candidates(PropertyIndex index, Criteria c) throws RepositoryException {
+        Set<String> result = null;
+        for (Criterion criterion : criteria) {
+            Set<String> found = criterion.candidates(index, c);
+            if (found != null) {
+                result = result == null ? found : Evaluation.intersection(result, found);
+            }
+        }
+        return result;
+    }
+
 }
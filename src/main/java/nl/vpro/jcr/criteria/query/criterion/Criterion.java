@@ -20,6 +20,10 @@
 package nl.vpro.jcr.criteria.query.criterion;
 
 import java.io.Serializable;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.JCRQueryException;
@@ -95,4 +99,24 @@ public interface Criterion extends Serializable {
         throw new UnsupportedOperationException("" + getClass().getName() + " does not yet support SQL2 (requested for " + this + " and " + criteria + ")");
     }
 
+    /**
+     * Evaluates the criterion on a node, in stead of by the query engine. This is consistent with the query engine, for nodes
+     * which are saved.
+     * @throws UnsupportedOperationException if the criterion cannot be evaluated on a node
+     * @since 2.12
+     */
+    default boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        throw new UnsupportedOperationException("" + getClass().getName() + " cannot be evaluated on a node (requested for " + this + " and " + criteria + ")");
+    }
+
+    /**
+     * Narrows down the nodes the criterion may match using an index on property values.
+     * @return the identifiers of the nodes which may match (they still need to be checked with {@link #matches(Node, Criteria)}),
+     * or {@code null} if the index can't narrow them down
+     * @since 2.12
+     */
+    default Set<String> candidates(PropertyIndex index, Criteria criteria) throws RepositoryException {
+        return null;
+    }
+
 }
@@ -19,6 +19,13 @@
 
 package nl.vpro.jcr.criteria.query.criterion;
 
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.sql2.BooleanCondition;
 import nl.vpro.jcr.criteria.query.sql2.OrCondition;
 
@@ -38,4 +45,37 @@ public class Disjunction extends Junction {
         return new OrCondition();
 
     }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria c) throws RepositoryException {
+        for (Criterion criterion : criteria) {
+            if (criterion.matches(node, c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public Set<String> candidates(PropertyIndex index, Criteria c) throws RepositoryException {
+        if (criteria.isEmpty()) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (Criterion criterion : criteria) {
+            Set<String> found = criterion.candidates(index, c);
+            if (found == null) {
+                return null;
+            }
+            result.addAll(found);
+        }
+        return result;
+    }
+
 }
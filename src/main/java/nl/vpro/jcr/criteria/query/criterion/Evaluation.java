@@ -0,0 +1,257 @@
+package nl.vpro.jcr.criteria.query.criterion;
+
+import java.math.BigDecimal;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.jcr.*;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.nodetype.PropertyDefinition;
+
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.TranslatableCriteria;
+import nl.vpro.jcr.utils.Utils;
+
+/**
+ * Helpers for {@link Criterion#matches(Node, nl.vpro.jcr.criteria.query.Criteria)}, to evaluate criterions consistently with the
+ * query engine: the literal has the type it has in the statement, it is not converted to the type of the property (see
+ * {@link Utils#compareIndexed(Value, Value)}), and a multi valued property matches if one of its values does.
+ *
+ * @since 2.12
+ */
+final class Evaluation {
+
+    private Evaluation() {
+        // don't instantiate
+    }
+
+    /**
+     * @return the name of the property, without the attribute selector
+     * @throws UnsupportedOperationException if it is not a property of the node itself (see {@link PostFilters#propertyName(String)})
+     */
+    static String propertyName(String name) {
+        String result = PostFilters.propertyName(name);
+        if (result == null) {
+            throw new UnsupportedOperationException("Cannot evaluate " + name + " on a node");
+        }
+        return result;
+    }
+
+    static String stripAttributeSelector(String name) {
+        return name.length() > 0 && name.charAt(0) == Criterion.ATTRIBUTE_SELECTOR ? name.substring(1) : name;
+    }
+
+    static Value[] values(Node node, String propertyName) throws RepositoryException {
+        if (!node.hasProperty(propertyName)) {
+            return new Value[0];
+        }
+        Property property = node.getProperty(propertyName);
+        return property.isMultiple() ? property.getValues() : new Value[] {property.getValue()};
+    }
+
+    /**
+     * The value as a jcr value, with the type the query engine gives it when it is rendered in an SQL2 statement: a number is a
+     * long if it is rendered without fraction or exponent (so also {@code BigDecimal.valueOf(3)}), and a decimal otherwise (so
+     * also {@code 3.0}).
+     */
+    static Value literal(Object value, ZoneId zoneId) {
+        Object v = Utils.toCalendarIfPossible(value, zoneId);
+        ValueFactory factory = ValueFactoryImpl.getInstance();
+        if (v instanceof Boolean) {
+            return factory.createValue((Boolean) v);
+        } else if (v instanceof Number) {
+            String rendered = v.toString();
+            try {
+                return factory.createValue(Long.parseLong(rendered));
+            } catch (NumberFormatException nfe) {
+                try {
+                    return factory.createValue(new BigDecimal(rendered));
+                } catch (NumberFormatException e) {
+                    return factory.createValue(((Number) v).doubleValue());
+                }
+            }
+        } else if (v instanceof Calendar) {
+            return factory.createValue((Calendar) v);
+        } else {
+            return factory.createValue(String.valueOf(v));
+        }
+    }
+
+    /**
+     * The value as the query engine compares it to the property in an SQL2 statement: a literal which is no number, date, name
+     * or path is converted to the type which the node type of the criteria (or {@code nt:base}) requires for the property, if
+     * it requires one.
+     * @throws ValueFormatException if it can't be converted (the query engine fails then too)
+     */
+    static Value literal(Object value, Criteria criteria, String propertyName, NodeTypeManager nodeTypes) throws RepositoryException {
+        Value literal = literal(value, criteria.getTimeZone());
+        switch (literal.getType()) {
+            case PropertyType.LONG:
+            case PropertyType.DOUBLE:
+            case PropertyType.DECIMAL:
+            case PropertyType.DATE:
+            case PropertyType.NAME:
+            case PropertyType.PATH:
+                return literal;
+            default:
+        }
+        String type = criteria instanceof TranslatableCriteria ? ((TranslatableCriteria) criteria).getType() : null;
+        if (type == null) {
+            type = NodeType.NT_BASE;
+        }
+        if (!nodeTypes.hasNodeType(type)) {
+            return literal;
+        }
+        for (PropertyDefinition definition : nodeTypes.getNodeType(type).getPropertyDefinitions()) {
+            if (definition.getName().equals(propertyName)) {
+                int required = definition.getRequiredType();
+                if (required == PropertyType.UNDEFINED || required == PropertyType.STRING) {
+                    return literal;
+                }
+                return ValueFactoryImpl.getInstance().createValue(literal.getString(), required);
+            }
+        }
+        return literal;
+    }
+
+    static Value literal(Object value, Criteria criteria, String propertyName, Node node) throws RepositoryException {
+        return literal(value, criteria, propertyName, node.getSession().getWorkspace().getNodeTypeManager());
+    }
+
+    /**
+     * Whether one of the values of the property compares to the literal as the operator requires (see
+     * {@link Utils#compareIndexed(Value, Value)})
+     */
+    static boolean any(Node node, String propertyName, Op op, Value literal) throws RepositoryException {
+        for (Value value : values(node, propertyName)) {
+            if (op.test(Utils.compareIndexed(value, literal))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the value is a single term of a full text search, which {@link #containsTerm(Node, String, String)} can evaluate:
+     * it consists of letters and digits only.
+     */
+    static boolean isTerm(CharSequence value) {
+        if (value.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isLetterOrDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether one of the values of the property contains the {@link #isTerm(CharSequence) term} as a word, like a full text
+     * search on the property with the standard analyzer of the query engine: case-insensitively, and words are separated by
+     * anything but letters and digits, except for a {@code .}, {@code ,}, {@code :} or {@code '} between two of them, and
+     * {@code _}.
+     */
+    static boolean containsTerm(Node node, String propertyName, String term) throws RepositoryException {
+        String lowerCased = term.toLowerCase(Locale.ROOT);
+        for (Value value : values(node, propertyName)) {
+            if (words(value.getString()).contains(lowerCased)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean joins = c == '_'
+                || ((c == '.' || c == ',' || c == ':' || c == '\'')
+                    && word.length() > 0 && i < text.length() - 1 && Character.isLetterOrDigit(text.charAt(i + 1)));
+            if (Character.isLetterOrDigit(c) || joins) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                words.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString().toLowerCase(Locale.ROOT));
+        }
+        return words;
+    }
+
+    /**
+     * Whether one of the values of the property, as a string, matches the pattern of a {@code LIKE}: {@code %} matches any
+     * sequence of characters, {@code _} any single character, and a backslash escapes the next one.
+     * @param pattern the pattern, as it appears between the quotes of an SQL2 literal
+     */
+    static boolean like(Node node, String propertyName, String pattern) throws RepositoryException {
+        Pattern regexp = likeToRegexp(pattern.replace("''", "'"));
+        for (Value value : values(node, propertyName)) {
+            if (regexp.matcher(value.getString()).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern likeToRegexp(String pattern) {
+        StringBuilder regexp = new StringBuilder(pattern.length() + 8);
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regexp.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regexp.append(c == '%' ? ".*" : ".");
+                continue;
+            }
+            if (c == '\\' && i < pattern.length() - 1) {
+                c = pattern.charAt(++i);
+            }
+            literal.append(c);
+        }
+        if (literal.length() > 0) {
+            regexp.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regexp.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * @return the elements in both sets, or the other one if one of them is {@code null}
+     */
+    static Set<String> intersection(Set<String> a, Set<String> b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        Set<String> result = new HashSet<>();
+        for (String s : smaller) {
+            if (larger.contains(s)) {
+                result.add(s);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the path without trailing slash (unless it is the root)
+     */
+    static String path(String path) {
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+}
@@ -20,9 +20,15 @@
 package nl.vpro.jcr.criteria.query.criterion;
 
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 
 import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.JCRQueryException;
@@ -37,10 +43,12 @@ public class InExpression implements Criterion  {
 
     private static final long serialVersionUID = -8445602953808764036L;
 
+    @Getter
     private final String nodeName;
 
     private final CharSequence [] values;
 
+    @Getter
     private final boolean useContains;
 
     public InExpression(String nodeName, CharSequence[] values, boolean useContains) {
@@ -95,8 +103,69 @@ public class InExpression implements Criterion  {
     }
 
 
+    /**
+     * @since 2.12
+     */
+    public CharSequence[] getValues() {
+        return values.clone();
+    }
+
     @Override
     public String toString() {
         return nodeName + "in " + Arrays.asList(values);
     }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        if (useContains && !isTerms()) {
+            return Criterion.super.matches(node, criteria);
+        }
+        String name = Evaluation.propertyName(nodeName);
+        for (CharSequence value : values) {
+            if (useContains
+                ? Evaluation.containsTerm(node, name, value.toString())
+                : Evaluation.any(node, name, Op.EQ, Evaluation.literal(value, criteria, name, node))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether all values are single terms of a full text search, so that the {@link #isUseContains() contains} form can be
+     * evaluated on nodes
+     * @since 2.12
+     */
+    boolean isTerms() {
+        for (CharSequence value : values) {
+            if (!Evaluation.isTerm(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public Set<String> candidates(PropertyIndex index, Criteria criteria) throws RepositoryException {
+        if (useContains || PostFilters.propertyName(nodeName) == null) {
+            return null;
+        }
+        String name = Evaluation.propertyName(nodeName);
+        Set<String> result = new HashSet<>();
+        for (CharSequence value : values) {
+            Set<String> found = index.find(name, Op.EQ, Evaluation.literal(value, criteria, name, index.getNodeTypeManager()));
+            if (found == null) {
+                return null;
+            }
+            result.addAll(found);
+        }
+        return result;
+    }
+
 }
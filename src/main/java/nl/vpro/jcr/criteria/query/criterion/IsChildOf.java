@@ -2,6 +2,9 @@ package nl.vpro.jcr.criteria.query.criterion;
 
 import lombok.EqualsAndHashCode;
 
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.sql2.Condition;
 import nl.vpro.jcr.criteria.query.sql2.IsChildNode;
@@ -24,4 +27,16 @@ public class IsChildOf extends BaseCriterion implements Criterion {
      public  Condition toSQLCondition(Criteria criteria) {
          return new IsChildNode(path);
     }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        if (Criterion.ALL_ELEMENTS.equals(path)) {
+            return true;
+        }
+        return node.getDepth() > 0 && node.getParent().getPath().equals(Evaluation.path(path));
+    }
+
 }
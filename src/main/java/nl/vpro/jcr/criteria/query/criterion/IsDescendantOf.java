@@ -2,6 +2,9 @@ package nl.vpro.jcr.criteria.query.criterion;
 
 import lombok.EqualsAndHashCode;
 
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.sql2.Condition;
 import nl.vpro.jcr.criteria.query.sql2.IsDescendantNode;
@@ -26,4 +29,17 @@ public class IsDescendantOf extends BaseCriterion implements Criterion {
      public  Condition toSQLCondition(Criteria criteria) {
         return new IsDescendantNode(path);
     }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        String p = Evaluation.path(path);
+        if ("/".equals(p) || Criterion.ALL_ELEMENTS.equals(p)) {
+            return true;
+        }
+        return node.getPath().startsWith(p + "/");
+    }
+
 }
@@ -19,7 +19,12 @@
 
 package nl.vpro.jcr.criteria.query.criterion;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.JCRQueryException;
@@ -33,6 +38,7 @@ public class IsNotNullExpression implements Criterion {
 
     private static final long serialVersionUID = 42L;
 
+    @Getter(AccessLevel.PACKAGE)
     private String nodeName;
 
     public IsNotNullExpression(String nodeName){
@@ -54,4 +60,12 @@ public class IsNotNullExpression implements Criterion {
         return new NotNullCondition(nodeName);
     }
 
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        return node.hasProperty(Evaluation.propertyName(nodeName));
+    }
+
 }
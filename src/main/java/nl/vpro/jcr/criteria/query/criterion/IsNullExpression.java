@@ -19,7 +19,12 @@
 
 package nl.vpro.jcr.criteria.query.criterion;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.JCRQueryException;
@@ -34,6 +39,7 @@ public class IsNullExpression extends BaseCriterion implements Criterion {
 
     private static final long serialVersionUID = -1600960388638847909L;
 
+    @Getter(AccessLevel.PACKAGE)
     private final String nodeName;
 
     public IsNullExpression(String nodeName) {
@@ -58,4 +64,12 @@ public class IsNullExpression extends BaseCriterion implements Criterion {
         return new NullCondition(nodeName);
     }
 
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        return !node.hasProperty(Evaluation.propertyName(nodeName));
+    }
+
 }
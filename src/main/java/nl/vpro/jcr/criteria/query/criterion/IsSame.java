@@ -1,6 +1,10 @@
 package nl.vpro.jcr.criteria.query.criterion;
 
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.sql2.Condition;
@@ -14,6 +18,7 @@ import nl.vpro.jcr.criteria.query.sql2.IsSameNode;
 public class IsSame extends BaseCriterion implements Criterion {
 
 
+    @Getter
     private final String path;
 
     public IsSame(String path) {
@@ -26,4 +31,13 @@ public class IsSame extends BaseCriterion implements Criterion {
      public  Condition toSQLCondition(Criteria criteria) {
         return new IsSameNode(path);
     }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        return node.getPath().equals(Evaluation.path(path));
+    }
+
 }
@@ -36,8 +36,10 @@ public class JCRFunctionExpression extends BaseCriterion  {
 
     private static final long serialVersionUID = -5570839091762158385L;
 
+    @Getter(AccessLevel.PACKAGE)
     protected final String propertyName;
 
+    @Getter(AccessLevel.PACKAGE)
     protected final CharSequence value;
 
     @Getter(AccessLevel.PROTECTED)
@@ -22,10 +22,10 @@ package nl.vpro.jcr.criteria.query.criterion;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import lombok.Setter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -51,15 +51,27 @@ public abstract class Junction implements Criterion {
     final String op;
 
     @Getter
-    @Setter
     boolean outer;
 
+    /**
+     * Incremented on every modification, so that what was derived from this junction can be recognized as outdated
+     */
+    private transient int modifications;
+
     protected Junction(String op, boolean outer, Criterion... clauses) {
         this.op = op;
         this.outer = outer;
         criteria.addAll(Arrays.asList(clauses));
     }
 
+    /**
+     * @return the (unmodifiable) criteria joined by this junction
+     * @since 2.12
+     */
+    public List<Criterion> getCriteria() {
+        return Collections.unmodifiableList(criteria);
+    }
+
     /**
      * Adds a criterion to this Junction
      * @param criterion Criterion to add
@@ -67,9 +79,23 @@ public abstract class Junction implements Criterion {
      */
     public Junction add(Criterion criterion) {
         criteria.add(criterion);
+        modifications++;
         return this;
     }
 
+    public void setOuter(boolean outer) {
+        this.outer = outer;
+        modifications++;
+    }
+
+    /**
+     * @return the number of times this junction was modified after it was created
+     * @since 2.12
+     */
+    public int getModifications() {
+        return modifications;
+    }
+
     @Override
     public String toXPathString(Criteria crit) throws JCRQueryException {
 
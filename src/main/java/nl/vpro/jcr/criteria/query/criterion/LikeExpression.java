@@ -19,7 +19,12 @@
 
 package nl.vpro.jcr.criteria.query.criterion;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -38,6 +43,7 @@ public class LikeExpression extends JCRFunctionExpression {
 
     private static final long serialVersionUID = 1810624472706401714L;
 
+    @Getter(AccessLevel.PACKAGE)
     private final MatchMode matchMode;
 
     public LikeExpression(@NonNull  String propertyName, @NonNull  CharSequence value, @NonNull  String function, @Nullable MatchMode matchMode) {
@@ -61,8 +67,15 @@ public class LikeExpression extends JCRFunctionExpression {
 
     @Override
     public Condition toSQLCondition(Criteria criteria) {
-        return new LikeCondition(propertyName, matchMode.toMatchString(value.toString()));
+        return LikeCondition.of(propertyName, matchMode.toMatchString(value.toString()), criteria.isPrefixLikeAsRange());
     }
 
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        return Evaluation.like(node, Evaluation.propertyName(propertyName), matchMode.toMatchString(value.toString()));
+    }
 
 }
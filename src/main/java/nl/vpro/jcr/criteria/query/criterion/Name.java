@@ -2,6 +2,9 @@ package nl.vpro.jcr.criteria.query.criterion;
 
 import lombok.EqualsAndHashCode;
 
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.sql2.*;
 
@@ -20,4 +23,13 @@ public class Name extends BaseCriterion implements Criterion {
      public  Condition toSQLCondition(final Criteria criteria) {
         return new nl.vpro.jcr.criteria.query.sql2.Name(name);
     }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        return node.getName().equals(name);
+    }
+
 }
@@ -19,7 +19,12 @@
 
 package nl.vpro.jcr.criteria.query.criterion;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import nl.vpro.jcr.criteria.query.Criteria;
 import nl.vpro.jcr.criteria.query.JCRQueryException;
@@ -35,6 +40,7 @@ public class NotExpression extends BaseCriterion implements Criterion {
 
     private static final long serialVersionUID = -5057676844499041929L;
 
+    @Getter(AccessLevel.PACKAGE)
     private final Criterion expression;
 
     public NotExpression(Criterion expression) {
@@ -60,4 +66,12 @@ public class NotExpression extends BaseCriterion implements Criterion {
         return new NotCondition(expression.toSQLCondition(criteria));
     }
 
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        return !expression.matches(node, criteria);
+    }
+
 }
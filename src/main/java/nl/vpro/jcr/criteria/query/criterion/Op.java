@@ -28,6 +28,31 @@ public enum Op {
         return this.xpath;
     }
 
+    /**
+     * @param comparison the result of comparing a value to a literal
+     * @return whether the value satisfies this operator
+     * @throws UnsupportedOperationException for operators which are no comparison
+     * @since 2.12
+     */
+    public boolean test(int comparison) {
+        switch (this) {
+            case EQ:
+                return comparison == 0;
+            case NE:
+                return comparison != 0;
+            case LT:
+                return comparison < 0;
+            case LE:
+                return comparison <= 0;
+            case GT:
+                return comparison > 0;
+            case GE:
+                return comparison >= 0;
+            default:
+                throw new UnsupportedOperationException("Cannot evaluate " + this);
+        }
+    }
+
     public static Op valueOfIgnoreCase(String value) {
         return value == null ? null : Op.valueOf(value.toUpperCase());
     }
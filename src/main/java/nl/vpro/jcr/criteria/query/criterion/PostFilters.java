@@ -0,0 +1,179 @@
+package nl.vpro.jcr.criteria.query.criterion;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.jcr.query.Query;
+
+import org.apache.commons.lang3.StringUtils;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+
+/**
+ * Classifies criterions for {@link nl.vpro.jcr.criteria.query.PostFilterStrategy}: which of them can be evaluated on nodes
+ * ({@link Criterion#matches(javax.jcr.Node, nl.vpro.jcr.criteria.query.Criteria)}), which properties they need, and which are
+ * expensive for the query engine.
+ *
+ * @since 2.12
+ */
+public final class PostFilters {
+
+    private PostFilters() {
+        // don't instantiate
+    }
+
+    /**
+     * @return whether {@link Criterion#matches(javax.jcr.Node, nl.vpro.jcr.criteria.query.Criteria)} is supported for the
+     * criterion
+     */
+    public static boolean isEvaluable(Criterion criterion) {
+        if (criterion instanceof SimpleExpression) {
+            return propertyName(((SimpleExpression) criterion).getPropertyName()) != null;
+        } else if (criterion instanceof BetweenExpression) {
+            return propertyName(((BetweenExpression) criterion).getPropertyName()) != null;
+        } else if (criterion instanceof LikeExpression) {
+            return propertyName(((LikeExpression) criterion).getPropertyName()) != null;
+        } else if (criterion instanceof InExpression) {
+            InExpression in = (InExpression) criterion;
+            return (!in.isUseContains() || in.isTerms()) && propertyName(in.getNodeName()) != null;
+        } else if (criterion instanceof IsNullExpression) {
+            return propertyName(((IsNullExpression) criterion).getNodeName()) != null;
+        } else if (criterion instanceof IsNotNullExpression) {
+            return propertyName(((IsNotNullExpression) criterion).getNodeName()) != null;
+        } else if (criterion instanceof NotExpression) {
+            return isEvaluable(((NotExpression) criterion).getExpression());
+        } else if (criterion instanceof Conjunction || criterion instanceof Disjunction) {
+            for (Criterion clause : ((Junction) criterion).getCriteria()) {
+                if (!isEvaluable(clause)) {
+                    return false;
+                }
+            }
+            return true;
+        } else {
+            return criterion instanceof IsChildOf || criterion instanceof IsDescendantOf || criterion instanceof IsSame || criterion instanceof Name;
+        }
+    }
+
+    /**
+     * @return the name of the property without the attribute selector, or {@code null} if it is not a property of the node itself
+     * (but e.g. of a child node, a pseudo property like {@code jcr:score}, or a function), so that it can't be evaluated on the
+     * node
+     */
+    public static String propertyName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String result = Evaluation.stripAttributeSelector(name);
+        if (result.isEmpty() || StringUtils.containsAny(result, '/', '*', '(', '[', ' ')
+            || result.equals(Criterion.JCR_PREFIX + "score") || result.equals(Criterion.JCR_PREFIX + "path") || result.equals(Criterion.JCR_PREFIX + "name")) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Whether {@link Criterion#matches(javax.jcr.Node, Criteria)} agrees with the query engine for the criterion, when the
+     * criteria is rendered in the given language. Evaluation follows SQL2, in which a negation also matches nodes without the
+     * property. In XPath {@code @p != 'x'} doesn't (except for booleans) and differs on multi valued properties, so negations
+     * are only evaluated for SQL2.
+     * @param language the language the criteria is rendered in (see {@link #language(Criteria, String)})
+     */
+    public static boolean isEvaluable(Criterion criterion, String language) {
+        return isEvaluable(criterion) && (Query.JCR_SQL2.equals(language) || !negates(criterion));
+    }
+
+    /**
+     * @return the language the criteria is rendered in, when it is executed in the given one ({@code null} prefers SQL2, but
+     * falls back to XPath, see {@link Criteria#toExpression(String)})
+     */
+    public static String language(Criteria criteria, String language) {
+        if (Query.JCR_SQL2.equals(language)) {
+            return language;
+        }
+        return criteria.toExpression(language).getLanguage();
+    }
+
+    private static boolean negates(Criterion criterion) {
+        if (criterion instanceof SimpleExpression) {
+            return ((SimpleExpression) criterion).getOp() == Op.NE;
+        } else if (criterion instanceof NotExpression) {
+            return true;
+        } else if (criterion instanceof Junction) {
+            for (Criterion clause : ((Junction) criterion).getCriteria()) {
+                if (negates(clause)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the names of the properties (without attribute selector) the criterion is about
+     */
+    public static Set<String> properties(Criterion criterion) {
+        Set<String> result = new LinkedHashSet<>();
+        collect(criterion, result);
+        return result;
+    }
+
+    /**
+     * Whether the criterion can be evaluated on nodes, and is expensive for the query engine, because it can't use its index
+     * efficiently: a {@code LIKE} starting with a wildcard (which enumerates all terms of the property), or a negation (which
+     * enumerates all nodes).
+     */
+    public static boolean isExpensive(Criterion criterion) {
+        return isEvaluable(criterion) && expensive(criterion);
+    }
+
+    private static boolean expensive(Criterion criterion) {
+        if (criterion instanceof LikeExpression) {
+            LikeExpression like = (LikeExpression) criterion;
+            String pattern = like.getMatchMode().toMatchString(like.getValue().toString());
+            return pattern.startsWith("%") || pattern.startsWith("_");
+        } else if (criterion instanceof SimpleExpression) {
+            return ((SimpleExpression) criterion).getOp() == Op.NE;
+        } else if (criterion instanceof NotExpression) {
+            return true;
+        } else if (criterion instanceof Disjunction) {
+            // one expensive clause makes the whole disjunction expensive
+            for (Criterion clause : ((Junction) criterion).getCriteria()) {
+                if (expensive(clause)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (criterion instanceof Conjunction) {
+            // the cheap clauses of a conjunction still narrow it down
+            for (Criterion clause : ((Junction) criterion).getCriteria()) {
+                if (!expensive(clause)) {
+                    return false;
+                }
+            }
+            return !((Junction) criterion).isEmpty();
+        }
+        return false;
+    }
+
+    private static void collect(Criterion criterion, Set<String> properties) {
+        if (criterion instanceof SimpleExpression) {
+            properties.add(Evaluation.stripAttributeSelector(((SimpleExpression) criterion).getPropertyName()));
+        } else if (criterion instanceof BetweenExpression) {
+            properties.add(Evaluation.stripAttributeSelector(((BetweenExpression) criterion).getPropertyName()));
+        } else if (criterion instanceof JCRFunctionExpression) {
+            properties.add(Evaluation.stripAttributeSelector(((JCRFunctionExpression) criterion).getPropertyName()));
+        } else if (criterion instanceof InExpression) {
+            properties.add(Evaluation.stripAttributeSelector(((InExpression) criterion).getNodeName()));
+        } else if (criterion instanceof IsNullExpression) {
+            properties.add(Evaluation.stripAttributeSelector(((IsNullExpression) criterion).getNodeName()));
+        } else if (criterion instanceof IsNotNullExpression) {
+            properties.add(Evaluation.stripAttributeSelector(((IsNotNullExpression) criterion).getNodeName()));
+        } else if (criterion instanceof NotExpression) {
+            collect(((NotExpression) criterion).getExpression(), properties);
+        } else if (criterion instanceof Junction) {
+            for (Criterion clause : ((Junction) criterion).getCriteria()) {
+                collect(clause, properties);
+            }
+        }
+    }
+}
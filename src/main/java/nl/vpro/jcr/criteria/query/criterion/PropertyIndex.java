@@ -0,0 +1,33 @@
+package nl.vpro.jcr.criteria.query.criterion;
+
+import java.util.Set;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeTypeManager;
+
+/**
+ * An index on the values of properties, which can narrow down the nodes a criterion may match (see
+ * {@link Criterion#candidates(PropertyIndex, nl.vpro.jcr.criteria.query.Criteria)}).
+ *
+ * @since 2.12
+ */
+public interface PropertyIndex {
+
+    /**
+     * Finds the nodes with a value of the property which compares to the literal as the operator requires, compared like
+     * {@link Criterion#matches(javax.jcr.Node, nl.vpro.jcr.criteria.query.Criteria)} does (see
+     * {@link nl.vpro.jcr.utils.Utils#compareIndexed(Value, Value)}).
+     * @param propertyName the name of the property (without attribute selector)
+     * @param op one of {@link Op#EQ}, {@link Op#LT}, {@link Op#LE}, {@link Op#GT} and {@link Op#GE}
+     * @return the identifiers of the nodes (which may be more than the ones that match), or {@code null} if the property is not
+     * indexed
+     */
+    Set<String> find(String propertyName, Op op, Value literal) throws RepositoryException;
+
+    /**
+     * @return the node types of the indexed nodes, to which the query engine converts literals (see
+     * {@link Criterion#matches(javax.jcr.Node, nl.vpro.jcr.criteria.query.Criteria)})
+     */
+    NodeTypeManager getNodeTypeManager();
+}
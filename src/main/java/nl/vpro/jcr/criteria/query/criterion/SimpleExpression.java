@@ -19,9 +19,15 @@
 
 package nl.vpro.jcr.criteria.query.criterion;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 
 import java.util.Calendar;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -45,6 +51,7 @@ public class SimpleExpression extends BaseCriterion implements Criterion {
 
     private static final long serialVersionUID = -1104419394978535803L;
 
+    @Getter(AccessLevel.PACKAGE)
     private final String propertyName;
 
     private final Object value;
@@ -118,4 +125,29 @@ public class SimpleExpression extends BaseCriterion implements Criterion {
         }
     }
 
+    /**
+     * @since 2.12
+     */
+    @Override
+    public boolean matches(Node node, Criteria criteria) throws RepositoryException {
+        String name = Evaluation.propertyName(propertyName);
+        if (op == Op.NE) {
+            // rendered as not(... = ...), so also matches if the property is missing
+            return !Evaluation.any(node, name, Op.EQ, Evaluation.literal(value, criteria, name, node));
+        }
+        return Evaluation.any(node, name, op, Evaluation.literal(value, criteria, name, node));
+    }
+
+    /**
+     * @since 2.12
+     */
+    @Override
+    public Set<String> candidates(PropertyIndex index, Criteria criteria) throws RepositoryException {
+        if (op == Op.NE || PostFilters.propertyName(propertyName) == null) {
+            return null;
+        }
+        String name = Evaluation.propertyName(propertyName);
+        return index.find(name, op, Evaluation.literal(value, criteria, name, index.getNodeTypeManager()));
+    }
+
 }
@@ -27,25 +27,45 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
 
+import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.query.Query;
+import javax.jcr.query.Row;
 
 import nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl;
 import nl.vpro.jcr.criteria.advanced.impl.AdvancedResultImpl;
+import nl.vpro.jcr.criteria.advanced.impl.ChunkedInQuery;
+import nl.vpro.jcr.criteria.advanced.impl.HybridQuery;
+import nl.vpro.jcr.criteria.advanced.impl.IdentifierLookup;
+import nl.vpro.jcr.criteria.advanced.impl.KeysetPaging;
+import nl.vpro.jcr.criteria.advanced.impl.QueryCoalescer;
+import nl.vpro.jcr.criteria.advanced.impl.QueryResultCache;
 import nl.vpro.jcr.criteria.advanced.impl.QueryExecutorHelper;
+import nl.vpro.jcr.criteria.advanced.impl.SubtreeSnapshot;
 import nl.vpro.jcr.criteria.query.AdvancedResult;
 import nl.vpro.jcr.criteria.query.JCRCriteriaFactory;
+import nl.vpro.jcr.criteria.query.PostFilterStrategy;
+import nl.vpro.jcr.criteria.query.ResultIterator;
+import nl.vpro.jcr.criteria.query.SessionProvider;
+import nl.vpro.jcr.criteria.query.TotalSizeStrategy;
 import nl.vpro.jcr.criteria.query.TranslatableCriteria;
 import nl.vpro.jcr.criteria.query.criterion.Criterion;
 import nl.vpro.jcr.criteria.query.criterion.Junction;
 import nl.vpro.jcr.criteria.query.criterion.Order;
 import nl.vpro.jcr.criteria.query.sql2.Select;
+import nl.vpro.jcr.criteria.query.sql2.Sql2Builder;
 import nl.vpro.jcr.criteria.query.xpath.CriteriaQueryTranslator;
 import nl.vpro.jcr.criteria.query.xpath.XPathSelect;
 import nl.vpro.jcr.criteria.query.xpath.utils.XPathTextUtils;
@@ -63,11 +83,15 @@ import nl.vpro.jcr.criteria.query.xpath.utils.XPathTextUtils;
 
 public abstract class AbstractCriteriaImpl implements TranslatableCriteria {
 
+    /**
+     * @since 2.12
+     */
+    public static final int DEFAULT_IN_CHUNK_SIZE = 1000;
+
     @Getter
     protected String basePath = Criterion.ALL_ELEMENTS;
 
     @Getter
-    @Setter
     protected String type;
 
     protected List<CriterionEntry> criterionEntries = new ArrayList<>();
@@ -102,9 +126,131 @@ public abstract class AbstractCriteriaImpl implements TranslatableCriteria {
     protected String language = null;
 
     @Getter
-    @Setter
     private ZoneId timeZone;
 
+    /**
+     * Whether values in SQL2 statements are rendered as bind variables. The statement then only depends on the structure of
+     * the criteria, and the prepared jcr query is reused for the same structure (per session).
+     * @since 2.12
+     */
+    @Getter
+    protected boolean bindVariables;
+
+    /**
+     * Whether the SQL2 condition tree is simplified before rendering (see {@link nl.vpro.jcr.criteria.query.sql2.ConditionOptimizer}).
+     * @since 2.12
+     */
+    @Getter
+    protected boolean optimize = true;
+
+    /**
+     * @see #isPrefixLikeAsRange()
+     * @since 2.12
+     */
+    @Getter
+    protected boolean prefixLikeAsRange;
+
+    /**
+     * Whether criteria which only select nodes by identifier or path are executed without the query engine (see {@link IdentifierLookup}).
+     * This is off by default, since the results can differ a bit from those of the query (e.g. in their scores).
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected boolean directLookup;
+
+    /**
+     * In expressions with more values than this are executed in several queries (see {@link ChunkedInQuery}). {@code 0} means never.
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected int inChunkSize = DEFAULT_IN_CHUNK_SIZE;
+
+    /**
+     * A cursor from {@link AdvancedResult#getNextCursor()}. If set, the results start after it, in stead of at {@link #getFirstResult()}
+     * (see {@link KeysetPaging}).
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected String searchAfter;
+
+    /**
+     * How the total size of the results is determined. {@code null} means {@link TotalSizeStrategy#DEFAULT}.
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected TotalSizeStrategy totalSizeStrategy;
+
+    /**
+     * The maximum number of results to count, {@code null} for no limit (see {@link #setCountLimit(Integer)}).
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected Integer countLimit;
+
+    /**
+     * If set (together with the {@link #getCountExecutor() count executor}), the count query of a paged criteria is started in
+     * parallel with the query itself, on a session of this provider, so that {@link AdvancedResult#getTotalSize()} doesn't add
+     * its latency.
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected SessionProvider countSessionProvider;
+
+    /**
+     * Where parallel count queries (see {@link #getCountSessionProvider()}) are executed. These block on the repository, so this
+     * should not be the common fork join pool. If {@code null}, the count query is not executed in parallel.
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected Executor countExecutor;
+
+    /**
+     * Whether concurrent executions of the same query share one execution (see {@link QueryCoalescer}). Meant for queries which
+     * are executed very often, by sessions with the same access rights.
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected boolean coalesce;
+
+    /**
+     * If set, the outcome of executions is cached in this (see {@link QueryResultCache}).
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected QueryResultCache resultCache;
+
+    /**
+     * Which criterions are evaluated in memory, in stead of by the query engine (see {@link HybridQuery}). {@code null} means
+     * {@link PostFilterStrategy#NONE}.
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected PostFilterStrategy postFilterStrategy;
+
+    /**
+     * If set, the criteria is executed on this in memory snapshot, if it {@link SubtreeSnapshot#covers(AbstractCriteriaImpl, String) covers} it.
+     * @since 2.12
+     */
+    @Getter
+    @Setter
+    protected SubtreeSnapshot snapshot;
+
+
+    /**
+     * The fingerprint of this criteria (see {@link CriteriaFingerprint}), until it is modified.
+     */
+    @EqualsAndHashCode.Exclude
+    private final AtomicReference<CriteriaFingerprint.Memo> fingerprint = new AtomicReference<>();
 
     protected AbstractCriteriaImpl() {
     }
@@ -126,18 +272,21 @@ public abstract class AbstractCriteriaImpl implements TranslatableCriteria {
             ((Junction) criterion).setOuter(false);
         }
         criterionEntries.add(new CriterionEntry(criterion, this));
+        modified();
         return this;
     }
 
     @Override
     public AbstractCriteriaImpl addOrder(Order order) {
         orderEntries.add(new OrderEntry(order, this));
+        modified();
         return this;
     }
 
     @Override
     public AbstractCriteriaImpl addOrderByScore() {
         orderEntries.add(new OrderEntry(Order.SCORE, this));
+        modified();
         return this;
     }
 
@@ -147,14 +296,74 @@ public abstract class AbstractCriteriaImpl implements TranslatableCriteria {
             throw new IllegalArgumentException("Path " + path + " is not a valid node path");
         }
         this.basePath = path;
+        modified();
+        return this;
+    }
+
+    public AbstractCriteriaImpl setType(String type) {
+        this.type = type;
+        modified();
+        return this;
+    }
+
+    public AbstractCriteriaImpl setTimeZone(ZoneId timeZone) {
+        this.timeZone = timeZone;
+        modified();
+        return this;
+    }
+
+    public AbstractCriteriaImpl setBindVariables(boolean bindVariables) {
+        this.bindVariables = bindVariables;
+        modified();
+        return this;
+    }
+
+    public AbstractCriteriaImpl setOptimize(boolean optimize) {
+        this.optimize = optimize;
+        modified();
         return this;
     }
 
+    public AbstractCriteriaImpl setPrefixLikeAsRange(boolean prefixLikeAsRange) {
+        this.prefixLikeAsRange = prefixLikeAsRange;
+        modified();
+        return this;
+    }
+
+    /**
+     * Drops the fingerprint, which is made again when it is needed.
+     */
+    private void modified() {
+        fingerprint.set(null);
+    }
+
+    /**
+     * @return the fingerprint of this criteria, when rendered in the given language (see
+     * {@link CriteriaFingerprint#of(AbstractCriteriaImpl, String)}). It is only made again if this criteria was modified.
+     */
+    String fingerprint(String language) {
+        CriteriaFingerprint.Memo memo = fingerprint.get();
+        if (memo == null || !memo.isValid()) {
+            memo = CriteriaFingerprint.memo(this);
+            fingerprint.set(memo);
+        }
+        return memo.get(language);
+    }
+
 
 
     @Override
     @Deprecated
     public Expression toXpathExpression() {
+        return StatementCache.getInstance().get(fingerprint(Query.XPATH), this::renderXpathExpression);
+    }
+
+    @Override
+    public Expression toSql2Expression() {
+        return StatementCache.getInstance().get(fingerprint(Query.JCR_SQL2), this::renderSql2Expression);
+    }
+
+    private Expression renderXpathExpression() {
         CriteriaQueryTranslator translator = new CriteriaQueryTranslator(this);
         XPathSelect statement = new XPathSelect();
         statement.setType(type);
@@ -168,8 +377,11 @@ public abstract class AbstractCriteriaImpl implements TranslatableCriteria {
 
 
 
-    @Override
-    public Expression toSql2Expression() {
+    private Expression renderSql2Expression() {
+        if (bindVariables) {
+            Sql2Builder builder = Select.from(this).toSql2(new Sql2Builder(true));
+            return Expression.sql2(builder.toString(), builder.getValues());
+        }
         return Expression.sql2(
             Select.from(this).toSql2());
     }
@@ -182,15 +394,100 @@ public abstract class AbstractCriteriaImpl implements TranslatableCriteria {
         if (language == null) {
             language = this.language;
         }
-        Expression expr = toExpression(language);
-        return QueryExecutorHelper.execute(
-            expr,
-            getCountSupplier(session, language),
-            session,
-            maxResults,
-            firstResult,
-            spellCheckString,
-            forcePagingWithDocumentOrder && this.orderEntries.isEmpty());
+        AdvancedResultImpl result;
+        IdentifierLookup lookup;
+        ChunkedInQuery chunked;
+        HybridQuery hybrid;
+        if (searchAfter != null) {
+            return KeysetPaging.execute(this, session, language)
+                .setTotalSizeStrategy(totalSizeStrategy)
+                .setCountLimit(countLimit);
+        } else if ((lookup = IdentifierLookup.of(this)) != null) {
+            result = lookup.execute(toExpression(language), session, maxResults, firstResult);
+        } else if (snapshot != null && snapshot.covers(this, language)) {
+            result = snapshot.execute(this, session, language);
+        } else if ((chunked = ChunkedInQuery.of(this)) != null) {
+            result = chunked.execute(session, language, maxResults, firstResult);
+        } else if ((hybrid = HybridQuery.of(this, language)) != null) {
+            result = hybrid.execute(session, language, maxResults, firstResult);
+        } else if (resultCache != null && spellCheckString == null && !forcePagingWithDocumentOrder) {
+            result = resultCache.execute(this, getCountSupplier(session, language), session, language);
+        } else if (coalesce && spellCheckString == null && !forcePagingWithDocumentOrder) {
+            result = QueryCoalescer.getInstance().execute(
+                toExpression(language),
+                startCount(session, language),
+                session,
+                maxResults,
+                firstResult);
+        } else {
+            result = QueryExecutorHelper.execute(
+                toExpression(language),
+                startCount(session, language),
+                session,
+                maxResults,
+                firstResult,
+                spellCheckString,
+                forcePagingWithDocumentOrder && this.orderEntries.isEmpty());
+        }
+        result.setTotalSizeStrategy(totalSizeStrategy)
+            .setCountLimit(countLimit);
+        return KeysetPaging.withNextCursor(result, this);
+    }
+
+    /**
+     * The fingerprint of the criteria (which also determines its statement), combined with everything else which determines its
+     * results.
+     */
+    @Override
+    public Object getResultKey(String language) {
+        if (language == null) {
+            language = this.language;
+        }
+        String fingerprint = fingerprint(language);
+        if (fingerprint == null) {
+            return null;
+        }
+        return Arrays.asList(fingerprint, maxResults, firstResult, spellCheckString, forcePagingWithDocumentOrder,
+            directLookup, inChunkSize, searchAfter, totalSizeStrategy, countLimit);
+    }
+
+    /**
+     * A new criteria with the same criterions, orders and settings, but without paging and spell checking.
+     * @param criterions to replace criterions in the copy ({@link UnaryOperator#identity()} to just copy them). If it returns
+     * {@code null}, the criterion is left out.
+     * @since 2.12
+     */
+    public AdvancedCriteriaImpl copy(UnaryOperator<Criterion> criterions) {
+        AdvancedCriteriaImpl copy = JCRCriteriaFactory.createCriteria();
+        for (CriterionEntry entry : criterionEntries) {
+            Criterion criterion = criterions.apply(entry.getCriterion());
+            if (criterion != null) {
+                copy.add(criterion);
+            }
+        }
+        for (OrderEntry entry : orderEntries) {
+            copy.addOrder(entry.getOrder());
+        }
+        copy.basePath = basePath;
+        copy.type = type;
+        copy.columns.addAll(columns);
+        copy.forcePagingWithDocumentOrder = forcePagingWithDocumentOrder;
+        copy.language = language;
+        copy.setTimeZone(timeZone);
+        copy.bindVariables = bindVariables;
+        copy.optimize = optimize;
+        copy.prefixLikeAsRange = prefixLikeAsRange;
+        copy.directLookup = directLookup;
+        copy.inChunkSize = inChunkSize;
+        copy.totalSizeStrategy = totalSizeStrategy;
+        copy.countLimit = countLimit;
+        copy.countSessionProvider = countSessionProvider;
+        copy.countExecutor = countExecutor;
+        copy.coalesce = coalesce;
+        copy.resultCache = resultCache;
+        copy.postFilterStrategy = postFilterStrategy;
+        copy.snapshot = snapshot;
+        return copy;
     }
 
     @Override
@@ -207,8 +504,17 @@ public abstract class AbstractCriteriaImpl implements TranslatableCriteria {
                 countCriteria.setType(type);
                 countCriteria.setTimeZone(timeZone);
                 countCriteria.setSpellCheckString(spellCheckString);
+                countCriteria.setBindVariables(bindVariables);
+                countCriteria.setOptimize(optimize);
+                countCriteria.setPrefixLikeAsRange(prefixLikeAsRange);
+                countCriteria.setDirectLookup(directLookup);
+                countCriteria.setInChunkSize(inChunkSize);
 
                 expr = countCriteria.toExpression(language);
+                if (countLimit != null) {
+                    // one more than the limit, to know whether there are more
+                    return countRows(QueryExecutorHelper.execute(expr, () -> -1, session, countLimit + 1, 0, spellCheckString, false));
+                }
                 final AdvancedResultImpl result = QueryExecutorHelper.execute(
                     expr,
                     () -> -1,
@@ -232,6 +538,53 @@ public abstract class AbstractCriteriaImpl implements TranslatableCriteria {
     }
 
 
+    /**
+     * The count supplier for an execution of this criteria. If counting in parallel, the count query is started right away, and
+     * the supplier just waits for it.
+     */
+    private LongSupplier startCount(Session session, String language) {
+        if (countSessionProvider == null || countExecutor == null || maxResults == null || maxResults <= 0 || totalSizeStrategy == TotalSizeStrategy.UNKNOWN) {
+            return getCountSupplier(session, language);
+        }
+        final SessionProvider provider = countSessionProvider;
+        final CompletableFuture<Long> count = CompletableFuture.supplyAsync(() -> {
+            Session countSession;
+            try {
+                countSession = provider.get();
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+            try {
+                return getCountSupplier(countSession, language).getAsLong();
+            } finally {
+                provider.release(countSession);
+            }
+        }, countExecutor);
+        return () -> {
+            try {
+                return count.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        };
+    }
+
+    private static long countRows(AdvancedResultImpl result) {
+        ResultIterator<Row> rows = result.getItems(row -> row);
+        long size = rows.getSize();
+        if (size < 0) {
+            size = 0;
+            while (rows.hasNext()) {
+                rows.next();
+                size++;
+            }
+        }
+        return size;
+    }
+
     @Override
     public String toString() {
         return "criteria" + (type != null ? " " + type : "") + "" + criterionEntries + (orderEntries.isEmpty() ? "" : " order by " + orderEntries);
@@ -1,11 +1,13 @@
 package nl.vpro.jcr.criteria.query.impl;
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 /**
  * @author Michiel Meeuwissen
  * @since 2.0
  */
+@EqualsAndHashCode
 public class Column {
 
     public static final Column ALL = new Column("", "*");
@@ -22,4 +24,12 @@ public class Column {
         this.xpath = xpath;
         this.sql2 = sql2;
     }
+
+    /**
+     * A column with the value of a property, which can be obtained by its name with {@link javax.jcr.query.Row#getValue(String)}.
+     * @since 2.12
+     */
+    public static Column property(String name) {
+        return new Column("@" + name, "%s.[" + name + "] AS [" + name + "]");
+    }
 }
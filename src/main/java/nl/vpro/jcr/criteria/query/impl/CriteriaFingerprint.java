@@ -0,0 +1,218 @@
+package nl.vpro.jcr.criteria.query.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.temporal.TemporalAccessor;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+
+import nl.vpro.jcr.criteria.query.TranslatableCriteria;
+import nl.vpro.jcr.criteria.query.criterion.Junction;
+
+/**
+ * Produces a canonical string describing everything in a criteria that determines the statement it renders to: the type, the
+ * base path, the criterion tree, the orders, the columns, the time zone, and the rendering flags. Two criteria with equal
+ * fingerprints render to the same {@link nl.vpro.jcr.criteria.query.Criteria.Expression}.
+ * <p>
+ * The criterions are walked reflectively, so also custom {@link nl.vpro.jcr.criteria.query.criterion.Criterion}
+ * implementations are covered. The result is an immutable snapshot, so later modifications of the criteria (e.g. adding to a
+ * junction) can't corrupt a cache keyed on it. Since that walk is not cheap, a criteria keeps its {@link #memo(AbstractCriteriaImpl)
+ * fingerprint} until it, or one of its junctions, is modified. Other criterions are immutable.
+ *
+ * @since 2.12
+ */
+@Slf4j
+final class CriteriaFingerprint {
+
+    private static final Map<Class<?>, List<Field>> FIELDS = new ConcurrentHashMap<>();
+
+    private static final List<Field> INACCESSIBLE = Collections.emptyList();
+
+    private final StringBuilder builder = new StringBuilder();
+
+    private final Set<Object> visiting = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final List<Junction> junctions = new ArrayList<>();
+
+    private boolean cacheable = true;
+
+    private CriteriaFingerprint() {
+    }
+
+    /**
+     * @return the fingerprint of the criteria, when rendered in the given language, or {@code null} if some part of it could
+     * not be described (in which case it should not be cached)
+     */
+    static String of(AbstractCriteriaImpl criteria, String language) {
+        CriteriaFingerprint fingerprint = new CriteriaFingerprint().value(language).criteria(criteria);
+        return fingerprint.cacheable ? fingerprint.builder.toString() : null;
+    }
+
+    /**
+     * Describes the criteria once, for all languages. The criteria drops it when it is modified itself, but the junctions in it
+     * can be modified too, which is checked by {@link Memo#isValid()}.
+     */
+    static Memo memo(AbstractCriteriaImpl criteria) {
+        CriteriaFingerprint fingerprint = new CriteriaFingerprint().criteria(criteria);
+        return new Memo(fingerprint.cacheable ? fingerprint.builder.toString() : null, fingerprint.junctions);
+    }
+
+    private CriteriaFingerprint criteria(AbstractCriteriaImpl criteria) {
+        value(criteria.getType())
+            .value(criteria.getBasePath())
+            .value(criteria.getTimeZone())
+            .value(criteria.isBindVariables())
+            .value(criteria.isOptimize())
+            .value(criteria.isPrefixLikeAsRange());
+        for (TranslatableCriteria.CriterionEntry entry : criteria.getCriterionEntries()) {
+            value(entry.getCriterion());
+        }
+        builder.append('|');
+        for (TranslatableCriteria.OrderEntry entry : criteria.getOrderEntries()) {
+            value(entry.getOrder());
+        }
+        builder.append('|');
+        for (Column column : criteria.getColumns()) {
+            value(column.getXpath()).value(column.getSql2());
+        }
+        return this;
+    }
+
+    private CriteriaFingerprint value(Object value) {
+        if (value == null) {
+            builder.append('~');
+        } else if (value instanceof CharSequence) {
+            String string = value.toString();
+            // length prefixed, so no escaping is needed
+            builder.append('"').append(string.length()).append(':').append(string);
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Character
+            || value instanceof UUID || value instanceof TemporalAccessor || value instanceof TimeZone || value instanceof java.time.ZoneId) {
+            builder.append(value.getClass().getSimpleName()).append('(').append(value).append(')');
+        } else if (value instanceof Enum) {
+            Enum<?> e = (Enum<?>) value;
+            builder.append(e.getDeclaringClass().getName()).append('.').append(e.name());
+        } else if (value instanceof Calendar) {
+            Calendar calendar = (Calendar) value;
+            builder.append("Calendar(").append(calendar.getTimeInMillis()).append(' ').append(calendar.getTimeZone().getID()).append(')');
+        } else if (value instanceof Date) {
+            builder.append("Date(").append(((Date) value).getTime()).append(')');
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            builder.append('[');
+            for (int i = 0; i < length; i++) {
+                value(Array.get(value, i));
+            }
+            builder.append(']');
+        } else if (value instanceof Collection) {
+            builder.append('[');
+            for (Object o : (Collection<?>) value) {
+                value(o);
+            }
+            builder.append(']');
+        } else {
+            object(value);
+        }
+        return this;
+    }
+
+    private void object(Object value) {
+        Class<?> clazz = value.getClass();
+        List<Field> fields = FIELDS.computeIfAbsent(clazz, CriteriaFingerprint::fields);
+        if (fields == INACCESSIBLE || ! visiting.add(value)) {
+            cacheable = false;
+            return;
+        }
+        if (value instanceof Junction) {
+            junctions.add((Junction) value);
+        }
+        try {
+            builder.append(clazz.getName()).append('{');
+            for (Field field : fields) {
+                value(field.get(value));
+            }
+            builder.append('}');
+        } catch (IllegalAccessException e) {
+            cacheable = false;
+        } finally {
+            visiting.remove(value);
+        }
+    }
+
+    private static List<Field> fields(Class<?> clazz) {
+        if (clazz.getName().startsWith("java.")) {
+            // some other jdk class, we don't know how to describe it
+            return INACCESSIBLE;
+        }
+        List<Field> result = new ArrayList<>();
+        try {
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                        || Logger.class.isAssignableFrom(field.getType())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    result.add(field);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.debug("Cannot fingerprint {}: {}", clazz, e.getMessage());
+            return INACCESSIBLE;
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The fingerprint of a criteria, for every language.
+     */
+    static final class Memo {
+
+        private final String fingerprint;
+
+        private final List<Junction> junctions;
+
+        private final int[] modifications;
+
+        private final Map<String, String> languages = new ConcurrentHashMap<>();
+
+        private Memo(String fingerprint, List<Junction> junctions) {
+            this.fingerprint = fingerprint;
+            this.junctions = junctions;
+            this.modifications = new int[junctions.size()];
+            for (int i = 0; i < modifications.length; i++) {
+                modifications[i] = junctions.get(i).getModifications();
+            }
+        }
+
+        /**
+         * @return whether none of the junctions of the criteria was modified since the fingerprint was made
+         */
+        boolean isValid() {
+            for (int i = 0; i < modifications.length; i++) {
+                if (junctions.get(i).getModifications() != modifications[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the same as {@link CriteriaFingerprint#of(AbstractCriteriaImpl, String)}
+         */
+        String get(String language) {
+            if (fingerprint == null) {
+                return null;
+            }
+            return languages.computeIfAbsent(String.valueOf(language), l -> {
+                CriteriaFingerprint prefix = new CriteriaFingerprint().value(language);
+                return prefix.builder.append(fingerprint).toString();
+            });
+        }
+    }
+}
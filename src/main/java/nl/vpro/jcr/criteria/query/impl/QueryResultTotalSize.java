@@ -0,0 +1,80 @@
+package nl.vpro.jcr.criteria.query.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Optional;
+
+import javax.jcr.query.QueryResult;
+
+import nl.vpro.jcr.criteria.query.TotalSizeStrategy;
+
+/**
+ * Determines the total size with the {@code getTotalSize()} method of the query result, if it has one (like jackrabbit's
+ * {@code QueryResultImpl}). The method is looked up only once per class of query result, and then called via a
+ * {@link MethodHandle}.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public final class QueryResultTotalSize implements TotalSizeStrategy {
+
+    public static final QueryResultTotalSize INSTANCE = new QueryResultTotalSize();
+
+    private static final String TOTAL_SIZE = "getTotalSize";
+
+    private static final MethodType TYPE = MethodType.methodType(long.class, QueryResult.class);
+
+    private static final ClassValue<Optional<MethodHandle>> HANDLES = new ClassValue<Optional<MethodHandle>>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            return Optional.ofNullable(handle(type));
+        }
+    };
+
+    private QueryResultTotalSize() {
+    }
+
+    @Override
+    public long getTotalSize(Context context) {
+        QueryResult queryResult = context.getQueryResult();
+        Optional<MethodHandle> handle = HANDLES.get(queryResult.getClass());
+        if (!handle.isPresent()) {
+            return -1;
+        }
+        try {
+            return (long) handle.get().invokeExact(queryResult);
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    private static MethodHandle handle(Class<?> type) {
+        try {
+            Method method = type.getMethod(TOTAL_SIZE);
+            Class<?> returnType = method.getReturnType();
+            if (returnType != int.class && returnType != long.class) {
+                log.debug("{} has unsupported return type {}", method, returnType);
+                return null;
+            }
+            MethodHandle handle = MethodHandles.lookup().unreflect(method).asType(TYPE);
+            log.debug("Using {}", method);
+            return handle;
+        } catch (NoSuchMethodException noSuchMethodException) {
+            log.debug("{} has no {}", type, TOTAL_SIZE);
+            return null;
+        } catch (IllegalAccessException e) {
+            log.debug("{}: {}", e.getClass().getSimpleName(), e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QUERY_RESULT";
+    }
+}
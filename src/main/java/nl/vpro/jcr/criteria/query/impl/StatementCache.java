@@ -0,0 +1,123 @@
+package nl.vpro.jcr.criteria.query.impl;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import nl.vpro.jcr.criteria.query.Criteria;
+
+/**
+ * A bounded, concurrent cache from the {@link CriteriaFingerprint fingerprint} of a criteria to the
+ * {@link Criteria.Expression} it renders to. This way the translation of criteria to a statement only happens once for
+ * criteria with the same structure.
+ * <p>
+ * When the cache gets full, the least recently used tenth of it is evicted. A maximum size of {@code 0} disables it.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public class StatementCache {
+
+    private static final StatementCache INSTANCE = new StatementCache();
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    @Getter
+    private volatile int maxSize = 1000;
+
+    public static StatementCache getInstance() {
+        return INSTANCE;
+    }
+
+    Criteria.Expression get(String fingerprint, Supplier<Criteria.Expression> render) {
+        if (fingerprint == null || maxSize <= 0) {
+            return render.get();
+        }
+        Entry entry = cache.get(fingerprint);
+        if (entry != null) {
+            hits.incrementAndGet();
+            entry.lastUsed = clock.incrementAndGet();
+            return entry.expression;
+        }
+        misses.incrementAndGet();
+        Criteria.Expression expression = render.get();
+        cache.put(fingerprint, new Entry(expression, clock.incrementAndGet()));
+        if (cache.size() > maxSize) {
+            evict();
+        }
+        return expression;
+    }
+
+    private synchronized void evict() {
+        int toRemove = cache.size() - maxSize + maxSize / 10;
+        if (toRemove <= 0) {
+            return;
+        }
+        log.debug("Evicting {} statements", toRemove);
+        cache.entrySet().stream()
+            .sorted(Comparator.comparingLong(e -> e.getValue().lastUsed))
+            .limit(toRemove)
+            .map(Map.Entry::getKey)
+            .forEach(cache::remove);
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        if (cache.size() > maxSize) {
+            evict();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of the lookups that were answered from the cache (or {@code 0} if there were none yet)
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCache{size=" + size() + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+
+    private static class Entry {
+        final Criteria.Expression expression;
+        volatile long lastUsed;
+
+        Entry(Criteria.Expression expression, long lastUsed) {
+            this.expression = expression;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package nl.vpro.jcr.criteria.query.sql2;
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 import java.util.ArrayList;
@@ -10,6 +11,7 @@ import java.util.List;
  * @author Michiel Meeuwissen
  * @since 2.0
  */
+@EqualsAndHashCode
 public abstract class BooleanCondition implements Condition {
 
     @Getter
@@ -23,23 +25,67 @@ public abstract class BooleanCondition implements Condition {
 
     @Override
     public boolean toSql2(StringBuilder builder) {
+        return toSql2(new Sql2Builder(builder, false));
+    }
 
-        int location = builder.length();
+    /**
+     * Renders in one pass. Which clauses render something is determined first, so the parentheses can be written before the
+     * clauses themselves.
+     */
+    @Override
+    public boolean toSql2(Sql2Builder sql2Builder) {
+        int nonEmpty = 0;
+        for (Condition clause : clauses) {
+            if (!clause.isEmpty(sql2Builder)) {
+                nonEmpty++;
+            }
+        }
+        if (nonEmpty == 0) {
+            return false;
+        }
+        StringBuilder builder = sql2Builder.getBuilder();
+        int start = builder.length();
+        boolean parentheses = nonEmpty > 1;
+        if (parentheses) {
+            builder.append('(');
+        }
         int appendCount = 0;
         String op = getBooleanOperator();
         for (Condition clause : clauses) {
+            if (clause.isEmpty(sql2Builder)) {
+                continue;
+            }
+            int mark = builder.length();
             if (appendCount > 0) {
                 builder.append(op);
             }
-            if (clause.toSql2(builder)) {
+            if (clause.toSql2(sql2Builder)) {
                 appendCount++;
+            } else {
+                // the clause did not predict that it would be empty, take back the operator
+                builder.setLength(mark);
             }
         }
-        if (appendCount > 1) {
-            builder.insert(location, '(');
+        if (appendCount == 0) {
+            builder.setLength(start);
+            return false;
+        }
+        if (parentheses) {
             builder.append(')');
         }
-        return appendCount > 0;
+        return true;
+    }
+
+    @Override
+    public boolean isEmpty(Sql2Builder builder) {
+        return builder.isEmpty(this, () -> {
+            for (Condition clause : clauses) {
+                if (!clause.isEmpty(builder)) {
+                    return false;
+                }
+            }
+            return true;
+        });
     }
 
     public boolean hasClauses() {
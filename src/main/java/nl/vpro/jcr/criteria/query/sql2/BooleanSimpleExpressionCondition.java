@@ -1,5 +1,9 @@
 package nl.vpro.jcr.criteria.query.sql2;
 
+import javax.jcr.Value;
+
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+
 import nl.vpro.jcr.criteria.query.criterion.Op;
 
 /**
@@ -16,4 +20,9 @@ public class BooleanSimpleExpressionCondition extends SimpleExpressionCondition<
     String getValue() {
         return value.toString();
     }
+
+    @Override
+    Value getJcrValue() {
+        return ValueFactoryImpl.getInstance().createValue(value);
+    }
 }
@@ -1,13 +1,22 @@
 package nl.vpro.jcr.criteria.query.sql2;
 
+import lombok.EqualsAndHashCode;
+import lombok.SneakyThrows;
+
+import javax.jcr.PropertyType;
+import javax.jcr.Value;
+
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+
 import nl.vpro.jcr.criteria.query.criterion.Op;
 
 /**
  * @author Michiel Meeuwissen
  * @since 2.0
  */
+@EqualsAndHashCode(callSuper = true)
 public class CastFromStringSimpleExpressionCondition extends SimpleExpressionCondition<String> {
 
     @NonNull
@@ -23,4 +32,19 @@ public class CastFromStringSimpleExpressionCondition extends SimpleExpressionCon
     String getValue() {
         return "cast('" + value + "' as " + castTo + ")";
     }
+
+    @Override
+    @SneakyThrows
+    Value getJcrValue() {
+        return ValueFactoryImpl.getInstance().createValue(value, propertyType(castTo));
+    }
+
+    private static int propertyType(String name) {
+        for (int type = PropertyType.STRING; type <= PropertyType.DECIMAL; type++) {
+            if (PropertyType.nameFromValue(type).equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown property type " + name);
+    }
 }
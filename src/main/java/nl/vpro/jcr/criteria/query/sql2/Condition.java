@@ -13,5 +13,22 @@ public interface Condition {
      */
     boolean toSql2(StringBuilder builder);
 
+    /**
+     * Like {@link #toSql2(StringBuilder)}, but conditions with values may render them as bind variables.
+     * @return {@code true} if something appended
+     * @since 2.12
+     */
+    default boolean toSql2(Sql2Builder builder) {
+        return toSql2(builder.getBuilder());
+    }
+
+    /**
+     * Whether rendering this condition would append nothing. This way parentheses and keywords can be written before the
+     * condition itself.
+     * @since 2.12
+     */
+    default boolean isEmpty(Sql2Builder builder) {
+        return false;
+    }
 
 }
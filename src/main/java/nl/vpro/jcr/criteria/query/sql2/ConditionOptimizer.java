@@ -0,0 +1,148 @@
+package nl.vpro.jcr.criteria.query.sql2;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Rewrites a {@link Condition} tree to a simpler, equivalent one before it is rendered. The rules are
+ * <ul>
+ *     <li>Flattening: an AND in an AND (or an OR in an OR) is merged into its parent</li>
+ *     <li>Constant folding: clauses which render nothing (empty junctions, descendant of the root) are dropped, like they would be
+ *     when rendering. A junction with one clause is replaced by that clause</li>
+ *     <li>Deduplication: equal clauses in the same junction are rendered only once</li>
+ *     <li>NOT push-down, as far as it removes negations: {@code not(not(x))} becomes {@code x}, and {@code not(x IS NULL)}
+ *     becomes {@code x IS NOT NULL} (and vice versa). {@code not(x = v)} is <em>not</em> rewritten to {@code x <> v}, since
+ *     the latter doesn't match nodes without the property</li>
+ *     <li>Path subsumption: in an AND a descendant restriction implied by a more specific path restriction is dropped, and
+ *     in an OR the more specific one is dropped</li>
+ * </ul>
+ * The given tree is not modified.
+ *
+ * @since 2.12
+ */
+public final class ConditionOptimizer {
+
+    private ConditionOptimizer() {
+        // don't instantiate
+    }
+
+    public static Condition optimize(Condition condition) {
+        return optimize(condition, new Sql2Builder(false));
+    }
+
+    private static Condition optimize(Condition condition, Sql2Builder context) {
+        if (condition instanceof BooleanCondition) {
+            return optimizeJunction((BooleanCondition) condition, context);
+        }
+        if (condition instanceof NotCondition) {
+            return optimizeNot((NotCondition) condition, context);
+        }
+        return condition;
+    }
+
+    private static Condition optimizeJunction(BooleanCondition junction, Sql2Builder context) {
+        boolean and = junction instanceof AndCondition;
+        List<Condition> flattened = new ArrayList<>(junction.getClauses().size());
+        for (Condition clause : junction.getClauses()) {
+            Condition optimized = optimize(clause, context);
+            if (optimized.isEmpty(context)) {
+                continue;
+            }
+            if (optimized.getClass() == junction.getClass()) {
+                flattened.addAll(((BooleanCondition) optimized).getClauses());
+            } else {
+                flattened.add(optimized);
+            }
+        }
+        List<Condition> clauses = subsume(new ArrayList<>(new LinkedHashSet<>(flattened)), and);
+        if (clauses.size() == 1) {
+            return clauses.get(0);
+        }
+        BooleanCondition result = and ? new AndCondition() : new OrCondition();
+        result.getClauses().addAll(clauses);
+        return result;
+    }
+
+    private static Condition optimizeNot(NotCondition not, Sql2Builder context) {
+        Condition wrapped = optimize(not.getWrapped(), context);
+        if (wrapped instanceof NotCondition) {
+            return ((NotCondition) wrapped).getWrapped();
+        }
+        if (wrapped instanceof NullCondition) {
+            return new NotNullCondition(((NullCondition) wrapped).field);
+        }
+        if (wrapped instanceof NotNullCondition) {
+            return new NullCondition(((NotNullCondition) wrapped).field);
+        }
+        return wrapped == not.getWrapped() ? not : new NotCondition(wrapped);
+    }
+
+    /**
+     * In an AND, drops the descendant restrictions which are implied by another path restriction. In an OR, drops the path
+     * restrictions which imply a descendant restriction.
+     */
+    private static List<Condition> subsume(List<Condition> clauses, boolean and) {
+        List<Condition> result = new ArrayList<>(clauses.size());
+        for (Condition clause : clauses) {
+            boolean redundant = false;
+            for (Condition other : clauses) {
+                if (other == clause) {
+                    continue;
+                }
+                if (and ? implies(other, clause) : implies(clause, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(clause);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return whether {@code restriction} is a path restriction which implies the descendant restriction {@code descendant}
+     */
+    private static boolean implies(Condition restriction, Condition descendant) {
+        if (!(descendant instanceof IsDescendantNode)) {
+            return false;
+        }
+        String ancestor = normalize(((IsDescendantNode) descendant).getPath());
+        if (ancestor == null) {
+            return false;
+        }
+        if (restriction instanceof IsDescendantNode) {
+            String path = normalize(((IsDescendantNode) restriction).getPath());
+            return path != null && isDescendant(path, ancestor);
+        }
+        if (restriction instanceof IsChildNode) {
+            String path = normalize(((IsChildNode) restriction).getPath());
+            return path != null && (path.equals(ancestor) || isDescendant(path, ancestor));
+        }
+        if (restriction instanceof IsSameNode) {
+            String path = normalize(((IsSameNode) restriction).getPath());
+            return path != null && isDescendant(path, ancestor);
+        }
+        return false;
+    }
+
+    private static boolean isDescendant(String path, String ancestor) {
+        return path.length() > ancestor.length() && path.startsWith(ancestor) && path.charAt(ancestor.length()) == '/';
+    }
+
+    /**
+     * @return the path without trailing slashes, or {@code null} if it can't be reasoned about
+     */
+    private static String normalize(String path) {
+        if (path.indexOf('*') >= 0 || path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return end == 1 ? null : path.substring(0, end);
+    }
+}
@@ -4,6 +4,8 @@ import lombok.Data;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+
 /**
  * @author Michiel Meeuwissen
  * @since 2.0
@@ -27,4 +29,14 @@ public class ContainsCondition implements  Condition {
             .append("')");
         return true;
     }
+
+    @Override
+    public boolean toSql2(Sql2Builder builder) {
+        builder.append(" CONTAINS(");
+        field.toSql2(builder.getBuilder());
+        builder.append(", ");
+        builder.appendValue(ValueFactoryImpl.getInstance().createValue(value.toString()), "'" + value + "'");
+        builder.append(")");
+        return true;
+    }
 }
@@ -27,4 +27,9 @@ public class IsChildNode implements Condition {
         }
         return false;
     }
+
+    @Override
+    public boolean isEmpty(Sql2Builder builder) {
+        return Criterion.ALL_ELEMENTS.equals(path);
+    }
 }
@@ -29,4 +29,9 @@ public class IsDescendantNode implements Condition {
         }
         return false;
     }
+
+    @Override
+    public boolean isEmpty(Sql2Builder builder) {
+        return "/".equals(path) || Criterion.ALL_ELEMENTS.equals(path);
+    }
 }
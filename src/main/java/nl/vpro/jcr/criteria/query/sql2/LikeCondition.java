@@ -1,9 +1,16 @@
 package nl.vpro.jcr.criteria.query.sql2;
 
+import lombok.EqualsAndHashCode;
+
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+
+import nl.vpro.jcr.criteria.query.criterion.Op;
+
 /**
  * @author Michiel Meeuwissen
  * @since 2.0
  */
+@EqualsAndHashCode
 public class LikeCondition implements  Condition {
     final Field field;
     final String value;
@@ -13,6 +20,92 @@ public class LikeCondition implements  Condition {
         this.value = toMatchString;
     }
 
+    /**
+     * Creates the condition for a LIKE, but if {@code rewrite}, rewrites it when that is equivalent and cheaper to evaluate. A
+     * LIKE is evaluated by enumerating all terms matching the wildcard pattern, which is slow for properties with many distinct
+     * values.
+     * <ul>
+     *     <li>A pattern without wildcards becomes an equality</li>
+     *     <li>A pattern with only trailing {@code %} becomes a range ({@code >= 'abc' AND < 'abd'})</li>
+     * </ul>
+     * This is only equivalent for single valued string properties (a LIKE compares the string value of a property, an equality
+     * its typed value, and for a multi valued property both comparisons of a range may match different values), so the caller
+     * must know that.
+     * @param toMatchString the pattern, as it appears between the quotes of an SQL2 literal
+     * @param rewrite whether to rewrite (see {@link nl.vpro.jcr.criteria.query.Criteria#isPrefixLikeAsRange()})
+     * @since 2.12
+     */
+    public static Condition of(String propertyName, String toMatchString, boolean rewrite) {
+        if (!rewrite) {
+            return new LikeCondition(propertyName, toMatchString);
+        }
+        String pattern = unquote(toMatchString);
+        StringBuilder literal = new StringBuilder(pattern.length());
+        int i = 0;
+        for (; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '%' || c == '_') {
+                break;
+            }
+            if (c == '\\') {
+                if (i == pattern.length() - 1) {
+                    // dangling escape, don't try to interpret that
+                    return new LikeCondition(propertyName, toMatchString);
+                }
+                c = pattern.charAt(++i);
+            }
+            literal.append(c);
+        }
+        if (literal.indexOf("'") >= 0) {
+            return new LikeCondition(propertyName, toMatchString);
+        }
+        Field field = Field.of(propertyName);
+        if (i == pattern.length()) {
+            return new StringSimpleExpressionCondition(field, Op.EQ, literal.toString());
+        }
+        if (literal.length() > 0 && onlyPercents(pattern, i)) {
+            String prefix = literal.toString();
+            String successor = successor(prefix);
+            Condition from = new StringSimpleExpressionCondition(field, Op.GE, prefix);
+            if (successor == null) {
+                return from;
+            }
+            return new AndCondition(from, new StringSimpleExpressionCondition(field, Op.LT, successor));
+        }
+        return new LikeCondition(propertyName, toMatchString);
+    }
+
+    /**
+     * @return the smallest string which is bigger than all strings starting with the given prefix, or {@code null} if there is
+     * none
+     */
+    static String successor(String prefix) {
+        StringBuilder builder = new StringBuilder(prefix);
+        while (builder.length() > 0) {
+            int last = builder.length() - 1;
+            char c = builder.charAt(last);
+            if (c < Character.MAX_VALUE) {
+                builder.setCharAt(last, (char) (c + 1));
+                return builder.toString();
+            }
+            builder.setLength(last);
+        }
+        return null;
+    }
+
+    private static boolean onlyPercents(String pattern, int from) {
+        for (int i = from; i < pattern.length(); i++) {
+            if (pattern.charAt(i) != '%') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String unquote(String literal) {
+        return literal.replace("''", "'");
+    }
+
     @Override
     public boolean toSql2(StringBuilder builder) {
         field.toSql2(builder);
@@ -20,4 +113,12 @@ public class LikeCondition implements  Condition {
         return true;
 
     }
+
+    @Override
+    public boolean toSql2(Sql2Builder builder) {
+        field.toSql2(builder.getBuilder());
+        builder.append(" LIKE ");
+        builder.appendValue(ValueFactoryImpl.getInstance().createValue(unquote(value)), "'" + value + "'");
+        return true;
+    }
 }
@@ -1,11 +1,16 @@
 package nl.vpro.jcr.criteria.query.sql2;
 
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
 /**
  * @author Michiel Meeuwissen
  * @since 2.0
  */
+@EqualsAndHashCode
 public class NotCondition implements Condition {
 
+    @Getter
     private final Condition wrapped;
 
     public NotCondition(Condition wrapped) {
@@ -19,4 +24,12 @@ public class NotCondition implements Condition {
         builder.append("))");
         return true;
     }
+
+    @Override
+    public boolean toSql2(Sql2Builder builder) {
+        builder.append("(not (");
+        wrapped.toSql2(builder);
+        builder.append("))");
+        return true;
+    }
 }
@@ -1,9 +1,12 @@
 package nl.vpro.jcr.criteria.query.sql2;
 
+import lombok.EqualsAndHashCode;
+
 /**
  * @author Michiel Meeuwissen
  * @since 2.0
  */
+@EqualsAndHashCode
 public class NotNullCondition implements  Condition {
     final Field field;
 
@@ -11,6 +14,10 @@ public class NotNullCondition implements  Condition {
         this.field = Field.of(propertyName);
     }
 
+    NotNullCondition(Field field) {
+        this.field = field;
+    }
+
     @Override
     public boolean toSql2(StringBuilder builder) {
         field.toSql2(builder);
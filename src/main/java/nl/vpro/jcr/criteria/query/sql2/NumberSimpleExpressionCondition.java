@@ -1,5 +1,12 @@
 package nl.vpro.jcr.criteria.query.sql2;
 
+import java.math.BigDecimal;
+
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+
 import nl.vpro.jcr.criteria.query.criterion.Op;
 
 /**
@@ -16,4 +23,16 @@ public class NumberSimpleExpressionCondition extends SimpleExpressionCondition<N
     String getValue() {
         return value.toString();
     }
+
+    @Override
+    Value getJcrValue() {
+        ValueFactory factory = ValueFactoryImpl.getInstance();
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return factory.createValue(value.longValue());
+        } else if (value instanceof BigDecimal) {
+            return factory.createValue((BigDecimal) value);
+        } else {
+            return factory.createValue(value.doubleValue());
+        }
+    }
 }
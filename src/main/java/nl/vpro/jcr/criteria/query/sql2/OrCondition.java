@@ -1,9 +1,12 @@
 package nl.vpro.jcr.criteria.query.sql2;
 
+import lombok.EqualsAndHashCode;
+
 /**
  * @author Michiel Meeuwissen
  * @since 2.0
  */
+@EqualsAndHashCode(callSuper = true)
 public class OrCondition extends BooleanCondition {
 
     public OrCondition(Condition... clauses) {
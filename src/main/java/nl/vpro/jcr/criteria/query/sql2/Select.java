@@ -5,7 +5,6 @@ import lombok.Data;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import nl.vpro.jcr.criteria.query.TranslatableCriteria;
 import nl.vpro.jcr.criteria.query.impl.AbstractCriteriaImpl;
@@ -17,6 +16,8 @@ import nl.vpro.jcr.criteria.query.impl.Column;
  */
 @Data
 public class Select {
+    private static final String SELECTOR = "a";
+
     String type = "nt:base";
     final AndCondition condition = new AndCondition();
     final List<Order> order = new ArrayList<>();
@@ -27,17 +28,33 @@ public class Select {
     }
 
     public String toSql2() {
-        StringBuilder builder = new StringBuilder("SELECT ");
+        return toSql2(new Sql2Builder(false)).toString();
+    }
+
+    /**
+     * Renders the complete statement into the given builder, in one pass.
+     * @since 2.12
+     */
+    public Sql2Builder toSql2(Sql2Builder sql2Builder) {
+        StringBuilder builder = sql2Builder.getBuilder();
+        builder.ensureCapacity(builder.length() + estimateLength());
+        builder.append("SELECT ");
         if (columns.isEmpty()) {
             columns.add(Column.ALL);
         }
-        builder.append(columns.stream().map(Column::getSql2).map(s -> String.format(s, "a")).collect(Collectors.joining(",")));
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            appendColumn(builder, columns.get(i).getSql2());
+        }
         builder.append(" from ");
         builder.append("[").append(type).append("] as a");
-        if (condition.hasClauses()) {
+        if (condition.hasClauses() && !condition.isEmpty(sql2Builder)) {
             int length = builder.length();
-            if (condition.toSql2(builder)) {
-                builder.insert(length, " WHERE ");
+            builder.append(" WHERE ");
+            if (!condition.toSql2(sql2Builder)) {
+                builder.setLength(length);
             }
         }
         if (! order.isEmpty()) {
@@ -51,7 +68,38 @@ public class Select {
 
             }
         }
-        return builder.toString();
+        return sql2Builder;
+    }
+
+    /**
+     * The column expressions are formats with the selector as argument.
+     */
+    private static void appendColumn(StringBuilder builder, String format) {
+        int from = 0;
+        int index;
+        while ((index = format.indexOf("%s", from)) >= 0) {
+            builder.append(format, from, index).append(SELECTOR);
+            from = index + 2;
+        }
+        builder.append(format, from, format.length());
+    }
+
+    /**
+     * A rough estimation of the length of the statement, to size the buffer.
+     */
+    int estimateLength() {
+        return 64 + 16 * columns.size() + 32 * order.size() + 48 * countClauses(condition);
+    }
+
+    private static int countClauses(Condition condition) {
+        if (condition instanceof BooleanCondition) {
+            int count = 0;
+            for (Condition clause : ((BooleanCondition) condition).getClauses()) {
+                count += countClauses(clause);
+            }
+            return count;
+        }
+        return 1;
     }
 
     public static Select from(AbstractCriteriaImpl criteria) {
@@ -67,6 +115,15 @@ public class Select {
         for (TranslatableCriteria.CriterionEntry e : criteria.getCriterionEntries()) {
             select.condition.clauses.add(e.getCriterion().toSQLCondition(criteria));
         }
+        if (criteria.isOptimize()) {
+            Condition optimized = ConditionOptimizer.optimize(select.condition);
+            select.condition.clauses.clear();
+            if (optimized instanceof AndCondition) {
+                select.condition.clauses.addAll(((AndCondition) optimized).getClauses());
+            } else {
+                select.condition.clauses.add(optimized);
+            }
+        }
         for (TranslatableCriteria.OrderEntry orderEntry : criteria.getOrderEntries()) {
             select.getOrder().add(Order
                 .builder()
@@ -1,10 +1,13 @@
 package nl.vpro.jcr.criteria.query.sql2;
 
+import lombok.EqualsAndHashCode;
 import lombok.SneakyThrows;
 
 import java.time.ZoneId;
 import java.util.Calendar;
 
+import javax.jcr.Value;
+
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 import org.apache.jackrabbit.value.ValueFactoryImpl;
@@ -16,6 +19,7 @@ import nl.vpro.jcr.utils.Utils;
  * @author Michiel Meeuwissen
  * @since 2.0
  */
+@EqualsAndHashCode
 public abstract class SimpleExpressionCondition<T> implements  Condition {
 
 
@@ -32,6 +36,11 @@ public abstract class SimpleExpressionCondition<T> implements  Condition {
 
     abstract String getValue();
 
+    /**
+     * @since 2.12
+     */
+    abstract Value getJcrValue();
+
 
     @Override
     public boolean toSql2(StringBuilder builder) {
@@ -40,6 +49,14 @@ public abstract class SimpleExpressionCondition<T> implements  Condition {
         return true;
     }
 
+    @Override
+    public boolean toSql2(Sql2Builder builder) {
+        field.toSql2(builder.getBuilder());
+        builder.append(" ").append(op.getXpath()).append(" ");
+        builder.appendValue(getJcrValue(), getValue());
+        return true;
+    }
+
     @SneakyThrows
     public static SimpleExpressionCondition<?> of(Field field, Op op, Object v, ZoneId zoneId) {
         v = Utils.toCalendarIfPossible(v, zoneId);
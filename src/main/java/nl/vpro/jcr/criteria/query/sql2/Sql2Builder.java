@@ -0,0 +1,94 @@
+package nl.vpro.jcr.criteria.query.sql2;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import javax.jcr.Value;
+
+/**
+ * The buffer an SQL2 statement is rendered into. If {@link #isBindVariables()} is true, literal values are not inlined in the
+ * statement, but rendered as bind variables ({@code $v0, $v1, ..}), which are collected in {@link #getValues()}. Statements
+ * which only differ in their values are then rendered identically, so their parsed form can be reused.
+ *
+ * @since 2.12
+ */
+public class Sql2Builder {
+
+    static final String BIND_VARIABLE_PREFIX = "v";
+
+    @Getter
+    private final StringBuilder builder;
+
+    @Getter
+    private final boolean bindVariables;
+
+    private final Map<String, Value> values = new LinkedHashMap<>();
+
+    private Map<Condition, Boolean> emptiness;
+
+    public Sql2Builder(StringBuilder builder, boolean bindVariables) {
+        this.builder = builder;
+        this.bindVariables = bindVariables;
+    }
+
+    public Sql2Builder(boolean bindVariables) {
+        this(new StringBuilder(), bindVariables);
+    }
+
+    /**
+     * Appends a value, either as a bind variable, or as the given literal representation of it.
+     */
+    public Sql2Builder appendValue(Value value, CharSequence literal) {
+        if (bindVariables) {
+            String name = BIND_VARIABLE_PREFIX + values.size();
+            values.put(name, value);
+            builder.append('$').append(name);
+        } else {
+            builder.append(literal);
+        }
+        return this;
+    }
+
+    public Sql2Builder append(CharSequence string) {
+        builder.append(string);
+        return this;
+    }
+
+    public Sql2Builder append(char c) {
+        builder.append(c);
+        return this;
+    }
+
+    /**
+     * Memoizes {@link Condition#isEmpty(Sql2Builder)} for composite conditions, so that determining it for every level of a
+     * nested tree stays linear.
+     */
+    boolean isEmpty(Condition condition, BooleanSupplier determine) {
+        if (emptiness == null) {
+            emptiness = new IdentityHashMap<>();
+        }
+        Boolean result = emptiness.get(condition);
+        if (result == null) {
+            result = determine.getAsBoolean();
+            emptiness.put(condition, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return The bind variables registered with {@link #appendValue(Value, CharSequence)}, by name (without the {@code $})
+     */
+    public Map<String, Value> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+}
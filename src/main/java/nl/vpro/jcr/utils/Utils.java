@@ -1,14 +1,24 @@
 package nl.vpro.jcr.utils;
 
+import java.math.BigDecimal;
 import java.time.*;
 import java.util.GregorianCalendar;
 
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
 /**
  * @author Michiel Meeuwissen
  * @since 2.0
  */
 public class Utils {
 
+    private static final int LONG_LENGTH = Long.toString(Long.MAX_VALUE, Character.MAX_RADIX).length() + 1;
+
+    private static final long DATE_SHIFT = 63072000000000L;
+
+    private static final int DATE_LENGTH = Long.toString(94608000000000L, Character.MAX_RADIX).length();
 
 
     public static Object toCalendarIfPossible(Object o, ZoneId zoneId) {
@@ -23,4 +33,116 @@ public class Utils {
         }
 
     }
+
+    /**
+     * Compares jcr values for sorting: values of the same type by their natural order, others by their string representation.
+     * @since 2.12
+     */
+    public static int compare(Value a, Value b) throws RepositoryException {
+        if (a.getType() == b.getType()) {
+            switch (a.getType()) {
+                case PropertyType.LONG:
+                    return Long.compare(a.getLong(), b.getLong());
+                case PropertyType.DOUBLE:
+                    return Double.compare(a.getDouble(), b.getDouble());
+                case PropertyType.DECIMAL:
+                    return a.getDecimal().compareTo(b.getDecimal());
+                case PropertyType.DATE:
+                    return a.getDate().compareTo(b.getDate());
+                case PropertyType.BOOLEAN:
+                    return Boolean.compare(a.getBoolean(), b.getBoolean());
+                default:
+            }
+        }
+        return a.getString().compareTo(b.getString());
+    }
+
+    /**
+     * Compares a property value to a literal like the query engine (Jackrabbit) does in a comparison constraint. It doesn't
+     * convert the literal to the type of the property: values of the same type are compared by their natural order, others by
+     * the terms they are indexed as (so e.g. a long never equals a decimal, and all longs are smaller than all positive decimals).
+     * @since 2.12
+     */
+    public static int compareIndexed(Value value, Value literal) throws RepositoryException {
+        if (value.getType() == literal.getType()) {
+            return compare(value, literal);
+        }
+        return indexTerm(value).compareTo(indexTerm(literal));
+    }
+
+    /**
+     * The term the lucene index of Jackrabbit stores a value as (see {@code org.apache.jackrabbit.core.query.lucene.LongField},
+     * {@code DoubleField}, {@code DecimalField} and {@code DateField})
+     */
+    private static String indexTerm(Value value) throws RepositoryException {
+        switch (value.getType()) {
+            case PropertyType.LONG: {
+                long l = value.getLong();
+                return l < 0 ? padded('0', Long.toString(l + Long.MAX_VALUE + 1, Character.MAX_RADIX)) : padded('1', Long.toString(l, Character.MAX_RADIX));
+            }
+            case PropertyType.DOUBLE: {
+                long bits = Double.doubleToLongBits(value.getDouble());
+                return (bits & Long.MIN_VALUE) == 0 ? padded('1', Long.toString(bits, Character.MAX_RADIX)) : padded('0', Long.toString(-bits, Character.MAX_RADIX));
+            }
+            case PropertyType.DECIMAL: {
+                BigDecimal decimal = value.getDecimal();
+                switch (decimal.signum()) {
+                    case -1:
+                        return "1" + invert(positiveDecimalTerm(decimal.negate()), 1);
+                    case 0:
+                        return "2";
+                    default:
+                        return "3" + positiveDecimalTerm(decimal);
+                }
+            }
+            case PropertyType.DATE: {
+                StringBuilder result = new StringBuilder(Long.toString(value.getDate().getTimeInMillis() + DATE_SHIFT, Character.MAX_RADIX));
+                while (result.length() < DATE_LENGTH) {
+                    result.insert(0, '0');
+                }
+                return result.toString();
+            }
+            default:
+                return value.getString();
+        }
+    }
+
+    private static String padded(char sign, String digits) {
+        StringBuilder result = new StringBuilder(LONG_LENGTH).append(sign);
+        while (result.length() + digits.length() < LONG_LENGTH) {
+            result.append('0');
+        }
+        return result.append(digits).toString();
+    }
+
+    private static String positiveDecimalTerm(BigDecimal decimal) {
+        StringBuilder result = new StringBuilder();
+        long exponent = decimal.precision() - decimal.scale() - 1;
+        if (exponent == 0) {
+            result.append('2');
+        } else {
+            String e = String.valueOf(Math.abs(exponent));
+            e = (e.length() - 1) + e;
+            if (exponent > 0) {
+                result.append('3').append(e);
+            } else {
+                result.append('1').append(invert(e, 0));
+            }
+        }
+        String unscaled = decimal.unscaledValue().toString();
+        int end = unscaled.length() - 1;
+        while (unscaled.charAt(end) == '0') {
+            end--;
+        }
+        return result.append(unscaled, 0, end + 1).toString();
+    }
+
+    private static String invert(String digits, int add) {
+        char[] chars = digits.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('9' - chars[i] + '0');
+        }
+        chars[chars.length - 1] += add;
+        return String.valueOf(chars);
+    }
 }
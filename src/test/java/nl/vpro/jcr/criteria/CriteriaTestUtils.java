@@ -25,14 +25,23 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jcr.*;
+import javax.jcr.nodetype.NodeDefinitionTemplate;
 import javax.jcr.nodetype.NodeTypeManager;
 import javax.jcr.nodetype.NodeTypeTemplate;
 import javax.jcr.nodetype.PropertyDefinitionTemplate;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.core.TransientRepository;
@@ -81,9 +90,102 @@ public class CriteriaTestUtils {
     public static Session getSession() throws RepositoryException {
         return repository.login(new SimpleCredentials("admin", "admin".toCharArray()));
     }
+
+    /**
+     * Wraps a session, so that every execution of a {@link Query} created via it is counted (per statement)
+     */
+    public static Session countingExecutions(Session session, Map<String, AtomicInteger> executions) {
+        return countingExecutions(session, executions, executionCounter());
+    }
+
+    /**
+     * Like {@link #countingExecutions(Session, Map)}, but also counts the creation of {@link Query} objects (per statement)
+     */
+    public static Session countingExecutions(Session session, Map<String, AtomicInteger> executions, Map<String, AtomicInteger> creations) {
+        return countingExecutions(session, executions, creations, () -> {});
+    }
+
+    /**
+     * Like {@link #countingExecutions(Session, Map, Map)}, but also calls a hook before every execution
+     */
+    public static Session countingExecutions(Session session, Map<String, AtomicInteger> executions, Map<String, AtomicInteger> creations, Runnable onExecute) {
+        return proxy(Session.class, (proxy, method, args) -> {
+            Object result = invoke(session, method, args);
+            if (method.getName().equals("getWorkspace")) {
+                Workspace workspace = (Workspace) result;
+                return proxy(Workspace.class, (wproxy, wmethod, wargs) -> {
+                    Object wresult = invoke(workspace, wmethod, wargs);
+                    if (wmethod.getName().equals("getQueryManager")) {
+                        QueryManager queryManager = (QueryManager) wresult;
+                        return proxy(QueryManager.class, (qmproxy, qmmethod, qmargs) -> {
+                            Object qmresult = invoke(queryManager, qmmethod, qmargs);
+                            if (qmmethod.getName().equals("createQuery")) {
+                                Query query = (Query) qmresult;
+                                creations.computeIfAbsent(query.getStatement(), k -> new AtomicInteger()).incrementAndGet();
+                                return proxy(Query.class, (qproxy, qmethod, qargs) -> {
+                                    if (qmethod.getName().equals("execute")) {
+                                        executions.computeIfAbsent(query.getStatement(), k -> new AtomicInteger()).incrementAndGet();
+                                        onExecute.run();
+                                    }
+                                    return invoke(query, qmethod, qargs);
+                                });
+                            }
+                            return qmresult;
+                        });
+                    }
+                    return wresult;
+                });
+            }
+            return result;
+        });
+    }
+
+    public static Map<String, AtomicInteger> executionCounter() {
+        return new ConcurrentHashMap<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> clazz, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(CriteriaTestUtils.class.getClassLoader(), new Class<?>[]{clazz}, handler);
+    }
+
+    private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
     public static void defineA() throws RepositoryException {
+        NodeTypeManager nodeTypeManager = session.getWorkspace().getNodeTypeManager();
+        nodeTypeManager.registerNodeType(templateA(nodeTypeManager), true);
+    }
 
+    /**
+     * Like {@link #defineA()}, but the type also accepts any other (single or multi valued) property, and child nodes.
+     * @since 2.12
+     */
+    public static void defineOpenA() throws RepositoryException {
         NodeTypeManager nodeTypeManager = session.getWorkspace().getNodeTypeManager();
+        NodeTypeTemplate a = templateA(nodeTypeManager);
+        for (boolean multiple : new boolean[] {false, true}) {
+            PropertyDefinitionTemplate residual = nodeTypeManager.createPropertyDefinitionTemplate();
+            residual.setName("*");
+            residual.setRequiredType(PropertyType.UNDEFINED);
+            residual.setMultiple(multiple);
+            a.getPropertyDefinitionTemplates().add(residual);
+        }
+        NodeDefinitionTemplate children = nodeTypeManager.createNodeDefinitionTemplate();
+        children.setName("*");
+        children.setRequiredPrimaryTypeNames(new String[] {"nt:base"});
+        children.setDefaultPrimaryTypeName("nt:unstructured");
+        children.setSameNameSiblings(false);
+        a.getNodeDefinitionTemplates().add(children);
+        nodeTypeManager.registerNodeType(a, true);
+    }
+
+    private static NodeTypeTemplate templateA(NodeTypeManager nodeTypeManager) throws RepositoryException {
         NodeTypeTemplate a  = nodeTypeManager.createNodeTypeTemplate();
         a.setName("a");
         {
@@ -111,7 +213,7 @@ public class CriteriaTestUtils {
             a.getPropertyDefinitionTemplates().add(dateType);
         }
         a.setQueryable(true);
-        nodeTypeManager.registerNodeType(a, true);
+        return a;
     }
     public static void defineB() throws RepositoryException {
 
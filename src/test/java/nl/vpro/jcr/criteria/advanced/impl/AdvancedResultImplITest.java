@@ -0,0 +1,126 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.*;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class AdvancedResultImplITest {
+
+    @SuppressWarnings("deprecation")
+    @DataProvider(name = "language")
+    public static Object[][] language() {
+        return new Object[][] {{Query.XPATH}, {Query.JCR_SQL2}};
+    }
+
+    @BeforeMethod
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (long i = 0; i < 30; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+        }
+        session.save();
+    }
+
+    @AfterMethod
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @Test(dataProvider = "language")
+    public void executeOnceUnpaged(String language) throws RepositoryException {
+        Map<String, AtomicInteger> executions = executionCounter();
+        Session counting = countingExecutions(session, executions);
+
+        AdvancedResult result = builder()
+            .type("a")
+            .asc(attr("long"))
+            .build()
+            .execute(counting, language);
+
+        assertThat(result.getTotalSize()).isEqualTo(30);
+        assertThat(result.getFirstResult().getName()).isEqualTo("n0");
+        assertThat(names(result)).hasSize(30);
+        assertThat(names(result)).hasSize(30);
+        log.info("{}", executions);
+        assertThat(executions).hasSize(1);
+        assertThat(executions.values().iterator().next().get()).isEqualTo(1);
+    }
+
+    @Test(dataProvider = "language")
+    public void executeOncePaged(String language) throws RepositoryException {
+        Map<String, AtomicInteger> executions = executionCounter();
+        Session counting = countingExecutions(session, executions);
+
+        AdvancedCriteriaImpl criteria = builder()
+            .type("a")
+            .asc(attr("long"))
+            .paging(10, 2)
+            .build();
+        AdvancedResult result = criteria.execute(counting, language);
+
+        assertThat(result.getFirstResult().getName()).isEqualTo("n10");
+        assertThat(names(result)).hasSize(10);
+        assertThat(result.getTotalSize()).isEqualTo(30);
+        assertThat(result.getNumberOfPages()).isEqualTo(3);
+        assertThat(names(result)).containsExactlyElementsOf(names(result));
+        log.info("{}", executions);
+        // the page itself is executed only once. Determining the total size may need a separate count query (without the ordering)
+        executions.forEach((statement, count) -> assertThat(count.get()).isEqualTo(1));
+        assertThat(executions.values().stream().mapToInt(AtomicInteger::get).sum()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void replayWhileIterating() throws RepositoryException {
+        AdvancedResult result = builder()
+            .type("a")
+            .asc(attr("long"))
+            .build()
+            .execute(session);
+        List<String> outer = new ArrayList<>();
+        List<String> inner = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            outer.add(item.getName());
+            if (outer.size() == 5) {
+                inner.addAll(names(result));
+            }
+        }
+        assertThat(outer).hasSize(30);
+        assertThat(inner).containsExactlyElementsOf(outer);
+    }
+
+    @SneakyThrows
+    private List<String> names(AdvancedResult result) {
+        List<String> paths = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            paths.add(item.getName());
+        }
+        return paths;
+    }
+}
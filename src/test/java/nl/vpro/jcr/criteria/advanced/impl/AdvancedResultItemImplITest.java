@@ -0,0 +1,135 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+import javax.jcr.query.Row;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.ResultIterator;
+import nl.vpro.jcr.utils.JcrNodeWrapper;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class AdvancedResultItemImplITest {
+
+    private static final int SIZE = 2000;
+
+    private static final int PROPERTIES = 10;
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        Node items = root.addNode("items");
+        for (int i = 0; i < SIZE; i++) {
+            Node n = items.addNode("n" + i);
+            n.setProperty("long", i);
+            for (int p = 0; p < PROPERTIES; p++) {
+                n.setProperty("p" + p, "value " + i + " " + p);
+            }
+        }
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @Test
+    public void nodeResolvedOnce() {
+        AtomicInteger resolved = new AtomicInteger();
+        ResultIterator<AdvancedResultItemImpl> items = execute().getItems(row -> new AdvancedResultItemImpl(counting(row, resolved)));
+        int count = 0;
+        while (items.hasNext()) {
+            readProperties(items.next());
+            count++;
+        }
+        assertThat(count).isEqualTo(SIZE);
+        assertThat(resolved.get()).isEqualTo(SIZE);
+    }
+
+    /**
+     * A micro benchmark for the overhead per row of reading {@value #PROPERTIES} properties, with and without memoizing the
+     * node.
+     */
+    @Test(groups = "benchmark")
+    public void benchmark() {
+        Function<Row, Node> unmemoized = row -> new JcrNodeWrapper() {
+            @Override
+            @SneakyThrows
+            protected Node getNode() {
+                return row.getNode();
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            long unmemoizedNanos = measure(unmemoized);
+            long memoizedNanos = measure(AdvancedResultItemImpl::new);
+            log.info("Per row: unmemoized {}, memoized {}", Duration.ofNanos(unmemoizedNanos / SIZE), Duration.ofNanos(memoizedNanos / SIZE));
+        }
+    }
+
+    private long measure(Function<Row, ? extends Node> wrapper) {
+        AdvancedResult result = execute();
+        // execute the query before measuring
+        result.getTotalSize();
+        long start = System.nanoTime();
+        ResultIterator<? extends Node> items = result.getItems(wrapper);
+        int count = 0;
+        while (items.hasNext()) {
+            readProperties(items.next());
+            count++;
+        }
+        long duration = System.nanoTime() - start;
+        assertThat(count).isEqualTo(SIZE);
+        return duration;
+    }
+
+    private AdvancedResult execute() {
+        return builder().basePath("/items").asc(attr("long")).build().execute(session, Query.JCR_SQL2);
+    }
+
+    @SneakyThrows
+    private static void readProperties(Node node) {
+        for (int p = 0; p < PROPERTIES; p++) {
+            assertThat(node.getProperty("p" + p).getString()).startsWith("value ");
+        }
+    }
+
+    /**
+     * Wraps the row, counting the calls to {@link Row#getNode()} on it.
+     */
+    private static Row counting(Row row, AtomicInteger count) {
+        return (Row) Proxy.newProxyInstance(Row.class.getClassLoader(), new Class<?>[]{Row.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getNode") && method.getParameterCount() == 0) {
+                count.incrementAndGet();
+            }
+            try {
+                return method.invoke(row, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+}
@@ -0,0 +1,151 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.*;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.ge;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class AsyncExecutionITest {
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger released = new AtomicInteger();
+    private final Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+
+    private ExecutorService executor;
+
+    private final SessionProvider provider = new SessionProvider() {
+        @Override
+        public Session get() throws RepositoryException {
+            sessions.incrementAndGet();
+            threads.add(Thread.currentThread().getName());
+            return CriteriaTestUtils.getSession();
+        }
+
+        @Override
+        public void release(Session session) {
+            released.incrementAndGet();
+            SessionProvider.super.release(session);
+        }
+    };
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 20; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+        }
+        session.save();
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(4, r -> new Thread(r, "async-" + count.incrementAndGet()));
+    }
+
+    @AfterClass
+    public void shutdown() {
+        executor.shutdown();
+        CriteriaTestUtils.shutdown();
+    }
+
+    @BeforeMethod
+    public void reset() {
+        sessions.set(0);
+        released.set(0);
+        threads.clear();
+    }
+
+    @Test
+    public void executeAsync() throws Exception {
+        List<CompletableFuture<AdvancedResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(builder()
+                .type("a")
+                .add(ge(attr("long"), (long) i))
+                .asc(attr("long"))
+                .build()
+                .executeAsync(provider, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertThat(threads).allMatch(t -> t.startsWith("async-"));
+        for (int i = 0; i < futures.size(); i++) {
+            try (AdvancedResult result = futures.get(i).get()) {
+                assertThat(result.getTotalSize()).isEqualTo(20 - i);
+                assertThat(result.getFirstResult().getProperty("long").getLong()).isEqualTo(i);
+            }
+        }
+        assertThat(sessions.get()).isEqualTo(10);
+        assertThat(released.get()).isEqualTo(10);
+    }
+
+    @Test
+    public void releasedOnce() throws Exception {
+        AdvancedResult result = builder().type("a").paging(5, 2).build().executeAsync(provider, Query.JCR_SQL2, executor).get();
+        assertThat(result.getItems().getSize()).isEqualTo(5);
+        assertThat(released.get()).isEqualTo(0);
+        result.close();
+        result.close();
+        assertThat(released.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void direct() throws Exception {
+        DirectJcrQuery query = new DirectJcrQuery(Criteria.Expression.sql2("SELECT * FROM [a] AS a ORDER BY a.[long]"))
+            .setPaging(5, 1);
+        try (AdvancedResult result = query.executeAsync(provider, executor).get()) {
+            assertThat(result.getItems().getSize()).isEqualTo(5);
+            assertThat(result.hasNextPage()).isTrue();
+        }
+        assertThat(released.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void noExecutor() {
+        assertThatThrownBy(() -> builder().type("a").build().executeAsync(provider, null))
+            .isInstanceOf(NullPointerException.class);
+        assertThat(sessions.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void failure() {
+        CompletableFuture<AdvancedResult> future = new DirectJcrQuery(Criteria.Expression.sql2("SELECT * FROM syntax error"))
+            .executeAsync(provider, executor);
+        assertThatThrownBy(future::get)
+            .isInstanceOf(ExecutionException.class);
+        assertThat(sessions.get()).isEqualTo(1);
+        assertThat(released.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void noSession() {
+        CompletableFuture<AdvancedResult> future = builder().type("a").build().executeAsync(() -> {
+            throw new RepositoryException("no session");
+        }, executor);
+        assertThatThrownBy(future::get)
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(RepositoryException.class);
+    }
+}
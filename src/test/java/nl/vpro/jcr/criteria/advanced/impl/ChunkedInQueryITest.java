@@ -0,0 +1,156 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+import nl.vpro.jcr.criteria.query.TotalSizeStrategy;
+import nl.vpro.jcr.criteria.query.criterion.Restrictions;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.*;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+public class ChunkedInQueryITest {
+
+    private final List<String> codes = new ArrayList<>();
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 50; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", (i * 17) % 50);
+            n.setProperty("title", "code" + i + " " + (i % 2 == 0 ? "even" : "odd"));
+            n.setProperty("media", "code" + i);
+            if (i % 3 == 0) {
+                codes.add("code" + i);
+            }
+        }
+        codes.add("notexisting");
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @Test
+    public void chunks() {
+        ChunkedInQuery chunked = ChunkedInQuery.of(builder()
+            .type("a")
+            .add(Restrictions.in(attr("media"), codes))
+            .inChunkSize(5)
+            .build());
+        assertThat(chunked).isNotNull();
+        assertThat(chunked.getChunks()).hasSize(4);
+        assertThat(chunked.getChunks().get(0).toSql2Expression().getStatement())
+            .isEqualTo("SELECT * from [a] as a WHERE ( CONTAINS([media], 'code0') OR  CONTAINS([media], 'code3') OR  CONTAINS([media], 'code6') OR  CONTAINS([media], 'code9') OR  CONTAINS([media], 'code12'))");
+
+        assertThat(ChunkedInQuery.of(builder().add(Restrictions.in(attr("media"), codes)).inChunkSize(100).build())).isNull();
+        assertThat(ChunkedInQuery.of(builder().add(Restrictions.in(attr("media"), codes)).inChunkSize(0).build())).isNull();
+        assertThat(ChunkedInQuery.of(builder().add(Restrictions.in(attr("media"), codes)).inChunkSize(5).score().build())).isNull();
+    }
+
+    @Test
+    public void sameResults() {
+        assertSameResults(builder().type("a").add(Restrictions.in(attr("media"), codes)).asc(attr("long")));
+        assertSameResults(builder().type("a").add(Restrictions.in(attr("media"), codes)).desc(attr("title")));
+        assertSameResults(builder().type("a").add(Restrictions.in(attr("media"), codes)).add(Restrictions.contains(attr("title"), "even")).asc(attr("long")));
+    }
+
+    @Test
+    public void duplicates() {
+        // "even" and "code10" match the same node, which should be returned only once
+        List<String> words = new ArrayList<>();
+        words.add("even");
+        words.add("code10");
+        words.add("code11");
+        assertSameResults(builder().type("a").add(Restrictions.in(attr("title"), words)).asc(attr("long")));
+        assertThat(handles(builder().type("a").add(Restrictions.in(attr("title"), words)).inChunkSize(1).build().execute(session, Query.JCR_SQL2)))
+            .hasSize(26);
+    }
+
+    @Test
+    public void paged() {
+        for (int page = 1; page <= 4; page++) {
+            AdvancedCriteriaImpl.Builder builder = builder()
+                .type("a")
+                .add(Restrictions.in(attr("media"), codes))
+                .desc(attr("long"))
+                .paging(5, page);
+            AdvancedResult chunked = builder.inChunkSize(3).build().execute(session, Query.JCR_SQL2);
+            AdvancedResult whole = builder.inChunkSize(0).build().execute(session, Query.JCR_SQL2);
+            assertThat(chunked.getTotalSize()).isEqualTo(17);
+            assertThat(handles(chunked)).containsExactlyElementsOf(handles(whole));
+            assertThat(chunked.getNumberOfPages()).isEqualTo(whole.getNumberOfPages());
+        }
+    }
+
+    @Test
+    public void totalSizeStrategies() {
+        for (TotalSizeStrategy strategy : new TotalSizeStrategy[] {TotalSizeStrategy.DEFAULT, TotalSizeStrategy.COUNT_QUERY}) {
+            AdvancedResult result = builder()
+                .type("a")
+                .add(Restrictions.in(attr("media"), codes))
+                .asc(attr("long"))
+                .paging(5, 2)
+                .inChunkSize(4)
+                .totalSizeStrategy(strategy)
+                .build()
+                .execute(session, Query.JCR_SQL2);
+            assertThat(result.getTotalSize()).as(strategy.toString()).isEqualTo(17);
+        }
+    }
+
+    @Test
+    public void executions() {
+        Map<String, AtomicInteger> executions = executionCounter();
+        AdvancedResult result = builder()
+            .type("a")
+            .add(Restrictions.in(attr("media"), codes))
+            .asc(attr("long"))
+            .inChunkSize(4)
+            .build()
+            .execute(countingExecutions(session, executions), Query.JCR_SQL2);
+        assertThat(handles(result)).hasSize(17);
+        assertThat(result.getTotalSize()).isEqualTo(17);
+        assertThat(executions).hasSize(5);
+        assertThat(executions.values()).allMatch(i -> i.get() == 1);
+    }
+
+    private void assertSameResults(AdvancedCriteriaImpl.Builder builder) {
+        List<String> chunked = handles(builder.inChunkSize(2).build().execute(session, Query.JCR_SQL2));
+        List<String> whole = handles(builder.inChunkSize(0).build().execute(session, Query.JCR_SQL2));
+        assertThat(chunked).isNotEmpty();
+        assertThat(chunked).containsExactlyElementsOf(whole);
+    }
+
+    @SneakyThrows
+    private static List<String> handles(AdvancedResult result) {
+        List<String> handles = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            handles.add(item.getPath());
+        }
+        return handles;
+    }
+}
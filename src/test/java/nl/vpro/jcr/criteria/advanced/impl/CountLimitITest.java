@@ -0,0 +1,106 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.TotalSize;
+import nl.vpro.jcr.criteria.query.TotalSizeStrategy;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class CountLimitITest {
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 50; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+        }
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @DataProvider
+    public Object[][] language() {
+        return new Object[][] {{Query.JCR_SQL2}, {Query.XPATH}};
+    }
+
+    @Test(dataProvider = "language")
+    public void lowerBound(String language) {
+        AdvancedResult result = execute(20, language);
+        assertThat(result.getTotal()).isEqualTo(TotalSize.atLeast(20));
+        assertThat(result.getTotal().isLowerBound()).isTrue();
+        assertThat(result.getTotal().toString()).isEqualTo("20+");
+        assertThat(result.getTotalSize()).isEqualTo(20);
+        assertThat(result.getNumberOfPages()).isEqualTo(2);
+        assertThat(result.getItems().getSize()).isEqualTo(10);
+    }
+
+    @Test(dataProvider = "language")
+    public void exact(String language) {
+        assertThat(execute(50, language).getTotal()).isEqualTo(TotalSize.exact(50));
+        assertThat(execute(100, language).getTotal()).isEqualTo(TotalSize.exact(50));
+        assertThat(execute(null, language).getTotal()).isEqualTo(TotalSize.exact(50));
+        assertThat(execute(null, language).getTotal().toString()).isEqualTo("50");
+    }
+
+    @Test
+    public void notPaged() {
+        AdvancedResult result = builder().type("a").countLimit(20).build().execute(session, Query.JCR_SQL2);
+        assertThat(result.getTotal()).isEqualTo(TotalSize.exact(50));
+    }
+
+    @Test
+    public void unknown() {
+        AdvancedResult result = builder()
+            .type("a")
+            .paging(10, 1)
+            .countLimit(20)
+            .totalSizeStrategy(TotalSizeStrategy.UNKNOWN)
+            .build()
+            .execute(session, Query.JCR_SQL2);
+        assertThat(result.getTotal()).isSameAs(TotalSize.UNKNOWN);
+        assertThat(result.getTotal().isLowerBound()).isFalse();
+        assertThat(result.getTotal().toString()).isEqualTo("?");
+    }
+
+    @Test
+    public void setter() {
+        AdvancedCriteriaImpl criteria = builder().type("a").paging(10, 3).build();
+        criteria.setCountLimit(30);
+        assertThat(criteria.copy(c -> c).getCountLimit()).isEqualTo(30);
+        assertThat(criteria.execute(session, Query.JCR_SQL2).getTotal().toString()).isEqualTo("30+");
+    }
+
+    private AdvancedResult execute(Integer countLimit, String language) {
+        return builder()
+            .type("a")
+            .asc(attr("long"))
+            .paging(10, 1)
+            .countLimit(countLimit)
+            .build()
+            .execute(session, language);
+    }
+}
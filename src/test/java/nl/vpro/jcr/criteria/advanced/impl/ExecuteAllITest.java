@@ -0,0 +1,178 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.*;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.ge;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class ExecuteAllITest {
+
+    private final Map<String, AtomicInteger> executions = CriteriaTestUtils.executionCounter();
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger released = new AtomicInteger();
+
+    private ExecutorService executor;
+
+    private final SessionProvider provider = new SessionProvider() {
+        @Override
+        public Session get() throws RepositoryException {
+            sessions.incrementAndGet();
+            return CriteriaTestUtils.countingExecutions(CriteriaTestUtils.getSession(), executions);
+        }
+
+        @Override
+        public void release(Session session) {
+            released.incrementAndGet();
+            SessionProvider.super.release(session);
+        }
+    };
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 20; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+        }
+        session.save();
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterClass
+    public void shutdown() {
+        executor.shutdown();
+        CriteriaTestUtils.shutdown();
+    }
+
+    @BeforeMethod
+    public void reset() {
+        executions.clear();
+        sessions.set(0);
+        released.set(0);
+    }
+
+    @Test
+    public void deduplicated() {
+        List<ExecutableQuery> queries = Arrays.asList(
+            latest(10, 5),
+            latest(15, 5),
+            latest(10, 5),
+            latest(10, 3),
+            latest(15, 5),
+            latest(10, 5)
+        );
+        List<AdvancedResult> results = JCRCriteriaFactory.executeAll(queries, provider, 2, executor);
+        assertThat(results).hasSize(6);
+        assertThat(executions.values().stream().mapToInt(AtomicInteger::get).sum()).isEqualTo(3);
+        assertThat(sessions.get()).isLessThanOrEqualTo(2);
+
+        assertThat(first(results.get(0))).isEqualTo(10);
+        assertThat(first(results.get(1))).isEqualTo(15);
+        assertThat(first(results.get(2))).isEqualTo(10);
+        assertThat(results.get(3).getItems().getSize()).isEqualTo(3);
+        assertThat(results.get(5).getItems().getSize()).isEqualTo(5);
+
+        // a worker which didn't get any queries releases its session right away
+        assertThat(released.get()).isLessThan(sessions.get());
+        for (AdvancedResult result : results) {
+            result.close();
+        }
+        assertThat(released.get()).isEqualTo(sessions.get());
+    }
+
+    @Test
+    public void duplicates() throws Exception {
+        List<ExecutableQuery> queries = Arrays.asList(latest(10, 5), latest(10, 5));
+        List<AdvancedResult> results = JCRCriteriaFactory.executeAll(queries, provider, 2, executor);
+        assertThat(results.get(0)).isNotSameAs(results.get(1));
+        assertThat(executions.values().stream().mapToInt(AtomicInteger::get).sum()).isEqualTo(1);
+
+        ResultIterator<AdvancedResultItem> first = results.get(0).getItems();
+        assertThat(first.next().getProperty("long").getLong()).isEqualTo(10);
+        assertThat(results.get(1).stream().count()).isEqualTo(5);
+        assertThat(first.getPosition()).isEqualTo(1);
+        assertThat(first.next().getProperty("long").getLong()).isEqualTo(11);
+        assertThat(results.get(1).getTotalSize()).isEqualTo(10);
+
+        results.get(0).close();
+        assertThat(released.get()).isLessThan(sessions.get());
+        results.get(1).close();
+        assertThat(released.get()).isEqualTo(sessions.get());
+    }
+
+    @Test
+    public void direct() {
+        List<ExecutableQuery> queries = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            queries.add(new DirectJcrQuery(Criteria.Expression.sql2("SELECT * FROM [a] AS a WHERE a.[long] >= 18")));
+        }
+        queries.add(latest(18, 10));
+        List<AdvancedResult> results = JCRCriteriaFactory.executeAll(queries, provider);
+        assertThat(executions.values().stream().mapToInt(AtomicInteger::get).sum()).isEqualTo(2);
+        for (AdvancedResult result : results) {
+            assertThat(result.getItems().getSize()).isEqualTo(2);
+            result.close();
+        }
+        assertThat(released.get()).isEqualTo(sessions.get());
+    }
+
+    @Test
+    public void failure() {
+        List<ExecutableQuery> queries = Arrays.asList(
+            latest(10, 5),
+            new DirectJcrQuery(Criteria.Expression.sql2("SELECT * FROM syntax error")),
+            latest(15, 5)
+        );
+        assertThatThrownBy(() -> JCRCriteriaFactory.executeAll(queries, provider, 2, executor))
+            .isInstanceOf(RuntimeException.class);
+        assertThat(released.get()).isEqualTo(sessions.get());
+    }
+
+    @Test
+    public void empty() {
+        assertThat(JCRCriteriaFactory.executeAll(Collections.emptyList(), provider)).isEmpty();
+        assertThat(sessions.get()).isEqualTo(0);
+    }
+
+    private static ExecutableQuery latest(long from, int max) {
+        return builder()
+            .type("a")
+            .add(ge(attr("long"), from))
+            .asc(attr("long"))
+            .maxResults(max)
+            .build();
+    }
+
+    private static long first(AdvancedResult result) {
+        try {
+            return result.getFirstResult().getProperty("long").getLong();
+        } catch (RepositoryException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
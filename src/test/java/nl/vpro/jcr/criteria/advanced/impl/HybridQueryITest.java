@@ -0,0 +1,153 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+import nl.vpro.jcr.criteria.query.PostFilterStrategy;
+import nl.vpro.jcr.criteria.query.criterion.MatchMode;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.*;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+public class HybridQueryITest {
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineOpenA();
+        for (int i = 0; i < 200; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+            n.setProperty("title", "title " + i + (i % 10 == 0 ? " round" : ""));
+            if (i % 4 == 0) {
+                n.setProperty("sparse", "x");
+            } else if (i % 4 == 2) {
+                n.setProperty("sparse", "y");
+            }
+        }
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @Test
+    public void plan() {
+        HybridQuery hybrid = HybridQuery.of(builder()
+            .type("a")
+            .add(ge(attr("long"), 10))
+            .add(like(attr("title"), "round", MatchMode.END))
+            .add(ne(attr("sparse"), "x"))
+            .postFilterStrategy(PostFilterStrategy.EXPENSIVE)
+            .build(), Query.JCR_SQL2);
+        assertThat(hybrid).isNotNull();
+        assertThat(hybrid.getPostFilters()).hasSize(2);
+        assertThat(hybrid.getPushdown().toSql2Expression().getStatement())
+            .isEqualTo("SELECT * from [a] as a WHERE [long] >= 10");
+
+        assertThat(HybridQuery.of(builder().add(ge(attr("long"), 10)).postFilterStrategy(PostFilterStrategy.EXPENSIVE).build(), Query.JCR_SQL2)).isNull();
+        assertThat(HybridQuery.of(builder().add(ne(attr("long"), 10)).build(), Query.JCR_SQL2)).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void xpathNegations() {
+        AdvancedCriteriaImpl criteria = builder()
+            .type("a")
+            .add(ge(attr("long"), 10))
+            .add(like(attr("title"), "round", MatchMode.END))
+            .add(ne(attr("sparse"), "x"))
+            .postFilterStrategy(PostFilterStrategy.EXPENSIVE)
+            .build();
+        // in xpath, @sparse != 'x' doesn't match nodes without the property, so it is left to the query engine
+        HybridQuery hybrid = HybridQuery.of(criteria, Query.XPATH);
+        assertThat(hybrid).isNotNull();
+        assertThat(hybrid.getPostFilters()).hasSize(1);
+        assertThat(HybridQuery.of(builder().type("a").add(ne(attr("sparse"), "x")).postFilterStrategy(PostFilterStrategy.EXPENSIVE).build(), Query.XPATH)).isNull();
+
+        assertSameResults(builder().type("a").add(ge(attr("long"), 150)).add(ne(attr("sparse"), "x")).asc(attr("long")), Query.XPATH);
+    }
+
+    @Test
+    public void sameResults() {
+        assertSameResults(builder().type("a").add(like(attr("title"), "round", MatchMode.END)).asc(attr("long")));
+        assertSameResults(builder().type("a").add(ge(attr("long"), 50)).add(not(eq(attr("sparse"), "x"))).desc(attr("long")));
+        assertSameResults(builder().type("a").add(lt(attr("long"), 100)).add(or(ne(attr("sparse"), "x"), eq(attr("long"), 4))).asc(attr("long")));
+    }
+
+    @Test
+    public void paged() {
+        for (int page = 1; page <= 5; page++) {
+            AdvancedCriteriaImpl.Builder builder = builder()
+                .type("a")
+                .add(like(attr("title"), "round", MatchMode.END))
+                .desc(attr("long"))
+                .paging(3, page);
+            AdvancedResult hybrid = builder.postFilterStrategy(PostFilterStrategy.EXPENSIVE).build().execute(session, Query.JCR_SQL2);
+            AdvancedResult whole = builder.postFilterStrategy(null).build().execute(session, Query.JCR_SQL2);
+            assertThat(handles(hybrid)).containsExactlyElementsOf(handles(whole));
+            assertThat(hybrid.hasNextPage()).isEqualTo(page < 7);
+            assertThat(hybrid.getTotalSize()).isEqualTo(20);
+            assertThat(hybrid.getNumberOfPages()).isEqualTo(7);
+        }
+    }
+
+    @Test
+    public void adaptiveBatches() {
+        Map<String, AtomicInteger> executions = executionCounter();
+        AdvancedResult result = builder()
+            .type("a")
+            .add(like(attr("title"), "round", MatchMode.END))
+            .asc(attr("long"))
+            .paging(5, 2)
+            .postFilterStrategy(PostFilterStrategy.EXPENSIVE)
+            .build()
+            .execute(countingExecutions(session, executions), Query.JCR_SQL2);
+        // rows 50 to 90 are on the second page, 1 in 10 rows match
+        assertThat(handles(result)).containsExactly("/n50", "/n60", "/n70", "/n80", "/n90");
+        assertThat(result.hasNextPage()).isTrue();
+        // first batch of 22 rows, then an estimate of the rest
+        assertThat(executions.values().stream().mapToInt(AtomicInteger::get).sum()).isEqualTo(2);
+    }
+
+    private void assertSameResults(AdvancedCriteriaImpl.Builder builder) {
+        assertSameResults(builder, Query.JCR_SQL2);
+    }
+
+    private void assertSameResults(AdvancedCriteriaImpl.Builder builder, String language) {
+        List<String> hybrid = handles(builder.postFilterStrategy(PostFilterStrategy.EXPENSIVE).build().execute(session, language));
+        List<String> whole = handles(builder.postFilterStrategy(null).build().execute(session, language));
+        assertThat(hybrid).isNotEmpty();
+        assertThat(hybrid).containsExactlyElementsOf(whole);
+    }
+
+    @SneakyThrows
+    private static List<String> handles(AdvancedResult result) {
+        List<String> handles = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            handles.add(item.getPath());
+        }
+        return handles;
+    }
+}
@@ -0,0 +1,190 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+import nl.vpro.jcr.criteria.query.criterion.Order;
+import nl.vpro.jcr.criteria.query.criterion.Restrictions;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.*;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class IdentifierLookupITest {
+
+    private final List<UUID> ids = new ArrayList<>();
+
+    private final List<String> paths = new ArrayList<>();
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int p = 0; p < 2; p++) {
+            Node parent = root.addNode("p" + p);
+            for (int i = 0; i < 10; i++) {
+                Node n = parent.addNode("n" + i);
+                n.setPrimaryType(i % 3 == 0 ? "nt:unstructured" : "a");
+                if (i != 5) {
+                    n.addMixin("mix:referenceable");
+                }
+                if (i != 7) {
+                    n.setProperty("long", (i * 7) % 5);
+                }
+                n.setProperty("title", "title " + (10 - i) + " " + p);
+                paths.add(n.getPath());
+            }
+        }
+        session.save();
+        for (String path : paths) {
+            ids.add(UUID.fromString(session.getNode(path).getIdentifier()));
+        }
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @DataProvider
+    public Object[][] language() {
+        return new Object[][] {{Query.JCR_SQL2}, {Query.XPATH}};
+    }
+
+    @Test(dataProvider = "language")
+    public void sameResultsAsQuery(String language) {
+        List<UUID> reversed = new ArrayList<>(ids);
+        Collections.reverse(reversed);
+        reversed.add(UUID.randomUUID());
+
+        assertSameResults(builder().add(Restrictions.in(reversed)), language, false);
+        assertSameResults(builder().type("a").add(Restrictions.in(reversed)), language, false);
+        assertSameResults(builder().add(Restrictions.in(reversed.get(3), reversed.get(3))), language, false);
+        assertSameResults(builder().add(Restrictions.in(UUID.randomUUID())), language, false);
+    }
+
+    @Test
+    public void sameResultsAsSql2Query() {
+        // is same is not supported by xpath, and the xpath rendering of a base path with a type is not accepted by jackrabbit
+        String language = Query.JCR_SQL2;
+        assertSameResults(builder().basePath("/p1").add(Restrictions.in(ids)), language, false);
+        assertSameResults(builder().basePath("/p1/").type("a").add(Restrictions.in(ids)), language, false);
+
+        assertSameResults(builder().add(Restrictions.isSame(paths.get(4))), language, false);
+        assertSameResults(builder().add(Restrictions.isSame("/notexisting")), language, false);
+        assertSameResults(builder().type("a").add(Restrictions.or(
+            Restrictions.isSame(paths.get(4)),
+            Restrictions.isSame(paths.get(3)),
+            Restrictions.in(ids.get(15), ids.get(4)))), language, false);
+    }
+
+    @Test(dataProvider = "language")
+    public void ordered(String language) {
+        assertSameResults(builder().add(Restrictions.in(ids)).asc(attr("long")).asc(attr("title")), language, true);
+        assertSameResults(builder().add(Restrictions.in(ids)).desc(attr("long")).asc(attr("title")), language, true);
+        assertSameResults(builder().add(Restrictions.in(ids)).desc(attr("title")), language, true);
+    }
+
+    @Test
+    public void paged() {
+        AdvancedResult result = builder()
+            .add(Restrictions.in(ids))
+            .directLookup(true)
+            .asc(attr("title"))
+            .paging(4, 2)
+            .build()
+            .execute(session, Query.JCR_SQL2);
+        // 18 referenceable nodes
+        assertThat(result.getTotalSize()).isEqualTo(18);
+        assertThat(result.getNumberOfPages()).isEqualTo(5);
+        assertThat(result.getPage()).isEqualTo(2);
+        assertThat(handles(result)).containsExactly("/p0/n8", "/p1/n8", "/p0/n7", "/p1/n7");
+    }
+
+    @Test
+    public void noQueryExecuted() {
+        Map<String, AtomicInteger> executions = executionCounter();
+        Session counting = countingExecutions(session, executions);
+        AdvancedResult result = builder()
+            .type("a")
+            .add(Restrictions.in(ids))
+            .directLookup(true)
+            .asc(attr("long"))
+            .build()
+            .execute(counting, Query.JCR_SQL2);
+        assertThat(result.getTotalSize()).isGreaterThan(0);
+        assertThat(handles(result)).isNotEmpty();
+        assertThat(executions).isEmpty();
+
+        builder().type("a").add(Restrictions.in(ids)).build().execute(counting, Query.JCR_SQL2).getTotalSize();
+        assertThat(executions).hasSize(1);
+    }
+
+    @Test
+    public void unsavedNodesAreNotFound() throws RepositoryException {
+        Node n = root.getNode("p0").addNode("new");
+        n.addMixin("mix:referenceable");
+        try {
+            AdvancedResult result = builder()
+                .add(Restrictions.in(UUID.fromString(n.getIdentifier())))
+                .directLookup(true)
+                .build()
+                .execute(session, Query.JCR_SQL2);
+            assertThat(result.getTotalSize()).isEqualTo(0);
+        } finally {
+            session.refresh(false);
+        }
+    }
+
+    @Test
+    public void notApplicable() {
+        assertThat(IdentifierLookup.of(builder().add(Restrictions.in(ids)).directLookup(true).build())).isNotNull();
+        assertThat(IdentifierLookup.of(builder().add(Restrictions.in(ids)).build())).isNull();
+        assertThat(IdentifierLookup.of(builder().directLookup(true).add(Restrictions.in(ids)).score().build())).isNull();
+        assertThat(IdentifierLookup.of(builder().directLookup(true).add(Restrictions.in(ids)).add(Order.asc("@jcr:path")).build())).isNull();
+        assertThat(IdentifierLookup.of(builder().directLookup(true).add(Restrictions.in(ids)).add(Restrictions.attrEq("title", "x")).build())).isNull();
+        assertThat(IdentifierLookup.of(builder().directLookup(true).add(Restrictions.in(new UUID[0])).build())).isNull();
+        assertThat(IdentifierLookup.of(builder().directLookup(true).add(Restrictions.in("@jcr:uuid", ids.get(0).toString())).build())).isNull();
+        assertThat(IdentifierLookup.of(builder().directLookup(true).add(Restrictions.isSame("/p0/*")).build())).isNull();
+        assertThat(IdentifierLookup.of(builder().directLookup(true).add(Restrictions.or(Restrictions.isSame("/p0"), Restrictions.isDescendantOf("/p1"))).build())).isNull();
+        assertThat(IdentifierLookup.of(builder().directLookup(true).add(Restrictions.or()).build())).isNull();
+    }
+
+    private void assertSameResults(AdvancedCriteriaImpl.Builder builder, String language, boolean ordered) {
+        List<String> direct = handles(builder.directLookup(true).build().execute(session, language));
+        List<String> query = handles(builder.directLookup(false).build().execute(session, language));
+        log.info("{}: {}", builder.build(), direct);
+        if (ordered) {
+            assertThat(direct).containsExactlyElementsOf(query);
+        } else {
+            assertThat(direct).containsExactlyInAnyOrderElementsOf(query);
+        }
+    }
+
+    @SneakyThrows
+    private static List<String> handles(AdvancedResult result) {
+        List<String> handles = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            handles.add(item.getPath());
+        }
+        return handles;
+    }
+}
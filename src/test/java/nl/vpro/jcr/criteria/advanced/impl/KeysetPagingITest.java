@@ -0,0 +1,166 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class KeysetPagingITest {
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 57; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            if (i % 10 != 3) {
+                n.setProperty("long", i % 7);
+            }
+            n.setProperty("title", "title " + (100 + (i * 31) % 57));
+            n.setProperty("media", "same");
+            if (i % 2 == 0) {
+                // ties between referenceable nodes are broken by jcr:uuid, the other ones by their identifiers in the cursor
+                n.addMixin("mix:referenceable");
+            }
+        }
+        Node ties = root.addNode("ties");
+        for (int i = 0; i < 60; i++) {
+            Node n = ties.addNode("n" + i);
+            n.addMixin("mix:referenceable");
+            n.setProperty("status", "published");
+        }
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @DataProvider
+    public Object[][] orders() {
+        return new Object[][] {
+            {"asc long, desc title", (Supplier<AdvancedCriteriaImpl.Builder>) () -> builder().type("a").asc(attr("long")).desc(attr("title")), true},
+            {"desc long, asc title", (Supplier<AdvancedCriteriaImpl.Builder>) () -> builder().type("a").desc(attr("long")).asc(attr("title")), true},
+            {"asc title", (Supplier<AdvancedCriteriaImpl.Builder>) () -> builder().type("a").asc(attr("title")), true},
+            // many ties, the order within them is up to the query engine
+            {"asc long", (Supplier<AdvancedCriteriaImpl.Builder>) () -> builder().type("a").asc(attr("long")), false},
+            {"desc long", (Supplier<AdvancedCriteriaImpl.Builder>) () -> builder().type("a").desc(attr("long")), false},
+            {"all the same", (Supplier<AdvancedCriteriaImpl.Builder>) () -> builder().type("a").asc(attr("media")), false},
+        };
+    }
+
+    @Test(dataProvider = "orders")
+    public void pageThroughAll(String description, Supplier<AdvancedCriteriaImpl.Builder> builder, boolean unique) {
+        List<String> expected = handles(builder.get().build().execute(session, Query.JCR_SQL2));
+        assertThat(expected).hasSize(57);
+
+        for (int pageSize : new int[] {1, 5, 20, 57, 100}) {
+            List<String> paged = new ArrayList<>();
+            AdvancedResult page = builder.get().paging(pageSize, 1).build().execute(session, Query.JCR_SQL2);
+            int pages = 0;
+            while (true) {
+                pages++;
+                List<String> handles = handles(page);
+                assertThat(handles.size()).isLessThanOrEqualTo(pageSize);
+                assertThat(page.getTotalSize()).isEqualTo(57);
+                paged.addAll(handles);
+                String cursor = page.getNextCursor();
+                if (cursor == null) {
+                    break;
+                }
+                page = builder.get().maxResults(pageSize).searchAfter(cursor).build().execute(session, Query.JCR_SQL2);
+            }
+            log.info("{}: {} pages of {}", description, pages, pageSize);
+            assertThat(pages).isBetween(57 / pageSize, 57 / pageSize + 2);
+            if (unique) {
+                assertThat(paged).containsExactlyElementsOf(expected);
+            } else {
+                assertThat(paged).doesNotHaveDuplicates();
+                assertThat(paged).containsExactlyInAnyOrderElementsOf(expected);
+            }
+        }
+    }
+
+    @Test
+    public void sameAsOffset() {
+        AdvancedResult first = builder().type("a").asc(attr("long")).desc(attr("title")).paging(10, 1).build().execute(session, Query.JCR_SQL2);
+        handles(first);
+        AdvancedResult second = builder().type("a").asc(attr("long")).desc(attr("title")).paging(10, 2).build().execute(session, Query.JCR_SQL2);
+        AdvancedResult afterFirst = builder().type("a").asc(attr("long")).desc(attr("title")).maxResults(10).searchAfter(first.getNextCursor()).build().execute(session, Query.JCR_SQL2);
+        assertThat(handles(afterFirst)).containsExactlyElementsOf(handles(second));
+    }
+
+    @Test
+    public void cursorDoesNotGrowWithTies() {
+        Supplier<AdvancedCriteriaImpl.Builder> builder = () -> builder().basePath("/ties").asc(attr("status"));
+        List<String> paged = new ArrayList<>();
+        List<Integer> tokenLengths = new ArrayList<>();
+        AdvancedResult page = builder.get().paging(5, 1).build().execute(session, Query.JCR_SQL2);
+        while (true) {
+            paged.addAll(handles(page));
+            String cursor = page.getNextCursor();
+            if (cursor == null) {
+                break;
+            }
+            tokenLengths.add(cursor.length());
+            page = builder.get().maxResults(5).searchAfter(cursor).build().execute(session, Query.JCR_SQL2);
+        }
+        assertThat(paged).hasSize(60).doesNotHaveDuplicates();
+        // only the tied rows of the offset paged first page are remembered, later pages are positioned by jcr:uuid
+        assertThat(tokenLengths.subList(1, tokenLengths.size())).allMatch(l -> l.equals(tokenLengths.get(1)));
+    }
+
+    @Test
+    public void noCursor() {
+        assertThat(builder().type("a").asc(attr("long")).build().execute(session, Query.JCR_SQL2).getNextCursor()).isNull();
+        assertThat(builder().type("a").paging(10, 1).build().execute(session, Query.JCR_SQL2).getNextCursor()).isNull();
+        assertThat(builder().type("a").score().paging(10, 1).build().execute(session, Query.JCR_SQL2).getNextCursor()).isNull();
+        assertThat(builder().type("a").asc(attr("long")).paging(10, 6).build().execute(session, Query.JCR_SQL2).getNextCursor()).isNull();
+    }
+
+    @Test
+    public void invalid() {
+        String cursor = builder().type("a").asc(attr("long")).paging(10, 1).build().execute(session, Query.JCR_SQL2).getNextCursor();
+        assertThat(cursor).isNotNull();
+        assertThatThrownBy(() -> builder().type("a").asc(attr("long")).asc(attr("title")).searchAfter(cursor).build().execute(session, Query.JCR_SQL2))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder().type("a").score().searchAfter(cursor).build().execute(session, Query.JCR_SQL2))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> builder().type("a").asc(attr("long")).searchAfter("foobar").build().execute(session, Query.JCR_SQL2))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @SneakyThrows
+    private static List<String> handles(AdvancedResult result) {
+        List<String> handles = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            handles.add(item.getPath());
+        }
+        return handles;
+    }
+}
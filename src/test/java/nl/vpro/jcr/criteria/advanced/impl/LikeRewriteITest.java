@@ -0,0 +1,142 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.*;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+import nl.vpro.jcr.criteria.query.criterion.MatchMode;
+import nl.vpro.jcr.criteria.query.criterion.Restrictions;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that rewriting a prefix LIKE to a range gives the same results. The size of the fixture can be set with the system
+ * property {@code likeRewriteITest.size} (e.g. to 100000 to see a significant difference in latency).
+ *
+ * @since 2.12
+ */
+@Slf4j
+public class LikeRewriteITest {
+
+    private static final int SIZE = Integer.getInteger("likeRewriteITest.size", 2000);
+
+    private final Map<String, String> titles = new HashMap<>();
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        Random random = new Random(1);
+        Node parent = root;
+        for (int i = 0; i < SIZE; i++) {
+            if (i % 1000 == 0) {
+                parent = root.addNode("p" + i);
+            }
+            Node n = parent.addNode("n" + i);
+            n.setPrimaryType("a");
+            String title = word(random) + (i % 10 == 0 ? "-" : " ") + word(random);
+            n.setProperty("title", title);
+            titles.put(n.getPath(), title);
+            if (i % 1000 == 999) {
+                session.save();
+            }
+        }
+        session.save();
+        log.info("Created {} nodes", SIZE);
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @DataProvider
+    public Object[][] prefixes() {
+        return new Object[][] {{"a"}, {"ab"}, {"kl"}, {"xyz"}, {"ba-"}, {"q"}};
+    }
+
+    @Test(dataProvider = "prefixes")
+    public void prefix(String prefix) {
+        Set<String> expected = new HashSet<>();
+        titles.forEach((path, title) -> {
+            if (title.startsWith(prefix)) {
+                expected.add(path);
+            }
+        });
+        // warm up
+        paths(prefix, false);
+        paths(prefix, true);
+
+        long start = System.nanoTime();
+        Set<String> like = paths(prefix, false);
+        Duration likeDuration = Duration.ofNanos(System.nanoTime() - start);
+        start = System.nanoTime();
+        Set<String> range = paths(prefix, true);
+        Duration rangeDuration = Duration.ofNanos(System.nanoTime() - start);
+        log.info("{}: {} results from {} nodes. LIKE: {}, range: {}", prefix, expected.size(), SIZE, likeDuration, rangeDuration);
+
+        assertThat(like).isEqualTo(expected);
+        assertThat(range).isEqualTo(expected);
+    }
+
+    @Test
+    public void equality() {
+        String title = titles.values().iterator().next();
+        Set<String> expected = new HashSet<>();
+        titles.forEach((path, t) -> {
+            if (t.equals(title)) {
+                expected.add(path);
+            }
+        });
+        Set<String> result = new HashSet<>();
+        for (AdvancedResultItem item : builder()
+            .type("a")
+            .add(Restrictions.like(attr("title"), title, MatchMode.NONE))
+            .build()
+            .execute(session, Query.JCR_SQL2)) {
+            result.add(handle(item));
+        }
+        assertThat(result).isEqualTo(expected);
+    }
+
+    private Set<String> paths(String prefix, boolean asRange) {
+        Set<String> result = new HashSet<>();
+        for (AdvancedResultItem item : builder()
+            .type("a")
+            .prefixLikeAsRange(asRange)
+            .add(Restrictions.like(attr("title"), prefix, MatchMode.START))
+            .build()
+            .execute(session, Query.JCR_SQL2)) {
+            result.add(handle(item));
+        }
+        return result;
+    }
+
+    @SneakyThrows
+    private static String handle(AdvancedResultItem item) {
+        return item.getPath();
+    }
+
+    private static String word(Random random) {
+        int length = 2 + random.nextInt(6);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,161 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.*;
+
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+import nl.vpro.jcr.criteria.query.ResultIterator;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Local paging (with {@code forcePagingWithDocumentOrder}) on a large subtree. The size of the subtree can be set with the
+ * system property {@code localPagingITest.size}.
+ *
+ * @since 2.12
+ */
+@Slf4j
+public class LocalPagingITest {
+
+    private static final int SIZE = Integer.getInteger("localPagingITest.size", 200_000);
+
+    private final List<String> paths = new ArrayList<>();
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        Node subtree = root.addNode("subtree");
+        Node parent = subtree;
+        for (int i = 0; i < SIZE; i++) {
+            if (i % 1000 == 0) {
+                parent = subtree.addNode("p" + i);
+            }
+            Node n = parent.addNode("n" + i);
+            n.setPrimaryType("a");
+            if (i % 1000 == 999) {
+                session.save();
+            }
+        }
+        root.addNode("other").addNode("n").setPrimaryType("a");
+        session.save();
+        log.info("Created {} nodes", SIZE);
+        for (AdvancedResultItem item : builder().basePath("/subtree").type("a").build().execute(session, Query.JCR_SQL2)) {
+            paths.add(item.getPath());
+        }
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @DataProvider
+    public Object[][] pages() {
+        int last = (SIZE + 9) / 10;
+        return new Object[][] {{1}, {2}, {last / 2}, {last}, {last + 1}};
+    }
+
+    @Test(dataProvider = "pages")
+    public void page(int page) {
+        AdvancedResultImpl result = (AdvancedResultImpl) builder()
+            .basePath("/subtree")
+            .type("a")
+            .paging(10, page)
+            .forcePagingWithDocumentOrder(true)
+            .build()
+            .execute(session, Query.JCR_SQL2);
+
+        List<String> expected = paths.subList(Math.min(SIZE, (page - 1) * 10), Math.min(SIZE, page * 10));
+        ResultIterator<AdvancedResultItem> items = result.getItems();
+        assertThat(items.getSize()).isEqualTo(expected.size());
+        assertThat(handles(result)).containsExactlyElementsOf(expected);
+        assertThat(result.getTotalSize()).isEqualTo(SIZE);
+        assertThat(result.getNumberOfPages()).isEqualTo((SIZE + 9) / 10);
+    }
+
+    @Test
+    public void totalSizeFirst() {
+        AdvancedResult result = builder()
+            .basePath("/subtree")
+            .type("a")
+            .paging(10, 3)
+            .forcePagingWithDocumentOrder(true)
+            .build()
+            .execute(session, Query.JCR_SQL2);
+        assertThat(result.getTotalSize()).isEqualTo(SIZE);
+        assertThat(handles(result)).containsExactlyElementsOf(paths.subList(20, 30));
+    }
+
+    @Test
+    public void offset() {
+        AdvancedResult result = builder()
+            .basePath("/subtree")
+            .type("a")
+            .offset(SIZE - 5)
+            .forcePagingWithDocumentOrder(true)
+            .build()
+            .execute(session, Query.JCR_SQL2);
+        assertThat(handles(result)).containsExactlyElementsOf(paths.subList(SIZE - 5, SIZE));
+        assertThat(result.getTotalSize()).isEqualTo(SIZE);
+    }
+
+    @Test
+    @SneakyThrows
+    public void unknownSize() {
+        // a result which doesn't know its size, and can only be consumed once
+        Iterator<Row> rows = builder().basePath("/subtree").type("a").build().execute(session, Query.JCR_SQL2).getItems(row -> row);
+        RowIterator once = new RowIteratorAdapter(rows);
+        assertThat(once.getSize()).isEqualTo(-1);
+        LocalPage page = new LocalPage(() -> new QueryResult() {
+            @Override
+            public String[] getColumnNames() {
+                return new String[0];
+            }
+            @Override
+            public RowIterator getRows() {
+                return once;
+            }
+            @Override
+            public NodeIterator getNodes() {
+                throw new UnsupportedOperationException();
+            }
+            @Override
+            public String[] getSelectorNames() {
+                return new String[] {NodeQueryResult.SELECTOR};
+            }
+        }, SIZE - 15, 10);
+        List<String> handles = new ArrayList<>();
+        RowIterator window = page.get().getRows();
+        assertThat(window.getSize()).isEqualTo(10);
+        while (window.hasNext()) {
+            handles.add(window.nextRow().getPath());
+        }
+        assertThat(handles).containsExactlyElementsOf(paths.subList(SIZE - 15, SIZE - 5));
+        assertThat(page.getTotalSize()).isEqualTo(SIZE);
+    }
+
+    @SneakyThrows
+    private static List<String> handles(AdvancedResult result) {
+        List<String> handles = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            handles.add(item.getPath());
+        }
+        return handles;
+    }
+}
@@ -0,0 +1,175 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.*;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @since 2.12
+ */
+public class MaterializedViewsITest {
+
+    private Session viewSession;
+
+    private MaterializedViews views;
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineOpenA();
+        Node news = root.addNode("news");
+        for (int i = 0; i < 20; i++) {
+            Node n = news.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("rank", i);
+            n.setProperty("published", i % 3 != 0);
+        }
+        root.addNode("archive");
+        session.save();
+        viewSession = getSession();
+        views = MaterializedViews.of(viewSession);
+    }
+
+    @AfterClass
+    public void shutdown() {
+        views.close();
+        viewSession.logout();
+        CriteriaTestUtils.shutdown();
+    }
+
+    @Test
+    public void register() throws RepositoryException {
+        MaterializedView view = views.register("latest", latest().build());
+        assertThat(views.get("latest")).isSameAs(view);
+        assertThat(view.getCount()).isEqualTo(13);
+        assertThat(view.getIdentifiers()).containsExactlyElementsOf(queried());
+        assertThat(paths(view.page(5, 1))).containsExactly("/news/n19", "/news/n17", "/news/n16", "/news/n14", "/news/n13");
+        assertThat(paths(view.page(5, 3))).containsExactly("/news/n4", "/news/n2", "/news/n1");
+        assertThat(view.getFirst()).isEqualTo(session.getNode("/news/n19").getIdentifier());
+
+        assertThatThrownBy(() -> views.register("contains", builder().add(contains(attr("title"), "x")).build()))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> views.register("score", builder().add(eq(attr("published"), true)).score().build()))
+            .isInstanceOf(IllegalArgumentException.class);
+        for (String basePath : new String[] {"/news//*", "/news/*", "//news/*"}) {
+            assertThatThrownBy(() -> views.register("xpath", latest().basePath(basePath).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        }
+        assertThat(views.getNames()).containsExactly("latest");
+    }
+
+    @Test(dependsOnMethods = "register")
+    public void execute() {
+        Map<String, AtomicInteger> executions = executionCounter();
+        AdvancedResult result = views.get("latest").execute(countingExecutions(session, executions), 5, 2);
+        assertThat(handles(result)).containsExactly("/news/n11", "/news/n10", "/news/n8", "/news/n7", "/news/n5");
+        assertThat(result.getTotalSize()).isEqualTo(13);
+        assertThat(result.hasNextPage()).isTrue();
+        assertThat(result.getNumberOfPages()).isEqualTo(3);
+        assertThat(views.get("latest").execute(session, 5, 3).hasNextPage()).isFalse();
+        assertThat(executions).isEmpty();
+    }
+
+    @Test(dependsOnMethods = "execute")
+    public void updates() throws Exception {
+        MaterializedView view = views.get("latest");
+
+        Node added = session.getNode("/news").addNode("added");
+        added.setPrimaryType("a");
+        added.setProperty("rank", 100);
+        added.setProperty("published", true);
+        session.save();
+        waitFor(() -> view.getCount() == 14);
+        assertThat(view.getFirst()).isEqualTo(added.getIdentifier());
+        assertThat(view.getIdentifiers()).containsExactlyElementsOf(queried());
+
+        session.getNode("/news/n3").setProperty("published", true);
+        session.getNode("/news/n19").setProperty("rank", -1);
+        session.getNode("/news/n17").setProperty("published", false);
+        session.save();
+        waitFor(() -> view.getIdentifiers().equals(queried()));
+        assertThat(view.getCount()).isEqualTo(14);
+
+        session.move("/news/n16", "/archive/n16");
+        session.getNode("/news/added").remove();
+        session.save();
+        waitFor(() -> view.getCount() == 12);
+        assertThat(view.getIdentifiers()).containsExactlyElementsOf(queried());
+
+        session.move("/archive/n16", "/news/n16");
+        session.save();
+        waitFor(() -> view.getCount() == 13);
+        assertThat(view.getIdentifiers()).containsExactlyElementsOf(queried());
+    }
+
+    @Test(dependsOnMethods = "updates")
+    public void unregister() {
+        assertThat(views.unregister("latest")).isNotNull();
+        assertThat(views.get("latest")).isNull();
+        assertThat(views.getNames()).isEmpty();
+    }
+
+    private static AdvancedCriteriaImpl.Builder latest() {
+        return builder()
+            .type("a")
+            .basePath("/news")
+            .add(eq(attr("published"), true))
+            .desc(attr("rank"));
+    }
+
+    @SneakyThrows
+    private static List<String> queried() {
+        List<String> identifiers = new ArrayList<>();
+        for (AdvancedResultItem item : latest().build().execute(session, Query.JCR_SQL2)) {
+            identifiers.add(item.getIdentifier());
+        }
+        return identifiers;
+    }
+
+    @SneakyThrows
+    private static List<String> paths(List<String> identifiers) {
+        List<String> paths = new ArrayList<>();
+        for (String identifier : identifiers) {
+            paths.add(session.getNodeByIdentifier(identifier).getPath());
+        }
+        return paths;
+    }
+
+    @SneakyThrows
+    private static List<String> handles(AdvancedResult result) {
+        List<String> handles = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            handles.add(item.getPath());
+        }
+        return handles;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @since 2.12
+ */
+public class MemoizedQueryResultTest {
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    private MemoizedQueryResult result;
+
+    @BeforeMethod
+    public void setup() {
+        executions.set(0);
+        result = MemoizedQueryResult.of(() -> {
+            executions.incrementAndGet();
+            List<Row> rows = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                rows.add(new NodeQueryResult.NodeRow(null, i));
+            }
+            return new OnceQueryResult(NodeQueryResult.ofRows(rows));
+        });
+    }
+
+    @Test
+    public void streamed() throws RepositoryException {
+        assertThat(result.getSize()).isEqualTo(5);
+        RowIterator rows = result.getRows();
+        rows.skip(2);
+        assertThat(scores(rows)).containsExactly(2.0, 3.0, 4.0);
+        assertThat(rows.getPosition()).isEqualTo(5);
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shared() throws RepositoryException {
+        RowIterator first = result.getRows();
+        RowIterator second = result.getRows();
+        assertThat(first.nextRow().getScore()).isEqualTo(0.0);
+        assertThat(scores(second)).containsExactly(0.0, 1.0, 2.0, 3.0, 4.0);
+        assertThat(scores(first)).containsExactly(1.0, 2.0, 3.0, 4.0);
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void replayed() throws RepositoryException {
+        RowIterator first = result.getRows();
+        first.skip(1);
+        assertThat(first.nextRow().getScore()).isEqualTo(1.0);
+        assertThat(scores(result.getRows())).containsExactly(0.0, 1.0, 2.0, 3.0, 4.0);
+        assertThat(scores(first)).containsExactly(2.0, 3.0, 4.0);
+        assertThat(scores(result.getRows())).containsExactly(0.0, 1.0, 2.0, 3.0, 4.0);
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void inMemory() throws RepositoryException {
+        MemoizedQueryResult nodes = MemoizedQueryResult.of(() -> {
+            executions.incrementAndGet();
+            return NodeQueryResult.ofRows(List.of(new NodeQueryResult.NodeRow(null, 0), new NodeQueryResult.NodeRow(null, 1)));
+        });
+        assertThat(scores(nodes.getRows())).containsExactly(0.0, 1.0);
+        assertThat(scores(nodes.getRows())).containsExactly(0.0, 1.0);
+        assertThat(nodes.getSize()).isEqualTo(2);
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void failed() {
+        MemoizedQueryResult failing = MemoizedQueryResult.of(() -> {
+            executions.incrementAndGet();
+            throw new IllegalStateException();
+        });
+        assertThatThrownBy(failing::get).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(failing::get).isInstanceOf(IllegalStateException.class);
+        assertThat(failing.getState()).isEqualTo(MemoizedQueryResult.State.FAILED);
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    private static List<Double> scores(RowIterator rows) throws RepositoryException {
+        List<Double> scores = new ArrayList<>();
+        while (rows.hasNext()) {
+            scores.add(rows.nextRow().getScore());
+        }
+        return scores;
+    }
+
+    /**
+     * Like the result of a jcr query, this can only be iterated once
+     */
+    private static class OnceQueryResult implements QueryResult {
+
+        private final QueryResult result;
+
+        private boolean iterated;
+
+        private OnceQueryResult(QueryResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public String[] getColumnNames() throws RepositoryException {
+            return result.getColumnNames();
+        }
+
+        @Override
+        public RowIterator getRows() throws RepositoryException {
+            if (iterated) {
+                throw new RepositoryException("Iterated already");
+            }
+            iterated = true;
+            return result.getRows();
+        }
+
+        @Override
+        public NodeIterator getNodes() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] getSelectorNames() throws RepositoryException {
+            return result.getSelectorNames();
+        }
+    }
+}
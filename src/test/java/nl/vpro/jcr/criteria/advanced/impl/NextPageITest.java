@@ -0,0 +1,120 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.*;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class NextPageITest {
+
+    /**
+     * Fails if the total size would be needed
+     */
+    private static final TotalSizeStrategy NO_COUNT = context -> {
+        throw new AssertionError("Total size determined");
+    };
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 25; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+        }
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @DataProvider
+    public Object[][] language() {
+        return new Object[][] {{Query.JCR_SQL2}, {Query.XPATH}};
+    }
+
+    @Test(dataProvider = "language")
+    public void hasNextPage(String language) {
+        assertNextPage(execute(builder().paging(10, 1), language), 10, true);
+        assertNextPage(execute(builder().paging(10, 2), language), 10, true);
+        assertNextPage(execute(builder().paging(10, 3), language), 5, false);
+        assertNextPage(execute(builder().paging(5, 5), language), 5, false);
+        assertNextPage(execute(builder().paging(25, 1), language), 25, false);
+    }
+
+    @Test
+    public void prepared() {
+        for (int i = 0; i < 2; i++) {
+            assertNextPage(execute(builder().paging(10, 2).bindVariables(true), Query.JCR_SQL2), 10, true);
+            assertNextPage(execute(builder().paging(10, 3).bindVariables(true), Query.JCR_SQL2), 5, false);
+        }
+    }
+
+    @Test
+    public void localPaging() {
+        assertNextPage(execute(builder().paging(10, 2).forcePagingWithDocumentOrder(true), Query.JCR_SQL2), 10, true);
+        assertNextPage(execute(builder().paging(10, 3).forcePagingWithDocumentOrder(true), Query.JCR_SQL2), 5, false);
+    }
+
+    @Test
+    public void keyset() {
+        AdvancedResult first = execute(builder().maxResults(10), Query.JCR_SQL2);
+        AdvancedResult second = execute(builder().maxResults(10).searchAfter(first.getNextCursor()), Query.JCR_SQL2);
+        assertNextPage(second, 10, true);
+        AdvancedResult third = execute(builder().maxResults(10).searchAfter(second.getNextCursor()), Query.JCR_SQL2);
+        assertNextPage(third, 5, false);
+    }
+
+    @Test
+    public void notPaged() {
+        assertThat(execute(builder(), Query.JCR_SQL2).hasNextPage()).isFalse();
+        assertThat(AdvancedResult.EMPTY_RESULT.hasNextPage()).isFalse();
+    }
+
+    @Test
+    public void itemsDontContainExtraRow() {
+        AdvancedResult result = builder().type("a").asc(attr("long")).paging(10, 1).build().execute(session, Query.JCR_SQL2);
+        assertThat(result.getTotalSize()).isEqualTo(25);
+        assertThat(result.getItems().getSize()).isEqualTo(10);
+        assertThat(result.stream().map(AdvancedResultItem::getHandle)).endsWith("/n9");
+        assertThat(result.hasNextPage()).isTrue();
+    }
+
+    private AdvancedResult execute(AdvancedCriteriaImpl.Builder builder, String language) {
+        return builder.type("a")
+            .asc(attr("long"))
+            .totalSizeStrategy(NO_COUNT)
+            .build()
+            .execute(session, language);
+    }
+
+    private static void assertNextPage(AdvancedResult result, int size, boolean next) {
+        assertThat(result.hasNextPage()).isEqualTo(next);
+        int count = 0;
+        ResultIterator<AdvancedResultItem> items = result.getItems();
+        while (items.hasNext()) {
+            items.next();
+            count++;
+        }
+        assertThat(count).isEqualTo(size);
+    }
+}
@@ -0,0 +1,38 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+public class ObservedPathsTest {
+
+    @Test
+    public void fixedPrefix() {
+        assertThat(ObservedPaths.fixedPrefix(null)).isEqualTo("/");
+        assertThat(ObservedPaths.fixedPrefix("//*")).isEqualTo("/");
+        assertThat(ObservedPaths.fixedPrefix("/")).isEqualTo("/");
+        assertThat(ObservedPaths.fixedPrefix("/site")).isEqualTo("/site");
+        assertThat(ObservedPaths.fixedPrefix("/site/")).isEqualTo("/site");
+        assertThat(ObservedPaths.fixedPrefix("/site//*")).isEqualTo("/site");
+        assertThat(ObservedPaths.fixedPrefix("/site/a/*")).isEqualTo("/site/a");
+        assertThat(ObservedPaths.fixedPrefix("/site/*/b")).isEqualTo("/site");
+        assertThat(ObservedPaths.fixedPrefix("/*/b")).isEqualTo("/");
+        assertThat(ObservedPaths.fixedPrefix("//Criteria/AbstractCriteriaImpl/*")).isEqualTo("/");
+        assertThat(ObservedPaths.fixedPrefix("//Criteria/X//*")).isEqualTo("/");
+    }
+
+    @Test
+    public void isFixed() {
+        assertThat(ObservedPaths.isFixed(null)).isTrue();
+        assertThat(ObservedPaths.isFixed("//*")).isTrue();
+        assertThat(ObservedPaths.isFixed("/site")).isTrue();
+        assertThat(ObservedPaths.isFixed("/site/")).isTrue();
+        assertThat(ObservedPaths.isFixed("/site//*")).isFalse();
+        assertThat(ObservedPaths.isFixed("/site/*")).isFalse();
+        assertThat(ObservedPaths.isFixed("//site")).isFalse();
+        assertThat(ObservedPaths.isFixed("site")).isFalse();
+    }
+}
@@ -0,0 +1,162 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.SessionProvider;
+import nl.vpro.jcr.criteria.query.TotalSizeStrategy;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class ParallelCountITest {
+
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger released = new AtomicInteger();
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+
+    private ExecutorService executor;
+
+    private final SessionProvider provider = new SessionProvider() {
+        @Override
+        public Session get() throws RepositoryException {
+            sessions.incrementAndGet();
+            threads.add(Thread.currentThread().getName());
+            return CriteriaTestUtils.getSession();
+        }
+
+        @Override
+        public void release(Session session) {
+            released.incrementAndGet();
+            SessionProvider.super.release(session);
+        }
+    };
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 30; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+        }
+        session.save();
+        executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "count"));
+    }
+
+    @AfterClass
+    public void shutdown() {
+        executor.shutdown();
+        CriteriaTestUtils.shutdown();
+    }
+
+    @BeforeMethod
+    public void reset() {
+        sessions.set(0);
+        released.set(0);
+        submitted.set(0);
+        threads.clear();
+    }
+
+    @DataProvider
+    public Object[][] language() {
+        return new Object[][] {{Query.JCR_SQL2}, {Query.XPATH}};
+    }
+
+    @Test(dataProvider = "language")
+    public void parallel(String language) {
+        AdvancedResult result = criteria(true).build().execute(session, language);
+        // started while executing, not when the total size is needed
+        assertThat(submitted.get()).isEqualTo(1);
+        assertThat(result.getItems().getSize()).isEqualTo(10);
+        assertThat(result.getTotalSize()).isEqualTo(30);
+        assertThat(result.getNumberOfPages()).isEqualTo(3);
+        assertThat(sessions.get()).isEqualTo(1);
+        assertThat(released.get()).isEqualTo(1);
+        assertThat(threads).containsExactly("count");
+    }
+
+    @Test
+    public void countLimit() {
+        AdvancedResult result = criteria(true).countLimit(15).build().execute(session, Query.JCR_SQL2);
+        assertThat(result.getTotal().toString()).isEqualTo("15+");
+        assertThat(released.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void notNeeded() {
+        assertThat(criteria(false).build().execute(session, Query.JCR_SQL2).getTotalSize()).isEqualTo(30);
+        criteria(true).totalSizeStrategy(TotalSizeStrategy.UNKNOWN).build().execute(session, Query.JCR_SQL2);
+        assertThat(submitted.get()).isEqualTo(0);
+        assertThat(sessions.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void noExecutor() {
+        AdvancedResult result = criteria(true).countExecutor(null).build().execute(session, Query.JCR_SQL2);
+        assertThat(result.getTotalSize()).isEqualTo(30);
+        assertThat(sessions.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void failure() {
+        AdvancedResult result = criteria(true)
+            .countSessionProvider(() -> {
+                throw new RepositoryException("no session");
+            })
+            .build()
+            .execute(session, Query.JCR_SQL2);
+        assertThat(result.getItems().getSize()).isEqualTo(10);
+        assertThatThrownBy(result::getTotalSize)
+            .isInstanceOf(RuntimeException.class)
+            .hasRootCauseInstanceOf(RepositoryException.class);
+    }
+
+    @Test
+    public void copied() {
+        AdvancedCriteriaImpl criteria = criteria(true).build();
+        AdvancedCriteriaImpl copy = criteria.copy(c -> c);
+        assertThat(copy.getCountSessionProvider()).isSameAs(provider);
+        assertThat(copy.getCountExecutor()).isNotNull();
+    }
+
+    private AdvancedCriteriaImpl.Builder criteria(boolean paged) {
+        AdvancedCriteriaImpl.Builder builder = builder()
+            .type("a")
+            .asc(attr("long"))
+            .countSessionProvider(provider)
+            .countExecutor(command -> {
+                submitted.incrementAndGet();
+                executor.execute(command);
+            });
+        if (paged) {
+            builder.paging(10, 2);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,50 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+public class PathTrieTest {
+
+    @Test
+    public void collect() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.add("/", "root");
+        trie.add("/a", "a");
+        trie.add("/a/b", "ab");
+        trie.add("/a/b/c", "abc");
+        trie.add("/a/d", "ad");
+        trie.add("/e", "e");
+
+        assertThat(collect(trie, "/a/b")).containsExactly("a", "ab", "abc", "root");
+        assertThat(collect(trie, "/a/b/x/y")).containsExactly("a", "ab", "root");
+        assertThat(collect(trie, "/a")).containsExactly("a", "ab", "abc", "ad", "root");
+        assertThat(collect(trie, "/x")).containsExactly("root");
+        assertThat(collect(trie, "/")).hasSize(6);
+        assertThat(collect(trie, "/a/b[2]/jcr:title")).containsExactly("a", "ab", "root");
+    }
+
+    @Test
+    public void remove() {
+        PathTrie<String> trie = new PathTrie<>();
+        trie.add("/a/b", "1");
+        trie.add("/a/b", "2");
+        trie.remove("/a/b", "1");
+        assertThat(collect(trie, "/a")).containsExactly("2");
+        trie.remove("/a/b", "2");
+        trie.remove("/x", "3");
+        assertThat(trie.isEmpty()).isTrue();
+    }
+
+    private static Set<String> collect(PathTrie<String> trie, String path) {
+        Set<String> result = new TreeSet<>();
+        trie.collect(path, result);
+        return result;
+    }
+}
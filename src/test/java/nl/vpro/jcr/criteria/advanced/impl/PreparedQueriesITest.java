@@ -0,0 +1,177 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.criterion.Restrictions;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.*;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class PreparedQueriesITest {
+
+    @BeforeMethod
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        PreparedQueries.clear();
+        for (int i = 0; i < 10; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+            n.setProperty("title", "title " + (i % 2 == 0 ? "even" : "odd") + " " + i);
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set(2019, Calendar.JANUARY, 1 + i);
+            n.setProperty("date", calendar);
+        }
+        session.save();
+    }
+
+    @AfterMethod
+    public void shutdown() {
+        PreparedQueries.clear();
+        CriteriaTestUtils.shutdown();
+    }
+
+    @Test
+    public void render() {
+        Criteria.Expression expression = builder()
+            .type("a")
+            .bindVariables(true)
+            .add(attrEq("title", "foo"))
+            .add(Restrictions.gt(attr("long"), 5L))
+            .add(Restrictions.like(attr("title"), "bar"))
+            .build()
+            .toSql2Expression();
+        assertThat(expression.getStatement()).isEqualTo("SELECT * from [a] as a WHERE ([title] = $v0 AND [long] > $v1 AND [title] LIKE $v2)");
+        assertThat(expression.getBindVariables()).containsOnlyKeys("v0", "v1", "v2");
+    }
+
+    @Test
+    public void sameResultsAsInlined() {
+        assertSameResults(builder().type("a").asc(attr("long")).add(attrEq("title", "title even 4")));
+        assertSameResults(builder().type("a").asc(attr("long")).add(Restrictions.gt(attr("long"), 5L)));
+        assertSameResults(builder().type("a").asc(attr("long")).add(Restrictions.like(attr("title"), "odd")));
+        assertSameResults(builder().type("a").asc(attr("long")).add(Restrictions.contains(attr("title"), "even")));
+        assertSameResults(builder().type("a").asc(attr("long")).add(Restrictions.not(attrEq("long", 3L))));
+        assertSameResults(builder()
+            .type("a")
+            .asc(attr("long"))
+            .timeZone(ZoneId.systemDefault())
+            .add(between(attr("date"), LocalDate.of(2019, 1, 3), LocalDate.of(2019, 1, 6))));
+    }
+
+    @Test
+    public void reuse() {
+        Map<String, AtomicInteger> executions = executionCounter();
+        Map<String, AtomicInteger> creations = executionCounter();
+        Session counting = countingExecutions(session, executions, creations);
+        for (long i = 0; i < 10; i++) {
+            AdvancedResult result = builder()
+                .type("a")
+                .bindVariables(true)
+                .add(attrEq("long", i))
+                .build()
+                .execute(counting, Query.JCR_SQL2);
+            assertThat(names(result)).containsExactly("n" + i);
+        }
+        log.info("{} {}", creations, executions);
+        assertThat(creations).hasSize(1);
+        assertThat(creations.values().iterator().next().get()).isEqualTo(1);
+        assertThat(executions.values().iterator().next().get()).isEqualTo(10);
+        assertThat(PreparedQueries.size(counting)).isEqualTo(1);
+    }
+
+    @Test
+    public void loggedOut() throws RepositoryException {
+        Session other = getSession();
+        builder().type("a").bindVariables(true).add(attrEq("long", 1L)).build().execute(other, Query.JCR_SQL2).getItems().getSize();
+        assertThat(PreparedQueries.size(other)).isEqualTo(1);
+        other.logout();
+
+        builder().type("a").bindVariables(true).add(attrEq("long", 1L)).build().execute(session, Query.JCR_SQL2).getItems().getSize();
+        assertThat(PreparedQueries.size(other)).isEqualTo(0);
+        assertThat(PreparedQueries.sessions()).isEqualTo(1);
+    }
+
+    @Test
+    public void bounded() {
+        PreparedQueries.setMaxQueriesPerSession(3);
+        try {
+            for (int i = 0; i < 5; i++) {
+                // different statements
+                builder().type("a").bindVariables(true).add(attrEq("p" + i, 1L)).build().execute(session, Query.JCR_SQL2).getItems().getSize();
+            }
+            assertThat(PreparedQueries.size(session)).isEqualTo(3);
+        } finally {
+            PreparedQueries.setMaxQueriesPerSession(64);
+        }
+    }
+
+    @Test
+    public void reusePaged() {
+        for (int page = 1; page <= 3; page++) {
+            AdvancedResult result = builder()
+                .type("a")
+                .bindVariables(true)
+                .asc(attr("long"))
+                .add(Restrictions.ge(attr("long"), 2L))
+                .paging(3, page)
+                .build()
+                .execute(session, Query.JCR_SQL2);
+            assertThat(names(result)).hasSize(page < 3 ? 3 : 2);
+            assertThat(result.getTotalSize()).isEqualTo(8);
+        }
+        AdvancedResult unpaged = builder()
+            .type("a")
+            .bindVariables(true)
+            .asc(attr("long"))
+            .add(Restrictions.ge(attr("long"), 2L))
+            .build()
+            .execute(session, Query.JCR_SQL2);
+        assertThat(names(unpaged)).hasSize(8);
+    }
+
+    private void assertSameResults(AdvancedCriteriaImpl.Builder builder) {
+        List<String> inlined = names(builder.bindVariables(false).build().execute(session, Query.JCR_SQL2));
+        List<String> bound = names(builder.bindVariables(true).build().execute(session, Query.JCR_SQL2));
+        log.info("{}", bound);
+        assertThat(inlined).isNotEmpty();
+        assertThat(bound).containsExactlyElementsOf(inlined);
+    }
+
+    @SneakyThrows
+    private List<String> names(AdvancedResult result) {
+        List<String> names = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            names.add(item.getName());
+        }
+        return names;
+    }
+}
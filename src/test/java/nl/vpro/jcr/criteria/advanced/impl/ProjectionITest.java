@@ -0,0 +1,144 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.*;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+import javax.jcr.query.Row;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.Projection;
+import nl.vpro.jcr.criteria.query.ResultIterator;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class ProjectionITest {
+
+    private static final Instant NOW = Instant.parse("2024-03-01T12:00:00Z");
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 20; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+            if (i % 5 != 0) {
+                n.setProperty("title", "title " + i);
+            }
+            Calendar date = Calendar.getInstance();
+            date.setTimeInMillis(NOW.plusSeconds(60L * i).toEpochMilli());
+            n.setProperty("date", date);
+        }
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @DataProvider
+    public Object[][] language() {
+        return new Object[][] {{Query.JCR_SQL2}, {Query.XPATH}};
+    }
+
+    @Test(dataProvider = "language")
+    public void toMap(String language) {
+        Projection<Map<String, Object>> projection = Projection.toMap("title", "long", "date");
+        AdvancedResult result = builder()
+            .type("a")
+            .asc(attr("long"))
+            .paging(5, 1)
+            .projection(projection)
+            .build()
+            .execute(session, language);
+        List<Map<String, Object>> maps = new ArrayList<>();
+        ResultIterator<Map<String, Object>> items = result.getItems(projection);
+        while (items.hasNext()) {
+            maps.add(items.next());
+        }
+        assertThat(maps).hasSize(5);
+        assertThat(maps.get(0)).containsOnlyKeys(Projection.PATH, "long", "date");
+        assertThat(maps.get(1)).containsExactly(
+            entry(Projection.PATH, "/n1"),
+            entry("title", "title 1"),
+            entry("long", 1L),
+            entry("date", NOW.plusSeconds(60)));
+        assertThat(result.getTotalSize()).isEqualTo(20);
+    }
+
+    @Test
+    public void statement() {
+        AdvancedCriteriaImpl criteria = builder()
+            .type("a")
+            .projection(Projection.toMap("title", "date"))
+            .build();
+        assertThat(criteria.toSql2Expression().getStatement()).isEqualTo("SELECT a.[title] AS [title],a.[date] AS [date] from [a] as a");
+    }
+
+    @Test
+    public void nodesNotUsed() {
+        Projection<Item> projection = Projection.of(values -> new Item(values.getPath(), values.getString("title"), values.getInstant("date")), "title", "date");
+        AdvancedResult result = builder()
+            .type("a")
+            .desc(attr("long"))
+            .projection(projection)
+            .build()
+            .execute(session, Query.JCR_SQL2);
+        List<Item> list = new ArrayList<>();
+        ResultIterator<Item> items = result.getItems(row -> projection.apply(withoutNode(row)));
+        while (items.hasNext()) {
+            list.add(items.next());
+        }
+        assertThat(list).hasSize(20);
+        assertThat(list.get(0)).isEqualTo(new Item("/n19", "title 19", NOW.plusSeconds(60 * 19)));
+        assertThat(list.get(15)).isEqualTo(new Item("/n4", "title 4", NOW.plusSeconds(60 * 4)));
+        assertThat(list.get(19)).isEqualTo(new Item("/n0", null, NOW));
+    }
+
+    /**
+     * Wraps the row, failing on access to its node.
+     */
+    private static Row withoutNode(Row row) {
+        return (Row) Proxy.newProxyInstance(Row.class.getClassLoader(), new Class<?>[]{Row.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getNode")) {
+                throw new AssertionError("The node should not be needed");
+            }
+            try {
+                return method.invoke(row, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private static Map.Entry<String, Object> entry(String key, Object value) {
+        return new AbstractMap.SimpleEntry<>(key, value);
+    }
+
+    @lombok.Value
+    static class Item {
+        String path;
+        String title;
+        Instant date;
+    }
+}
@@ -0,0 +1,152 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.*;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class QueryCoalescerITest {
+
+    private static final int FOLLOWERS = 5;
+
+    private final Map<String, AtomicInteger> executions = executionCounter();
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 20; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+        }
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @BeforeMethod
+    public void reset() {
+        executions.clear();
+    }
+
+    @DataProvider
+    public Object[][] language() {
+        return new Object[][] {{Query.JCR_SQL2}, {Query.XPATH}};
+    }
+
+    @Test(dataProvider = "language")
+    public void coalesced(String language) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        Session leaderSession = countingExecutions(getSession(), executions, executionCounter(), () -> {
+            started.countDown();
+            try {
+                proceed.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        FutureTask<List<String>> leader = start(leaderSession, language);
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        List<Thread> threads = new ArrayList<>();
+        List<FutureTask<List<String>>> followers = new ArrayList<>();
+        for (int i = 0; i < FOLLOWERS; i++) {
+            FutureTask<List<String>> task = new FutureTask<>(execution(countingExecutions(getSession(), executions), language));
+            Thread thread = new Thread(task);
+            thread.start();
+            threads.add(thread);
+            followers.add(task);
+        }
+        // wait until all followers are waiting for the execution of the leader
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!threads.stream().allMatch(t -> t.getState() == Thread.State.WAITING) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(QueryCoalescer.getInstance().getInFlight()).isEqualTo(1);
+        proceed.countDown();
+
+        List<String> expected = leader.get(10, TimeUnit.SECONDS);
+        assertThat(expected).containsExactly("/n5", "/n6", "/n7", "/n8", "/n9");
+        for (FutureTask<List<String>> follower : followers) {
+            assertThat(follower.get(10, TimeUnit.SECONDS)).isEqualTo(expected);
+        }
+        assertThat(executions.values().stream().mapToInt(AtomicInteger::get).sum()).isEqualTo(1);
+        assertThat(QueryCoalescer.getInstance().getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void sequential() throws Exception {
+        Session countingSession = countingExecutions(session, executions);
+        AdvancedResult first = criteria().build().execute(countingSession, Query.JCR_SQL2);
+        assertThat(first.getItems().getSize()).isEqualTo(5);
+        AdvancedResult second = criteria().build().execute(countingSession, Query.JCR_SQL2);
+        assertThat(second.getItems().getSize()).isEqualTo(5);
+        assertThat(executions.values().stream().mapToInt(AtomicInteger::get).sum()).isEqualTo(2);
+    }
+
+    @Test
+    public void result() throws Exception {
+        AdvancedResult result = criteria().build().execute(session, Query.JCR_SQL2);
+        assertThat(result.hasNextPage()).isTrue();
+        assertThat(result.getTotalSize()).isEqualTo(20);
+        AdvancedResultItem item = result.getFirstResult();
+        assertThat(item.getProperty("long").getLong()).isEqualTo(5);
+        assertThat(item.getScore()).isGreaterThan(0);
+
+        AdvancedResult last = builder().type("a").asc(attr("long")).paging(5, 4).coalesce(true).build().execute(session, Query.JCR_SQL2);
+        assertThat(last.hasNextPage()).isFalse();
+    }
+
+    private static AdvancedCriteriaImpl.Builder criteria() {
+        return builder()
+            .type("a")
+            .asc(attr("long"))
+            .paging(5, 2)
+            .coalesce(true);
+    }
+
+    private static FutureTask<List<String>> start(Session session, String language) {
+        FutureTask<List<String>> task = new FutureTask<>(execution(session, language));
+        new Thread(task).start();
+        return task;
+    }
+
+    private static Callable<List<String>> execution(Session session, String language) {
+        return () -> criteria().build().execute(session, language)
+            .stream()
+            .map(AdvancedResultItem::getHandle)
+            .collect(Collectors.toList());
+    }
+}
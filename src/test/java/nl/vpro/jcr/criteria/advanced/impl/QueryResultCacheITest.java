@@ -0,0 +1,303 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.criterion.Restrictions;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.*;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class QueryResultCacheITest {
+
+    private final Map<String, AtomicInteger> executions = executionCounter();
+
+    private Session countingSession;
+
+    private QueryResultCache cache;
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        for (String parent : new String[] {"news", "other", "sentinel"}) {
+            Node p = root.addNode(parent);
+            for (int i = 0; i < 10; i++) {
+                Node n = p.addNode("n" + i);
+                n.setProperty("long", i);
+                n.setProperty("title", i % 2 == 0 ? "even" : "odd");
+            }
+        }
+        Node sub = root.addNode("tmp").addNode("sub");
+        for (int i = 0; i < 3; i++) {
+            sub.addNode("n" + i).setProperty("long", i);
+        }
+        session.save();
+        countingSession = countingExecutions(session, executions);
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @BeforeMethod
+    public void reset() throws RepositoryException {
+        executions.clear();
+        cache = new QueryResultCache(100, Duration.ofMinutes(10)).listenTo(session);
+    }
+
+    @AfterMethod
+    public void close() {
+        cache.close();
+    }
+
+    @Test
+    public void hit() {
+        List<String> first = paths(execute("/news", 5));
+        List<String> second = paths(execute("/news", 5));
+        assertThat(second).isEqualTo(first).hasSize(5);
+        assertThat(executions()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void totalSize() {
+        AdvancedResult first = execute("/news", 3);
+        assertThat(first.getTotalSize()).isEqualTo(7);
+        assertThat(first.hasNextPage()).isTrue();
+        // the page query and the count query
+        assertThat(executions()).isEqualTo(2);
+
+        AdvancedResult second = execute("/news", 3);
+        assertThat(second.getTotalSize()).isEqualTo(7);
+        assertThat(second.hasNextPage()).isTrue();
+        assertThat(executions()).isEqualTo(2);
+    }
+
+    @Test
+    public void invalidation() throws Exception {
+        assertThat(paths(execute("/news", 0))).contains("/news/n3");
+        execute("/other", 5).getItems().getSize();
+        assertThat(cache.size()).isEqualTo(2);
+
+        session.getNode("/news/n3").setProperty("long", 10);
+        session.save();
+        waitFor(() -> cache.size() == 1);
+
+        assertThat(paths(execute("/news", 0))).doesNotContain("/news/n3");
+        execute("/other", 5).getItems().getSize();
+        assertThat(executions()).isEqualTo(3);
+
+        session.getNode("/news/n3").setProperty("long", 3);
+        session.save();
+    }
+
+    @Test
+    public void unrelatedChange() throws Exception {
+        execute("/news", 5).getItems().getSize();
+        execute("/sentinel", 5).getItems().getSize();
+
+        session.getNode("/other/n1").setProperty("changed", true);
+        session.getNode("/sentinel/n1").setProperty("changed", true);
+        session.save();
+        // events are delivered in order, so after the sentinel was invalidated, the change in /other was seen too
+        waitFor(() -> cache.size() == 1);
+
+        execute("/news", 5).getItems().getSize();
+        assertThat(executions()).isEqualTo(2);
+    }
+
+    @Test
+    public void ancestorRemoved() throws Exception {
+        assertThat(execute("/tmp/sub", 0).getItems().getSize()).isEqualTo(3);
+        assertThat(cache.size()).isEqualTo(1);
+
+        session.getNode("/tmp").remove();
+        session.save();
+        waitFor(() -> cache.size() == 0);
+        assertThat(execute("/tmp/sub", 0).getItems().getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void wildcardBasePath() throws Exception {
+        for (String basePath : new String[] {"/news//*", "//news/*"}) {
+            assertThat(paths(executeXpath(basePath))).contains("/news/n4");
+            assertThat(paths(executeXpath(basePath))).contains("/news/n4");
+            assertThat(executions()).isEqualTo(1);
+            assertThat(cache.size()).isEqualTo(1);
+
+            session.getNode("/news/n4").setProperty("long", -1);
+            session.save();
+            waitFor(() -> cache.size() == 0);
+            assertThat(paths(executeXpath(basePath))).doesNotContain("/news/n4");
+
+            session.getNode("/news/n4").setProperty("long", 4);
+            session.save();
+            waitFor(() -> cache.size() == 0);
+            executions.clear();
+        }
+    }
+
+    @Test
+    public void expired() throws Exception {
+        cache.close();
+        cache = new QueryResultCache(100, Duration.ofMillis(50));
+        execute("/news", 5).getItems().getSize();
+        execute("/news", 5).getItems().getSize();
+        assertThat(executions()).isEqualTo(1);
+        Thread.sleep(100);
+        execute("/news", 5).getItems().getSize();
+        assertThat(executions()).isEqualTo(2);
+    }
+
+    @Test
+    public void bounded() {
+        cache.close();
+        cache = new QueryResultCache(2, Duration.ofMinutes(10));
+        for (long from = 0; from < 5; from++) {
+            execute("/news", from).getItems().getSize();
+        }
+        assertThat(cache.size()).isEqualTo(2);
+        execute("/news", 4).getItems().getSize();
+        execute("/news", 0).getItems().getSize();
+        assertThat(executions()).isEqualTo(6);
+    }
+
+    @Test
+    public void subsumption() {
+        cache.setSubsumption(true);
+        assertThat(paths(broad().asc(attr("long")).build().execute(countingSession, Query.JCR_SQL2))).hasSize(10);
+        assertThat(executions()).isEqualTo(1);
+
+        AdvancedResult page = broad()
+            .asc(attr("long"))
+            .add(between(attr("long"), 2, 6))
+            .paging(2, 2)
+            .build()
+            .execute(countingSession, Query.JCR_SQL2);
+        assertThat(paths(page)).containsExactly("/news/n4", "/news/n5");
+        assertThat(page.getTotalSize()).isEqualTo(5);
+        assertThat(page.hasNextPage()).isTrue();
+
+        AdvancedResult reordered = broad()
+            .add(between(attr("long"), 2, 6))
+            .add(ne(attr("long"), 4))
+            .desc(attr("long"))
+            .build()
+            .execute(countingSession, Query.JCR_SQL2);
+        assertThat(paths(reordered)).containsExactly("/news/n6", "/news/n5", "/news/n3", "/news/n2");
+        assertThat(executions()).isEqualTo(1);
+
+        // narrower criteria can be paged themselves
+        AdvancedResult narrowPage = broad().asc(attr("long")).add(eq(attr("long"), 3)).paging(1, 1).build().execute(countingSession, Query.JCR_SQL2);
+        assertThat(paths(narrowPage)).containsExactly("/news/n3");
+        assertThat(executions()).isEqualTo(1);
+
+        // other base path
+        broad().basePath("/other").add(eq(attr("long"), 3)).build().execute(countingSession, Query.JCR_SQL2).getItems().getSize();
+        assertThat(executions()).isEqualTo(2);
+
+        // a paged result is not complete, so it doesn't answer narrower criteria
+        cache.clear();
+        broad().asc(attr("long")).paging(5, 1).build().execute(countingSession, Query.JCR_SQL2).getItems().getSize();
+        broad().asc(attr("long")).add(eq(attr("long"), 3)).build().execute(countingSession, Query.JCR_SQL2).getItems().getSize();
+        assertThat(executions()).isEqualTo(4);
+    }
+
+    @Test
+    public void subsumptionNotEvaluable() {
+        cache.setSubsumption(true);
+        broad().build().execute(countingSession, Query.JCR_SQL2).getItems().getSize();
+        AdvancedResult result = broad()
+            .add(Restrictions.contains(attr("title"), "odd"))
+            .build()
+            .execute(countingSession, Query.JCR_SQL2);
+        assertThat(paths(result)).hasSize(5);
+        assertThat(executions()).isEqualTo(2);
+    }
+
+    @Test
+    public void subsumptionInvalidated() throws Exception {
+        cache.setSubsumption(true);
+        broad().build().execute(countingSession, Query.JCR_SQL2).getItems().getSize();
+        session.getNode("/news/n1").setProperty("changed", true);
+        session.save();
+        waitFor(() -> cache.size() == 0);
+        broad().add(eq(attr("long"), 1)).build().execute(countingSession, Query.JCR_SQL2).getItems().getSize();
+        assertThat(executions()).isEqualTo(2);
+    }
+
+    private AdvancedCriteriaImpl.Builder broad() {
+        return builder()
+            .fromUnstructured()
+            .basePath("/news")
+            .resultCache(cache);
+    }
+
+    private AdvancedResult execute(String basePath, long from) {
+        return builder()
+            .fromUnstructured()
+            .basePath(basePath)
+            .add(ge(attr("long"), from))
+            .asc(attr("long"))
+            .paging(5, 1)
+            .resultCache(cache)
+            .build()
+            .execute(countingSession, Query.JCR_SQL2);
+    }
+
+    /**
+     * Criteria only take node paths as base path, so an xpath expression as base path is executed via the cache itself.
+     */
+    private AdvancedResult executeXpath(String basePath) {
+        return cache.execute(
+            Criteria.Expression.xpath("/jcr:root" + basePath + "[@long >= 0]"),
+            () -> -1,
+            countingSession,
+            null,
+            0,
+            basePath,
+            null,
+            false);
+    }
+
+    private int executions() {
+        return executions.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    private static List<String> paths(AdvancedResult result) {
+        return result.stream().map(AdvancedResultItem::getHandle).collect(Collectors.toList());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.SneakyThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+import nl.vpro.jcr.criteria.query.criterion.Criterion;
+import nl.vpro.jcr.criteria.query.criterion.MatchMode;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.*;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @since 2.12
+ */
+public class SubtreeSnapshotITest {
+
+    private final Map<String, AtomicInteger> executions = executionCounter();
+
+    private Session snapshotSession;
+
+    private SubtreeSnapshot snapshot;
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineOpenA();
+        Node config = root.addNode("config");
+        for (int i = 0; i < 30; i++) {
+            Node n = config.addNode("n" + i);
+            n.setPrimaryType(i % 3 == 0 ? "a" : "nt:unstructured");
+            n.setProperty("long", i % 7);
+            n.setProperty("double", i / 4.0);
+            n.setProperty("title", "title " + i);
+            if (i % 5 == 0) {
+                n.setProperty("tags", new String[] {"t" + (i % 2), "all"});
+                // the query engine returns nodes which are equal on all orders in an undefined order, so the children get their own
+                Node child = n.addNode("child");
+                child.setProperty("long", i);
+                child.setProperty("double", 10.0 + i);
+                child.setProperty("title", "child " + i);
+            }
+        }
+        root.addNode("other").addNode("n").setProperty("long", 3);
+        session.save();
+        snapshotSession = getSession();
+        snapshot = SubtreeSnapshot.of(snapshotSession, "/config");
+    }
+
+    @AfterClass
+    public void shutdown() {
+        snapshot.close();
+        snapshotSession.logout();
+        CriteriaTestUtils.shutdown();
+    }
+
+    @BeforeMethod
+    public void reset() {
+        executions.clear();
+    }
+
+    @DataProvider
+    public Object[][] criterions() {
+        return new Object[][] {
+            {eq(attr("long"), 3)},
+            {eq(attr("long"), 3.0)},
+            {eq(attr("long"), "3")},
+            {gt(attr("long"), 4)},
+            {le(attr("double"), 2)},
+            {between(attr("long"), 2, 4)},
+            {between(attr("double"), 1, false, 3, false)},
+            {in(attr("tags"), "t1")},
+            {eq(attr("tags"), "all")},
+            {between(attr("tags"), "t0", "t0")},
+            {ne(attr("long"), 3)},
+            {and(eq(attr("long"), 3), gt(attr("double"), 2))},
+            {or(eq(attr("long"), 3), eq(attr("title"), "title 4"))},
+            {or(eq(attr("long"), 3), isNull(attr("tags")))},
+            {like(attr("title"), "1", MatchMode.END)},
+            {isChildOf("/config")},
+        };
+    }
+
+    @Test(dataProvider = "criterions")
+    public void sameResults(Criterion criterion) {
+        assertSameResults(builder().basePath("/config").add(criterion).asc(attr("title")));
+        assertSameResults(builder().basePath("/config").type("a").add(criterion).desc(attr("long")).asc(attr("title")));
+    }
+
+    @Test
+    public void paged() {
+        for (int page = 1; page <= 4; page++) {
+            AdvancedCriteriaImpl.Builder builder = builder()
+                .basePath("/config")
+                .add(ge(attr("long"), 2))
+                .asc(attr("double"))
+                .paging(5, page);
+            AdvancedResult snapshotted = builder.snapshot(snapshot).build().execute(countingExecutions(session, executions), Query.JCR_SQL2);
+            AdvancedResult whole = builder.snapshot(null).build().execute(session, Query.JCR_SQL2);
+            assertThat(handles(snapshotted)).containsExactlyElementsOf(handles(whole));
+            assertThat(snapshotted.getTotalSize()).isEqualTo(whole.getTotalSize());
+            assertThat(snapshotted.hasNextPage()).isEqualTo(whole.hasNextPage());
+        }
+        assertThat(executions).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void notCovered() {
+        assertThat(snapshot.covers(builder().basePath("/config").add(eq(attr("long"), 1)).snapshot(snapshot).build())).isTrue();
+        assertThat(snapshot.covers(builder().basePath("/config/n5").add(eq(attr("long"), 1)).snapshot(snapshot).build())).isTrue();
+        assertThat(snapshot.covers(builder().basePath("/other").add(eq(attr("long"), 1)).build())).isFalse();
+        assertThat(snapshot.covers(builder().add(eq(attr("long"), 1)).build())).isFalse();
+        assertThat(snapshot.covers(builder().basePath("/config").add(contains(attr("title"), "x")).build())).isFalse();
+        assertThat(snapshot.covers(builder().basePath("/config").add(eq("child/@long", 1)).build())).isFalse();
+        assertThat(snapshot.covers(builder().basePath("/config").score().build())).isFalse();
+        assertThat(snapshot.covers(builder().basePath("/config//*").add(eq(attr("long"), 1)).build())).isFalse();
+        assertThat(snapshot.covers(builder().basePath("/config/*").add(eq(attr("long"), 1)).build())).isFalse();
+        assertThat(snapshot.covers(builder().basePath("//config/*").add(eq(attr("long"), 1)).build())).isFalse();
+        assertThat(snapshot.covers(builder().basePath("/config").add(ne(attr("long"), 1)).build(), Query.JCR_SQL2)).isTrue();
+        assertThat(snapshot.covers(builder().basePath("/config").add(ne(attr("long"), 1)).build(), Query.XPATH)).isFalse();
+        assertThat(snapshot.covers(builder().basePath("/config").add(not(eq(attr("long"), 1))).build(), Query.XPATH)).isFalse();
+
+        handles(builder().basePath("/other").add(eq(attr("long"), 3)).snapshot(snapshot).build().execute(countingExecutions(session, executions), Query.JCR_SQL2));
+        assertThat(executions).hasSize(1);
+    }
+
+    @Test
+    public void xpathBasePath() throws RepositoryException {
+        Session rootSession = getSession();
+        try (SubtreeSnapshot everything = SubtreeSnapshot.of(rootSession, "/")) {
+            assertThat(everything.covers(builder().basePath("/config").add(eq(attr("long"), 1)).build())).isTrue();
+            assertThat(everything.covers(builder().add(eq(attr("long"), 1)).build())).isTrue();
+            assertThat(everything.covers(builder().basePath("//config/*").add(eq(attr("long"), 1)).build())).isFalse();
+            assertThat(everything.covers(builder().basePath("//config//*").add(eq(attr("long"), 1)).build())).isFalse();
+        } finally {
+            rootSession.logout();
+        }
+        assertThatThrownBy(() -> SubtreeSnapshot.of(snapshotSession, "/config//*")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void candidates() throws RepositoryException {
+        assertThat(snapshot.candidates(builder().basePath("/config").add(eq(attr("long"), 3)).build())).hasSize(4);
+        assertThat(snapshot.candidates(builder().basePath("/config").add(between(attr("long"), 3, 4)).build())).hasSize(8);
+        assertThat(snapshot.candidates(builder().basePath("/config").type("a").add(eq(attr("long"), 3)).build())).hasSize(2);
+        assertThat(snapshot.candidates(builder().basePath("/config").add(ne(attr("long"), 3)).build())).hasSize(36);
+    }
+
+    @Test
+    public void updates() throws Exception {
+        AdvancedCriteriaImpl.Builder builder = builder().basePath("/config").add(eq(attr("title"), "changed")).snapshot(snapshot);
+        assertThat(handles(builder.build().execute(session, Query.JCR_SQL2))).isEmpty();
+
+        session.getNode("/config/n1").setProperty("title", "changed");
+        session.getNode("/config").addNode("added").setProperty("title", "changed");
+        session.save();
+        waitFor(() -> snapshot.size() == 37);
+        waitFor(() -> handles(builder.build().execute(session, Query.JCR_SQL2)).size() == 2);
+        assertThat(handles(builder.build().execute(session, Query.JCR_SQL2))).containsExactly("/config/n1", "/config/added");
+
+        session.getNode("/config/added").remove();
+        session.getNode("/config/n1").setProperty("title", "title 1");
+        session.save();
+        waitFor(() -> snapshot.size() == 36);
+        waitFor(() -> handles(builder.build().execute(session, Query.JCR_SQL2)).isEmpty());
+        assertThat(executions).isEmpty();
+    }
+
+    private void assertSameResults(AdvancedCriteriaImpl.Builder builder) {
+        executions.clear();
+        List<String> snapshotted = handles(builder.snapshot(snapshot).build().execute(countingExecutions(session, executions), Query.JCR_SQL2));
+        List<String> whole = handles(builder.snapshot(null).build().execute(session, Query.JCR_SQL2));
+        assertThat(snapshotted).containsExactlyElementsOf(whole);
+        assertThat(executions).isEmpty();
+    }
+
+    @SneakyThrows
+    private static List<String> handles(AdvancedResult result) {
+        List<String> handles = new ArrayList<>();
+        for (AdvancedResultItem item : result) {
+            handles.add(item.getPath());
+        }
+        return handles;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
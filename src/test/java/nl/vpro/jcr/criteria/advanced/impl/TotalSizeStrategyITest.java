@@ -0,0 +1,205 @@
+package nl.vpro.jcr.criteria.advanced.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.query.AdvancedResult;
+import nl.vpro.jcr.criteria.query.TotalSizeStrategy;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class TotalSizeStrategyITest {
+
+    private final AtomicInteger counts = new AtomicInteger();
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        CriteriaTestUtils.defineA();
+        for (int i = 0; i < 30; i++) {
+            Node n = root.addNode("n" + i);
+            n.setPrimaryType("a");
+            n.setProperty("long", i);
+        }
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @BeforeMethod
+    public void reset() {
+        counts.set(0);
+    }
+
+    @DataProvider
+    public Object[][] language() {
+        return new Object[][] {{Query.JCR_SQL2}, {Query.XPATH}};
+    }
+
+    @Test(dataProvider = "language")
+    public void defaultStrategy(String language) {
+        AdvancedResult result = execute(TotalSizeStrategy.DEFAULT, language, true);
+        assertThat(result.getTotalSize()).isEqualTo(30);
+        assertThat(result.getNumberOfPages()).isEqualTo(3);
+        // the query results of this repository don't know their total size if they are paged
+        assertThat(counts.get()).isEqualTo(1);
+    }
+
+    @Test(dataProvider = "language")
+    public void queryResult(String language) {
+        AdvancedResult result = execute(TotalSizeStrategy.QUERY_RESULT, language, true);
+        assertThat(result.getTotalSize()).isEqualTo(-1);
+        assertThat(counts.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void queryResultWithTotalSize() {
+        AdvancedResultImpl result = new AdvancedResultImpl(WithTotalSize::new, () -> {
+            throw new AssertionError();
+        }, 10, 1, null, null, false, 0);
+        assertThat(result.setTotalSizeStrategy(TotalSizeStrategy.QUERY_RESULT).getTotalSize()).isEqualTo(42);
+        assertThat(TotalSizeStrategy.QUERY_RESULT.getTotalSize(context(new WithTotalSize()))).isEqualTo(42);
+        assertThat(TotalSizeStrategy.QUERY_RESULT.getTotalSize(context(NodeQueryResult.ofNodes(Collections.emptyList())))).isEqualTo(-1);
+    }
+
+    @Test(dataProvider = "language")
+    public void countQuery(String language) {
+        assertThat(execute(TotalSizeStrategy.COUNT_QUERY, language, true).getTotalSize()).isEqualTo(30);
+        assertThat(counts.get()).isEqualTo(1);
+
+        assertThat(execute(TotalSizeStrategy.COUNT_QUERY, language, false).getTotalSize()).isEqualTo(30);
+        assertThat(counts.get()).isEqualTo(1);
+    }
+
+    @Test(dataProvider = "language")
+    public void unknown(String language) {
+        AdvancedResult result = execute(TotalSizeStrategy.UNKNOWN, language, true);
+        assertThat(result.getItems().getSize()).isEqualTo(10);
+        assertThat(result.getTotalSize()).isEqualTo(-1);
+        assertThat(counts.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void copied() {
+        AdvancedCriteriaImpl criteria = builder().type("a").totalSizeStrategy(TotalSizeStrategy.UNKNOWN).build();
+        assertThat(criteria.copy(c -> c).getTotalSizeStrategy()).isSameAs(TotalSizeStrategy.UNKNOWN);
+        assertThat(criteria.setTotalSizeStrategy(null).execute(session, Query.JCR_SQL2).getTotalSize()).isEqualTo(30);
+    }
+
+    private AdvancedResult execute(TotalSizeStrategy strategy, String language, boolean paged) {
+        AdvancedCriteriaImpl.Builder builder = builder()
+            .type("a")
+            .asc(attr("long"))
+            .totalSizeStrategy(counting(strategy));
+        if (paged) {
+            builder.paging(10, 2);
+        }
+        return builder.build().execute(session, language);
+    }
+
+    private static TotalSizeStrategy.Context context(QueryResult result) {
+        return new TotalSizeStrategy.Context() {
+            @Override
+            public QueryResult getQueryResult() {
+                return result;
+            }
+
+            @Override
+            public boolean isPaged() {
+                return true;
+            }
+
+            @Override
+            public long getSize() {
+                throw new AssertionError();
+            }
+
+            @Override
+            public long count() {
+                throw new AssertionError();
+            }
+        };
+    }
+
+    /**
+     * Like jackrabbit's query results
+     */
+    public static class WithTotalSize implements QueryResult {
+
+        public int getTotalSize() {
+            return 42;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return new String[0];
+        }
+
+        @Override
+        public RowIterator getRows() {
+            return new RowIteratorAdapter(Collections.emptyList());
+        }
+
+        @Override
+        public NodeIterator getNodes() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String[] getSelectorNames() {
+            return new String[] {NodeQueryResult.SELECTOR};
+        }
+    }
+
+    /**
+     * Wraps the strategy, counting the number of count queries it executes
+     */
+    private TotalSizeStrategy counting(TotalSizeStrategy strategy) {
+        return context -> strategy.getTotalSize(new TotalSizeStrategy.Context() {
+            @Override
+            public QueryResult getQueryResult() {
+                return context.getQueryResult();
+            }
+
+            @Override
+            public boolean isPaged() {
+                return context.isPaged();
+            }
+
+            @Override
+            public long getSize() {
+                return context.getSize();
+            }
+
+            @Override
+            public long count() {
+                counts.incrementAndGet();
+                return context.count();
+            }
+        });
+    }
+}
@@ -0,0 +1,164 @@
+package nl.vpro.jcr.criteria.query.criterion;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+import org.testng.annotations.*;
+
+import nl.vpro.jcr.criteria.CriteriaTestUtils;
+import nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl;
+import nl.vpro.jcr.criteria.query.AdvancedResultItem;
+
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.root;
+import static nl.vpro.jcr.criteria.CriteriaTestUtils.session;
+import static nl.vpro.jcr.criteria.query.JCRCriteriaFactory.builder;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that {@link Criterion#matches(Node, nl.vpro.jcr.criteria.query.Criteria)} is consistent with the query engine.
+ * @since 2.12
+ */
+@Slf4j
+public class MatchesITest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Amsterdam");
+
+    private static final Instant START = LocalDate.of(2020, 1, 1).atStartOfDay(ZONE).toInstant();
+
+    @BeforeClass
+    public void setup() throws RepositoryException {
+        CriteriaTestUtils.setup();
+        Node parent = root.addNode("m");
+        for (int i = 0; i < 10; i++) {
+            Node n = parent.addNode("n" + i);
+            if (i < 9) {
+                n.setProperty("long", i);
+            }
+            n.setProperty("double", i / 2.0);
+            n.setProperty("title", "t" + i);
+            n.setProperty("flag", i % 2 == 0);
+            n.setProperty("date", java.util.GregorianCalendar.from(START.plusSeconds(i * 86400L).atZone(ZONE)));
+            if (i % 2 == 0) {
+                n.setProperty("tags", new String[]{"a" + (i % 3), "b"});
+            }
+        }
+        session.save();
+    }
+
+    @AfterClass
+    public void shutdown() {
+        CriteriaTestUtils.shutdown();
+    }
+
+    @DataProvider
+    public Object[][] criterions() {
+        return new Object[][] {
+            {eq(attr("long"), 3)},
+            {ne(attr("long"), 3)},
+            {gt(attr("long"), 3)},
+            {ge(attr("long"), 3)},
+            {lt(attr("long"), 3)},
+            {le(attr("long"), 3)},
+            {eq(attr("long"), 3.0)},
+            {gt(attr("double"), 2)},
+            {le(attr("double"), 2.5)},
+            {le(attr("long"), 2.5)},
+            {gt(attr("title"), 3)},
+            {eq(attr("double"), new BigDecimal("2.5"))},
+            {eq(attr("long"), BigDecimal.valueOf(3))},
+            {eq(attr("title"), "t4")},
+            {ne(attr("title"), "t4")},
+            {gt(attr("title"), "t4")},
+            {eq(attr("flag"), true)},
+            {ne(attr("flag"), true)},
+            {eq(attr("tags"), "b")},
+            {eq(attr("tags"), "a1")},
+            {ne(attr("tags"), "a1")},
+            {eq(attr("missing"), "x")},
+            {ne(attr("missing"), "x")},
+            {eq(attr("date"), START.plusSeconds(86400))},
+            {gt(attr("date"), java.util.GregorianCalendar.from(START.plusSeconds(3 * 86400).atZone(ZONE)))},
+            {between(attr("long"), 2, 5)},
+            {between(attr("long"), 2, false, 5, false)},
+            {between(attr("title"), "t2", "t5")},
+            {between(attr("date"), START, START.plusSeconds(2 * 86400))},
+            {between(attr("date"), LocalDate.of(2020, 1, 2), LocalDate.of(2020, 1, 4))},
+            {in(attr("title"), "t1", "t3", "x")},
+            {in(attr("tags"), "a2", "a0")},
+            {in(attr("title"), "T4")},
+            {eq(attr("jcr:primaryType"), "nt:unstructured")},
+            {like(attr("title"), "1", MatchMode.END)},
+            {like(attr("title"), "t", MatchMode.START)},
+            {like(attr("title"), "t_")},
+            {like(attr("tags"), "a", MatchMode.START)},
+            {isNull(attr("long"))},
+            {isNotNull(attr("tags"))},
+            {not(eq(attr("long"), 3))},
+            {not(isNull(attr("tags")))},
+            {and(gt(attr("long"), 2), lt(attr("double"), 3))},
+            {or(eq(attr("long"), 2), isNull(attr("long")))},
+            {or(and(eq(attr("flag"), true), gt(attr("long"), 4)), eq(attr("title"), "t1"))},
+            {isFalsy(attr("tags"))},
+            {isChildOf("/m")},
+            {isDescendantOf("/m")},
+            {isSame("/m/n3")},
+            {name("n5")},
+        };
+    }
+
+    @Test(dataProvider = "criterions")
+    public void matches(Criterion criterion) throws RepositoryException {
+        AdvancedCriteriaImpl criteria = builder()
+            .fromUnstructured()
+            .basePath("/m")
+            .timeZone(ZONE)
+            .add(criterion)
+            .build();
+        Set<String> expected = criteria.execute(session, Query.JCR_SQL2)
+            .stream()
+            .map(AdvancedResultItem::getHandle)
+            .collect(Collectors.toCollection(TreeSet::new));
+        Set<String> actual = new TreeSet<>();
+        for (NodeIterator nodes = session.getNode("/m").getNodes(); nodes.hasNext(); ) {
+            Node node = nodes.nextNode();
+            if (criterion.matches(node, criteria)) {
+                actual.add(node.getPath());
+            }
+        }
+        log.info("{}: {}", criterion, actual);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void notEvaluable() throws RepositoryException {
+        contains(attr("title"), "t1").matches(session.getNode("/m/n1"), builder().build());
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void notEvaluableIn() throws RepositoryException {
+        in(attr("title"), "t1 t3").matches(session.getNode("/m/n1"), builder().build());
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void notEvaluableInJunction() throws RepositoryException {
+        and(eq(attr("long"), 1), contains(attr("title"), "t1")).matches(session.getNode("/m/n1"), builder().build());
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void childProperty() throws RepositoryException {
+        eq("child/@title", "t1").matches(session.getNode("/m/n1"), builder().build());
+    }
+}
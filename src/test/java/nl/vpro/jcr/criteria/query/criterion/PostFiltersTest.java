@@ -0,0 +1,84 @@
+package nl.vpro.jcr.criteria.query.criterion;
+
+import javax.jcr.query.Query;
+
+import org.testng.annotations.Test;
+
+import nl.vpro.jcr.criteria.query.PostFilterStrategy;
+
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+public class PostFiltersTest {
+
+    @Test
+    public void evaluable() {
+        assertThat(PostFilters.isEvaluable(eq(attr("a"), "x"))).isTrue();
+        assertThat(PostFilters.isEvaluable(like(attr("a"), "x"))).isTrue();
+        assertThat(PostFilters.isEvaluable(not(isNull(attr("a"))))).isTrue();
+        assertThat(PostFilters.isEvaluable(or(eq(attr("a"), "x"), isChildOf("/x")))).isTrue();
+        assertThat(PostFilters.isEvaluable(contains(attr("a"), "x"))).isFalse();
+        assertThat(PostFilters.isEvaluable(in(attr("a"), "x", "y"))).isTrue();
+        assertThat(PostFilters.isEvaluable(in(attr("a"), "x y", "z"))).isFalse();
+        assertThat(PostFilters.isEvaluable(eq("child/@a", "x"))).isFalse();
+        assertThat(PostFilters.isEvaluable(and(eq(attr("a"), "x"), contains(attr("b"), "x")))).isFalse();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void evaluableInLanguage() {
+        assertThat(PostFilters.isEvaluable(ne(attr("a"), "x"), Query.JCR_SQL2)).isTrue();
+        assertThat(PostFilters.isEvaluable(not(eq(attr("a"), "x")), Query.JCR_SQL2)).isTrue();
+        assertThat(PostFilters.isEvaluable(ne(attr("a"), "x"), Query.XPATH)).isFalse();
+        assertThat(PostFilters.isEvaluable(not(eq(attr("a"), "x")), Query.XPATH)).isFalse();
+        assertThat(PostFilters.isEvaluable(or(eq(attr("a"), "x"), ne(attr("b"), "x")), Query.XPATH)).isFalse();
+        assertThat(PostFilters.isEvaluable(eq(attr("a"), "x"), Query.XPATH)).isTrue();
+        assertThat(PostFilters.isEvaluable(contains(attr("a"), "x"), Query.JCR_SQL2)).isFalse();
+    }
+
+    @Test
+    public void propertyName() {
+        assertThat(PostFilters.propertyName("@a")).isEqualTo("a");
+        assertThat(PostFilters.propertyName("mgnl:created")).isEqualTo("mgnl:created");
+        assertThat(PostFilters.propertyName("child/@a")).isNull();
+        assertThat(PostFilters.propertyName("@jcr:score")).isNull();
+        assertThat(PostFilters.propertyName("jcr:path")).isNull();
+        assertThat(PostFilters.propertyName("fn:lower-case(@a)")).isNull();
+        assertThat(PostFilters.propertyName("@")).isNull();
+        assertThat(PostFilters.propertyName(null)).isNull();
+    }
+
+    @Test
+    public void expensive() {
+        assertThat(PostFilters.isExpensive(like(attr("a"), "x"))).isTrue();
+        assertThat(PostFilters.isExpensive(like(attr("a"), "x", MatchMode.END))).isTrue();
+        assertThat(PostFilters.isExpensive(like(attr("a"), "x", MatchMode.START))).isFalse();
+        assertThat(PostFilters.isExpensive(ne(attr("a"), "x"))).isTrue();
+        assertThat(PostFilters.isExpensive(not(eq(attr("a"), "x")))).isTrue();
+        assertThat(PostFilters.isExpensive(eq(attr("a"), "x"))).isFalse();
+        assertThat(PostFilters.isExpensive(or(eq(attr("a"), "x"), ne(attr("b"), "x")))).isTrue();
+        assertThat(PostFilters.isExpensive(and(eq(attr("a"), "x"), ne(attr("b"), "x")))).isFalse();
+        assertThat(PostFilters.isExpensive(not(contains(attr("a"), "x")))).isFalse();
+    }
+
+    @Test
+    public void properties() {
+        assertThat(PostFilters.properties(or(eq(attr("a"), "x"), between(attr("b"), 1, 2), isNull("@c")))).containsExactly("a", "b", "c");
+        assertThat(PostFilters.properties(isChildOf("/x"))).isEmpty();
+    }
+
+    @Test
+    public void indexed() {
+        PostFilterStrategy strategy = PostFilterStrategy.indexed("@a", "b");
+        assertThat(strategy.isPostFiltered(eq(attr("a"), "x"))).isFalse();
+        assertThat(strategy.isPostFiltered(or(eq(attr("a"), "x"), eq(attr("b"), "y")))).isFalse();
+        assertThat(strategy.isPostFiltered(eq(attr("c"), "x"))).isTrue();
+        assertThat(strategy.isPostFiltered(or(eq(attr("a"), "x"), eq(attr("c"), "y")))).isTrue();
+        assertThat(strategy.isPostFiltered(ne(attr("a"), "x"))).isTrue();
+        assertThat(strategy.isPostFiltered(contains(attr("c"), "x"))).isFalse();
+        assertThat(strategy.isPostFiltered(isDescendantOf("/x"))).isFalse();
+    }
+}
@@ -0,0 +1,51 @@
+package nl.vpro.jcr.criteria.query.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.jcr.query.Query;
+
+import org.testng.annotations.Test;
+
+import nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl;
+import nl.vpro.jcr.criteria.query.JCRCriteriaFactory;
+import nl.vpro.jcr.criteria.query.criterion.Restrictions;
+
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attrEq;
+
+/**
+ * Compares rendering a criteria repeatedly with and without the memoized fingerprint. Not part of the normal build, run it with
+ * {@code mvn test -Dsurefire.excludedGroups= -Dgroups=benchmark -Dtest=CriteriaFingerprintBenchmark}.
+ *
+ * @since 2.12
+ */
+@Slf4j
+@Test(groups = "benchmark")
+public class CriteriaFingerprintBenchmark {
+
+    private static final int ITERATIONS = 200_000;
+
+    public void render() {
+        AdvancedCriteriaImpl criteria = JCRCriteriaFactory.builder()
+            .type("a")
+            .basePath("/site")
+            .add(attrEq("title", "x"))
+            .add(Restrictions.or(attrEq("a", "x"), Restrictions.gt(attr("long"), 5L), Restrictions.like(attr("b"), "y")))
+            .add(Restrictions.in(attr("tags"), "t1", "t2", "t3"))
+            .desc(attr("date"))
+            .build();
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                StatementCache.getInstance().get(CriteriaFingerprint.of(criteria, Query.JCR_SQL2), criteria::toSql2Expression);
+            }
+            long walked = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                criteria.toSql2Expression();
+            }
+            long memoized = System.nanoTime() - start;
+            log.info("Walking the criteria: {} ns, memoized fingerprint: {} ns per statement", walked / ITERATIONS, memoized / ITERATIONS);
+        }
+    }
+}
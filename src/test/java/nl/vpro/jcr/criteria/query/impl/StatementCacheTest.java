@@ -0,0 +1,132 @@
+package nl.vpro.jcr.criteria.query.impl;
+
+import java.util.Calendar;
+
+import javax.jcr.query.Query;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import nl.vpro.jcr.criteria.advanced.impl.AdvancedCriteriaImpl;
+import nl.vpro.jcr.criteria.query.Criteria;
+import nl.vpro.jcr.criteria.query.JCRCriteriaFactory;
+import nl.vpro.jcr.criteria.query.criterion.Junction;
+import nl.vpro.jcr.criteria.query.criterion.Restrictions;
+
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attr;
+import static nl.vpro.jcr.criteria.query.criterion.Restrictions.attrEq;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@SuppressWarnings("deprecation")
+public class StatementCacheTest {
+
+    private final StatementCache cache = StatementCache.getInstance();
+
+    @BeforeMethod
+    public void clear() {
+        cache.clear();
+    }
+
+    @AfterMethod
+    public void reset() {
+        cache.setMaxSize(1000);
+    }
+
+    @Test
+    public void hit() {
+        Criteria.Expression first = criteria("x").toSql2Expression();
+        Criteria.Expression second = criteria("x").toSql2Expression();
+        assertThat(second).isSameAs(first);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void languageAndValuesAreDistinguished() {
+        assertThat(criteria("x").toSql2Expression().getStatement()).contains("'x'");
+        assertThat(criteria("y").toSql2Expression().getStatement()).contains("'y'");
+        assertThat(criteria("x").toXpathExpression().getLanguage()).isEqualTo(Query.XPATH);
+        assertThat(criteria("x").setTimeZone(java.time.ZoneId.of("UTC")).toSql2Expression()).isNotNull();
+        assertThat(cache.getHits()).isEqualTo(0);
+        assertThat(cache.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void typedValues() {
+        Calendar calendar = Calendar.getInstance();
+        assertThat(fingerprint(Restrictions.eq(attr("a"), 1L))).isNotEqualTo(fingerprint(Restrictions.eq(attr("a"), 1.0)));
+        assertThat(fingerprint(Restrictions.eq(attr("a"), "1"))).isNotEqualTo(fingerprint(Restrictions.eq(attr("a"), 1L)));
+        assertThat(fingerprint(Restrictions.eq(attr("a"), calendar))).isEqualTo(fingerprint(Restrictions.eq(attr("a"), (Calendar) calendar.clone())));
+        assertThat(fingerprint(Restrictions.in(attr("a"), "x", "y"))).isNotEqualTo(fingerprint(Restrictions.in(attr("a"), "x,y")));
+    }
+
+    @Test
+    public void modificationsAfterCaching() {
+        Junction junction = Restrictions.disjunction();
+        junction.add(attrEq("a", "x"));
+        AdvancedCriteriaImpl criteria = JCRCriteriaFactory.createCriteria();
+        criteria.add(junction);
+        String before = criteria.toSql2Expression().getStatement();
+        junction.add(attrEq("a", "y"));
+        String after = criteria.toSql2Expression().getStatement();
+        assertThat(after).isNotEqualTo(before);
+        assertThat(after).contains("'y'");
+    }
+
+    @Test
+    public void fingerprintMemoized() {
+        Junction junction = Restrictions.disjunction();
+        junction.add(attrEq("a", "x"));
+        AbstractCriteriaImpl criteria = criteria("x");
+        criteria.add(junction);
+        String first = criteria.fingerprint(Query.JCR_SQL2);
+        assertThat(first).isEqualTo(CriteriaFingerprint.of(criteria, Query.JCR_SQL2));
+        // not walked again
+        assertThat(criteria.fingerprint(Query.JCR_SQL2)).isSameAs(first);
+        assertThat(criteria.fingerprint(Query.XPATH)).isEqualTo(CriteriaFingerprint.of(criteria, Query.XPATH));
+
+        junction.add(attrEq("a", "y"));
+        String junctionModified = criteria.fingerprint(Query.JCR_SQL2);
+        assertThat(junctionModified).isNotEqualTo(first).isEqualTo(CriteriaFingerprint.of(criteria, Query.JCR_SQL2));
+
+        criteria.setBasePath("/other");
+        assertThat(criteria.fingerprint(Query.JCR_SQL2)).isNotEqualTo(junctionModified).isEqualTo(CriteriaFingerprint.of(criteria, Query.JCR_SQL2));
+        criteria.add(attrEq("b", "z"));
+        assertThat(criteria.fingerprint(Query.JCR_SQL2)).isEqualTo(CriteriaFingerprint.of(criteria, Query.JCR_SQL2));
+        criteria.setBindVariables(true);
+        assertThat(criteria.fingerprint(Query.JCR_SQL2)).isEqualTo(CriteriaFingerprint.of(criteria, Query.JCR_SQL2));
+    }
+
+    @Test
+    public void bounded() {
+        cache.setMaxSize(10);
+        for (int i = 0; i < 100; i++) {
+            criteria("x" + i).toSql2Expression();
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+        cache.setMaxSize(0);
+        criteria("x").toSql2Expression();
+        criteria("x").toSql2Expression();
+        assertThat(cache.getHits()).isEqualTo(0);
+    }
+
+    private String fingerprint(nl.vpro.jcr.criteria.query.criterion.Criterion criterion) {
+        AdvancedCriteriaImpl criteria = JCRCriteriaFactory.createCriteria();
+        criteria.add(criterion);
+        return CriteriaFingerprint.of(criteria, Query.JCR_SQL2);
+    }
+
+    private AdvancedCriteriaImpl criteria(String value) {
+        return JCRCriteriaFactory.builder()
+            .type("a")
+            .basePath("/site")
+            .add(attrEq("title", value))
+            .desc(attr("date"))
+            .build();
+    }
+}
@@ -0,0 +1,88 @@
+package nl.vpro.jcr.criteria.query.sql2;
+
+import org.testng.annotations.Test;
+
+import nl.vpro.jcr.criteria.query.criterion.Op;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+public class ConditionOptimizerTest {
+
+    @Test
+    public void flatten() {
+        assertThat(optimized(new AndCondition(eq("x", 1), new AndCondition(eq("y", 2), new AndCondition(eq("z", 3))))))
+            .isEqualTo("([x] = 1 AND [y] = 2 AND [z] = 3)");
+        assertThat(optimized(new AndCondition(eq("x", 1), new OrCondition(eq("y", 2), new OrCondition(eq("z", 3), eq("x", 4))))))
+            .isEqualTo("([x] = 1 AND ([y] = 2 OR [z] = 3 OR [x] = 4))");
+    }
+
+    @Test
+    public void dedup() {
+        assertThat(optimized(new OrCondition(eq("x", 1), eq("y", 2), eq("x", 1), new OrCondition(eq("y", 2)))))
+            .isEqualTo("([x] = 1 OR [y] = 2)");
+        assertThat(optimized(new AndCondition(new LikeCondition("@a", "%b"), new LikeCondition("@a", "%b"))))
+            .isEqualTo("[a] LIKE '%b'");
+        // different types of values are not the same
+        assertThat(optimized(new AndCondition(eq("x", 1), new StringSimpleExpressionCondition(Field.of("x"), Op.EQ, "1"))))
+            .isEqualTo("([x] = 1 AND [x] = '1')");
+    }
+
+    @Test
+    public void constants() {
+        assertThat(optimized(new AndCondition(new IsDescendantNode("/"), new OrCondition(), new AndCondition(new AndCondition()), eq("x", 1))))
+            .isEqualTo("[x] = 1");
+        assertThat(optimized(new AndCondition(new IsDescendantNode("//*"), new OrCondition())))
+            .isEqualTo("");
+    }
+
+    @Test
+    public void not() {
+        assertThat(optimized(new NotCondition(new NotCondition(eq("x", 1))))).isEqualTo("[x] = 1");
+        assertThat(optimized(new NotCondition(new NullCondition("@x")))).isEqualTo("[x] IS NOT NULL");
+        assertThat(optimized(new NotCondition(new NotNullCondition("@x")))).isEqualTo("[x] IS NULL");
+        assertThat(optimized(new NotCondition(new AndCondition(eq("x", 1))))).isEqualTo("(not ([x] = 1))");
+    }
+
+    @Test
+    public void pathsInAnd() {
+        assertThat(optimized(new AndCondition(new IsDescendantNode("/a"), new IsDescendantNode("/a/b/"), new IsDescendantNode("/ab"))))
+            .isEqualTo("(ISDESCENDANTNODE(a, '/a/b/') AND ISDESCENDANTNODE(a, '/ab'))");
+        assertThat(optimized(new AndCondition(new IsDescendantNode("/a/b"), new IsChildNode("/a/b"))))
+            .isEqualTo("ISCHILDNODE(a, '/a/b')");
+        assertThat(optimized(new AndCondition(new IsDescendantNode("/a"), new IsSameNode("/a"))))
+            .isEqualTo("(ISDESCENDANTNODE(a, '/a') AND ISSAMENODE(a, '/a'))");
+        assertThat(optimized(new AndCondition(new IsDescendantNode("/a"), new IsSameNode("/a/b"))))
+            .isEqualTo("ISSAMENODE(a, '/a/b')");
+    }
+
+    @Test
+    public void pathsInOr() {
+        assertThat(optimized(new OrCondition(new IsDescendantNode("/a/b"), new IsDescendantNode("/a"), new IsChildNode("/a"), new IsDescendantNode("/c"))))
+            .isEqualTo("(ISDESCENDANTNODE(a, '/a') OR ISDESCENDANTNODE(a, '/c'))");
+    }
+
+    @Test
+    public void notModified() {
+        AndCondition original = new AndCondition(eq("x", 1), new AndCondition(eq("y", 2)));
+        ConditionOptimizer.optimize(original);
+        assertThat(render(original)).isEqualTo("([x] = 1 AND [y] = 2)");
+        assertThat(original.getClauses()).hasSize(2);
+    }
+
+    private static String optimized(Condition condition) {
+        return render(ConditionOptimizer.optimize(condition));
+    }
+
+    private static String render(Condition condition) {
+        StringBuilder builder = new StringBuilder();
+        condition.toSql2(builder);
+        return builder.toString();
+    }
+
+    private static Condition eq(String field, long value) {
+        return new NumberSimpleExpressionCondition(Field.of(field), Op.EQ, value);
+    }
+}
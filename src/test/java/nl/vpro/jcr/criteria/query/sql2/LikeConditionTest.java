@@ -0,0 +1,52 @@
+package nl.vpro.jcr.criteria.query.sql2;
+
+import javax.jcr.RepositoryException;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+public class LikeConditionTest {
+
+    @Test
+    public void equality() {
+        assertThat(render(LikeCondition.of("@a", "abc", true))).isEqualTo("[a] = 'abc'");
+        assertThat(render(LikeCondition.of("@a", "a\\%b\\-c", true))).isEqualTo("[a] = 'a%b-c'");
+    }
+
+    @Test
+    public void range() {
+        assertThat(render(LikeCondition.of("@a", "abc%", true))).isEqualTo("([a] >= 'abc' AND [a] < 'abd')");
+        assertThat(render(LikeCondition.of("@a", "ab\\_%%", true))).isEqualTo("([a] >= 'ab_' AND [a] < 'ab`')");
+        assertThat(render(LikeCondition.of("@a", "a￿%", true))).isEqualTo("([a] >= 'a￿' AND [a] < 'b')");
+        assertThat(render(LikeCondition.of("@a", "￿%", true))).isEqualTo("[a] >= '￿'");
+    }
+
+    @Test
+    public void notRewritten() {
+        assertThat(render(LikeCondition.of("@a", "abc%", false))).isEqualTo("[a] LIKE 'abc%'");
+        assertThat(render(LikeCondition.of("@a", "abc", false))).isEqualTo("[a] LIKE 'abc'");
+        assertThat(render(LikeCondition.of("@a", "%abc", true))).isEqualTo("[a] LIKE '%abc'");
+        assertThat(render(LikeCondition.of("@a", "a%c", true))).isEqualTo("[a] LIKE 'a%c'");
+        assertThat(render(LikeCondition.of("@a", "ab_", true))).isEqualTo("[a] LIKE 'ab_'");
+        assertThat(render(LikeCondition.of("@a", "it''s", true))).isEqualTo("[a] LIKE 'it''s'");
+        assertThat(render(LikeCondition.of("@a", "abc\\", true))).isEqualTo("[a] LIKE 'abc\\'");
+    }
+
+    @Test
+    public void bindUnquotes() throws RepositoryException {
+        Sql2Builder builder = new Sql2Builder(true);
+        new LikeCondition("@a", "it''s%").toSql2(builder);
+        assertThat(builder.toString()).isEqualTo("[a] LIKE $v0");
+        assertThat(builder.getValues().get("v0").getString()).isEqualTo("it's%");
+    }
+
+    private static String render(Condition condition) {
+        StringBuilder builder = new StringBuilder();
+        condition.toSql2(builder);
+        return builder.toString();
+    }
+}
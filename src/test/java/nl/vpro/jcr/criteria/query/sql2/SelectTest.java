@@ -0,0 +1,152 @@
+package nl.vpro.jcr.criteria.query.sql2;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import org.testng.annotations.Test;
+
+import nl.vpro.jcr.criteria.query.criterion.Op;
+import nl.vpro.jcr.criteria.query.impl.Column;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @since 2.12
+ */
+@Slf4j
+public class SelectTest {
+
+    @Test
+    public void emptyClauses() {
+        Select select = new Select();
+        select.getCondition().getClauses().add(eq("x", 1));
+        select.getCondition().getClauses().add(new IsDescendantNode("/"));
+        select.getCondition().getClauses().add(new OrCondition());
+        select.getCondition().getClauses().add(eq("y", 2));
+        assertThat(select.toSql2()).isEqualTo("SELECT * from [nt:base] as a WHERE ([x] = 1 AND [y] = 2)");
+    }
+
+    @Test
+    public void onlyEmptyClauses() {
+        Select select = new Select();
+        select.getCondition().getClauses().add(new IsDescendantNode("//*"));
+        select.getCondition().getClauses().add(new AndCondition(new OrCondition()));
+        assertThat(select.toSql2()).isEqualTo("SELECT * from [nt:base] as a");
+    }
+
+    @Test
+    public void unpredictedEmptyClause() {
+        Condition unpredicted = builder -> false;
+        Select select = new Select();
+        select.getCondition().getClauses().add(eq("x", 1));
+        select.getCondition().getClauses().add(unpredicted);
+        assertThat(select.toSql2()).isEqualTo("SELECT * from [nt:base] as a WHERE ([x] = 1)");
+
+        Select onlyUnpredicted = new Select();
+        onlyUnpredicted.getCondition().getClauses().add(unpredicted);
+        assertThat(onlyUnpredicted.toSql2()).isEqualTo("SELECT * from [nt:base] as a");
+    }
+
+    @Test
+    public void columns() {
+        Select select = new Select();
+        select.getColumns().add(Column.EXCERPT);
+        assertThat(select.toSql2()).isEqualTo("SELECT *,excerpt(a) from [nt:base] as a");
+    }
+
+    @Test
+    public void propertyColumns() {
+        Select select = new Select();
+        select.getColumns().clear();
+        select.getColumns().add(Column.property("title"));
+        select.getColumns().add(Column.property("jcr:created"));
+        assertThat(select.toSql2()).isEqualTo("SELECT a.[title] AS [title],a.[jcr:created] AS [jcr:created] from [nt:base] as a");
+    }
+
+    @Test
+    public void nested() {
+        Select select = new Select();
+        select.getCondition().getClauses().add(new OrCondition(eq("x", 1), new AndCondition(eq("y", 2), eq("z", 3))));
+        select.getCondition().getClauses().add(new OrCondition(eq("x", 4)));
+        assertThat(select.toSql2()).isEqualTo("SELECT * from [nt:base] as a WHERE (([x] = 1 OR ([y] = 2 AND [z] = 3)) AND [x] = 4)");
+    }
+
+    /**
+     * Renders a big tree, nested as deep as is reasonable (100 levels), and checks that every clause is appended to the one
+     * buffer, at the position where it ends up in the statement. So nothing is inserted or copied afterwards, and rendering
+     * is linear in the size of the tree.
+     */
+    @Test
+    public void appendedOnce() {
+        Map<StringBuilder, Integer> buffers = new IdentityHashMap<>();
+        Map<Integer, String> appended = new LinkedHashMap<>();
+        Select select = new Select();
+        select.getCondition().getClauses().add(tree(10000, 100, clause -> builder -> {
+            buffers.merge(builder, 1, Integer::sum);
+            String rendered = "[p" + (clause % 7) + "] = " + clause;
+            appended.put(builder.length(), rendered);
+            builder.append(rendered);
+            return true;
+        }));
+        String statement = select.toSql2();
+        assertThat(buffers).hasSize(1);
+        assertThat(appended).hasSize(10000);
+        appended.forEach((offset, rendered) -> assertThat(statement.startsWith(rendered, offset)).isTrue());
+    }
+
+    /**
+     * Renders trees of increasing size, and logs the rendering time per clause, which should not grow with the size. Not part
+     * of the normal build, run it with {@code mvn test -Dsurefire.excludedGroups= -Dgroups=benchmark -Dtest=SelectTest}.
+     */
+    @Test(groups = "benchmark")
+    public void benchmark() {
+        int[] sizes = {10, 100, 1000, 10000};
+        for (int size : sizes) {
+            Select select = new Select();
+            select.getCondition().getClauses().add(tree(size, Math.min(100, size), SelectTest::eq));
+            String statement = select.toSql2();
+            int repeats = Math.max(5, 100_000 / size);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < repeats; i++) {
+                long start = System.nanoTime();
+                select.toSql2();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            log.info("{} clauses: {} characters, rendered in {} ({} ns/clause)", size, statement.length(), Duration.ofNanos(best), best / size);
+        }
+    }
+
+    /**
+     * A chain of {@code depth} nested junctions, with the clauses divided over the levels.
+     */
+    private static BooleanCondition tree(int clauses, int depth, IntFunction<Condition> condition) {
+        int perLevel = clauses / depth;
+        int clause = 0;
+        BooleanCondition root = new AndCondition();
+        BooleanCondition current = root;
+        for (int level = 0; level < depth; level++) {
+            for (int i = 0; i < perLevel; i++) {
+                current.getClauses().add(condition.apply(clause++));
+            }
+            if (level < depth - 1) {
+                BooleanCondition next = level % 2 == 0 ? new OrCondition() : new AndCondition();
+                current.getClauses().add(next);
+                current = next;
+            }
+        }
+        return root;
+    }
+
+    private static Condition eq(int clause) {
+        return eq("p" + (clause % 7), clause);
+    }
+
+    private static Condition eq(String field, long value) {
+        return new NumberSimpleExpressionCondition(Field.of(field), Op.EQ, value);
+    }
+}